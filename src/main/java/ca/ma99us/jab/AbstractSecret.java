@@ -1,5 +1,6 @@
 package ca.ma99us.jab;
 
+import lombok.Data;
 import lombok.Setter;
 
 import javax.crypto.KeyGenerator;
@@ -8,6 +9,8 @@ import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Base class for all cryptography implementations
@@ -15,10 +18,15 @@ import java.security.*;
 public abstract class AbstractSecret<T extends AbstractSecret<?>> {
     protected final String keyAlgorithm;
     protected final int keyLen;
+    protected final Provider provider;
     protected final String providerName;
 
     protected Key privateKey;
 
+    // decoded public keys, so verifiers of the same key do not parse it again
+    private static final int MAX_CACHED_PUBLIC_KEYS = 1024;
+    private static final JabCache<KeyBytes, PublicKey> publicKeys = new JabCache<KeyBytes, PublicKey>(MAX_CACHED_PUBLIC_KEYS, 0, TimeUnit.SECONDS);
+
     @Setter
     protected static CryptoConfig cryptoConfig;
 
@@ -35,14 +43,8 @@ public abstract class AbstractSecret<T extends AbstractSecret<?>> {
         this.keyAlgorithm = keyAlgorithm;
         this.keyLen = keyLen;
 
-        Provider provider = cryptoConfig.getSecurityProvider();
-        if (provider != null) {
-//            Security.addProvider(provider);
-            Security.insertProviderAt(provider, 1);
-            providerName = provider.getName();
-        } else {
-            providerName = null;
-        }
+        provider = cryptoConfig.getProvider();
+        providerName = provider != null ? provider.getName() : null;
     }
 
     public T setSecretKey(String key, String salt) {
@@ -62,7 +64,7 @@ public abstract class AbstractSecret<T extends AbstractSecret<?>> {
 
     public T setRandomKey() {
         try {
-            KeyGenerator keyGen = providerName != null ? KeyGenerator.getInstance(keyAlgorithm, providerName) : KeyGenerator.getInstance(keyAlgorithm);
+            KeyGenerator keyGen = provider != null ? KeyGenerator.getInstance(keyAlgorithm, provider) : KeyGenerator.getInstance(keyAlgorithm);
             keyGen.init(keyLen * 8, cryptoConfig.getSecureRandom());
             privateKey = keyGen.generateKey();
         } catch (Exception ex) {
@@ -72,6 +74,22 @@ public abstract class AbstractSecret<T extends AbstractSecret<?>> {
         return (T) this;
     }
 
+    /**
+     * Generate new asymmetric key pair; taken from the {@link JabKeyPairPool} if one is configured
+     *
+     * @return new key pair
+     * @throws Exception if the pair can not be generated
+     */
+    protected KeyPair generateKeyPair() throws Exception {
+        JabKeyPairPool pool = cryptoConfig.getKeyPairPool();
+        if (pool != null) {
+            return pool.take(keyAlgorithm, provider, keyLen * 8, cryptoConfig.getNonBlockingSecureRandom());
+        }
+        KeyPairGenerator keyGen = provider != null ? KeyPairGenerator.getInstance(keyAlgorithm, provider) : KeyPairGenerator.getInstance(keyAlgorithm);
+        keyGen.initialize(keyLen * 8, cryptoConfig.getSecureRandom());
+        return keyGen.generateKeyPair();
+    }
+
     /**
      * Unique id of the crypto and it's key
      *
@@ -99,6 +117,25 @@ public abstract class AbstractSecret<T extends AbstractSecret<?>> {
         return (T) this;
     }
 
+    /**
+     * Decode X.509 public key bytes. Decoded keys are cached and shared, since they are immutable.
+     *
+     * @param keyBytes encoded public key
+     * @return public key
+     * @throws Exception if bytes can not be decoded
+     */
+    protected PublicKey decodePublicKey(byte[] keyBytes) throws Exception {
+        KeyBytes kb = new KeyBytes(keyAlgorithm, providerName, keyBytes.clone());
+        PublicKey key = publicKeys.get(kb);
+        if (key == null) {
+            X509EncodedKeySpec keySpec = new X509EncodedKeySpec(keyBytes);
+            KeyFactory keyFactory = provider != null ? KeyFactory.getInstance(keyAlgorithm, provider) : KeyFactory.getInstance(keyAlgorithm);
+            key = keyFactory.generatePublic(keySpec);
+            publicKeys.put(kb, key);    // evicts the least recently used key when full
+        }
+        return key;
+    }
+
     protected byte[] wrapBytes(String string, int length) {
         return wrapBytes(string.getBytes(StandardCharsets.UTF_8), length);
     }
@@ -107,8 +144,48 @@ public abstract class AbstractSecret<T extends AbstractSecret<?>> {
         return JabHasher.getGlobalHasher().wrapBytes(bytes, length);
     }
 
+    @Data
+    private static class KeyBytes {
+        private final String algorithm;
+        private final String provider;
+        private final byte[] bytes;
+    }
+
     public static class CryptoConfig {
+        private volatile boolean resolved;
+        private Provider provider;
+        private volatile SecureRandom nonBlockingRandom;
+
+        /**
+         * Resolve and register the security provider once per config instance.
+         * If a provider with the same name is already registered, that one is used instead.
+         *
+         * @return provider instance to pass to getInstance(..., Provider) calls, or null for default JVM providers
+         */
+        public final Provider getProvider() {
+            if (!resolved) {
+                synchronized (this) {
+                    if (!resolved) {
+                        Provider p = getSecurityProvider();
+                        if (p != null) {
+                            Provider installed = Security.getProvider(p.getName());
+                            if (installed != null) {
+                                p = installed;
+                            } else {
+                                Security.insertProviderAt(p, 1);
+                            }
+                        }
+                        provider = p;
+                        resolved = true;
+                    }
+                }
+            }
+            return provider;
+        }
 
+        /**
+         * Override to use a third-party provider. Called once per config instance; see {@link #getProvider()}.
+         */
         public Provider getSecurityProvider() {
             //TODO: for  @see <a href="https://www.bouncycastle.org/java.html">Bouncy Castle</a> third-party lib support:
             // return new org.bouncycastle.jce.provider.BouncyCastleProvider();
@@ -119,5 +196,34 @@ public abstract class AbstractSecret<T extends AbstractSecret<?>> {
             //TODO: for older Java use something like SecureRandom.getInstance("SHA1PRNG")
             return SecureRandom.getInstanceStrong();    // default for Java 1.8+
         }
+
+        /**
+         * Random that never blocks on entropy, for background key pairs generation. Created once per config instance.
+         * Uses DRBG (Java 9+) if available, then NativePRNGNonBlocking, then the platform default.
+         */
+        public SecureRandom getNonBlockingSecureRandom() {
+            SecureRandom random = nonBlockingRandom;
+            if (random == null) {
+                for (String algorithm : new String[]{"DRBG", "NativePRNGNonBlocking"}) {
+                    try {
+                        random = SecureRandom.getInstance(algorithm);
+                        break;
+                    } catch (NoSuchAlgorithmException ex) {
+                        // try the next one
+                    }
+                }
+                nonBlockingRandom = random = random != null ? random : new SecureRandom();
+            }
+            return random;
+        }
+
+        /**
+         * Override to pre-generate asymmetric key pairs in background
+         *
+         * @return key pairs pool, or null to generate pairs on demand (default)
+         */
+        public JabKeyPairPool getKeyPairPool() {
+            return null;
+        }
     }
 }
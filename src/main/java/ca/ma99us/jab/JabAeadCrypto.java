@@ -0,0 +1,253 @@
+package ca.ma99us.jab;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.security.Key;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+
+/**
+ * Authenticated encryption (AES-GCM, or ChaCha20-Poly1305 on Java 11+) with a random nonce per message.
+ * Tampered or truncated cipher text fails decryption, so no separate checksum is needed.
+ * Plain {@link #encrypt(byte[])} output is the nonce followed by the cipher text and the tag; headers carry the nonce
+ * separately, see {@link #encrypt(byte[], byte[])}.
+ * Never reuse a nonce with the same key.
+ */
+public class JabAeadCrypto extends JabCrypto {
+    public static final String AES_GCM = "AES/GCM/NoPadding";
+    public static final String CHACHA20_POLY1305 = "ChaCha20-Poly1305";
+
+    private static final int TAG_BITS = 128;
+
+    /**
+     * Default algorithm; AES-GCM with 128 bits key and 96 bits nonce
+     */
+    public JabAeadCrypto() {
+        this("AES", AES_GCM, 16, 12);    // default
+    }
+
+    /**
+     * @param keyAlgorithm algorithm name
+     * @param mode         AEAD cipher transformation
+     * @param keyLen       key length in bytes
+     * @param nonceLen     nonce length in bytes
+     */
+    public JabAeadCrypto(String keyAlgorithm, String mode, int keyLen, int nonceLen) {
+        super(keyAlgorithm, mode, keyLen, nonceLen);
+    }
+
+    @Override
+    public JabAeadCrypto setSecretKey(String key, String salt) {
+        return (JabAeadCrypto) super.setSecretKey(key, salt);
+    }
+
+    @Override
+    public JabAeadCrypto setRandomKey() {
+        return (JabAeadCrypto) super.setRandomKey();
+    }
+
+    @Override
+    public JabAeadCrypto setPrivateKeyBytes(byte[] keyBytes) {
+        return (JabAeadCrypto) super.setPrivateKeyBytes(keyBytes);
+    }
+
+    /**
+     * AES-GCM where the JVM uses AES hardware instructions, ChaCha20-Poly1305 otherwise (if available).
+     * Encrypting and decrypting sides have to agree on the algorithm, so pick it once per deployment.
+     *
+     * @return crypto without a key
+     */
+    public static JabAeadCrypto preferred() {
+        if (!isAesAccelerated() && isAvailable(CHACHA20_POLY1305)) {
+            return new JabAeadCrypto("ChaCha20", CHACHA20_POLY1305, 32, 12);
+        }
+        return new JabAeadCrypto();
+    }
+
+    /**
+     * @return true if HotSpot AES intrinsics are on, or it can not be told
+     */
+    public static boolean isAesAccelerated() {
+        try {
+            HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            return bean == null || Boolean.parseBoolean(bean.getVMOption("UseAESIntrinsics").getValue());
+        } catch (Exception | LinkageError ex) {
+            return true;    // not a HotSpot JVM; assume the common case
+        }
+    }
+
+    private static boolean isAvailable(String mode) {
+        try {
+            Cipher.getInstance(mode);
+            return true;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @return new random nonce
+     */
+    public byte[] newNonce() {
+        byte[] nonce = new byte[ivLen];
+        cryptoConfig.getNonBlockingSecureRandom().nextBytes(nonce);
+        return nonce;
+    }
+
+    /**
+     * Encrypt a byte array with the given nonce. The nonce is not included in the output.
+     *
+     * @param value bytes to encrypt
+     * @param nonce never used before nonce, see {@link #newNonce()}
+     * @return cipher text followed by the authentication tag
+     */
+    public byte[] encrypt(byte[] value, byte[] nonce) {
+        if (privateKey == null) {
+            throw new NullPointerException("Crypto key has to be set first");
+        }
+
+        try {
+            CachedCipher cc = acquireCipher(Cipher.ENCRYPT_MODE, privateKey, nonce);
+            byte[] bytes = cc.getCipher().doFinal(value);
+            cc.release();
+            return bytes;
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Encryption Error", ex);
+        }
+    }
+
+    /**
+     * Decrypt and authenticate a byte array encrypted with the given nonce
+     *
+     * @param encrypted cipher text followed by the authentication tag
+     * @param nonce     nonce it was encrypted with
+     * @return decrypted bytes
+     */
+    public byte[] decrypt(byte[] encrypted, byte[] nonce) {
+        if (privateKey == null) {
+            throw new NullPointerException("Crypto key has to be set first");
+        }
+
+        try {
+            CachedCipher cc = acquireCipher(Cipher.DECRYPT_MODE, privateKey, nonce);
+            byte[] bytes = cc.getCipher().doFinal(encrypted);
+            cc.release();
+            return bytes;
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Decryption Error", ex);
+        }
+    }
+
+    /**
+     * Streaming version of {@link #encrypt(byte[], byte[])}
+     */
+    public OutputStream encrypting(OutputStream os, byte[] nonce) {
+        if (privateKey == null) {
+            throw new NullPointerException("Crypto key has to be set first");
+        }
+
+        try {
+            return new CipherOutput(os, acquireCipher(Cipher.ENCRYPT_MODE, privateKey, nonce), "Encryption Error");
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Encryption Error", ex);
+        }
+    }
+
+    /**
+     * Streaming version of {@link #decrypt(byte[], byte[])}. Decrypted bytes are only released once the tag is verified.
+     */
+    public InputStream decrypting(InputStream is, byte[] nonce) {
+        if (privateKey == null) {
+            throw new NullPointerException("Crypto key has to be set first");
+        }
+
+        try {
+            return new CipherInput(is, acquireCipher(Cipher.DECRYPT_MODE, privateKey, nonce), "Decryption Error");
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Decryption Error", ex);
+        }
+    }
+
+    @Override
+    protected byte[] encrypt(byte[] value, Key key) {
+        byte[] nonce = newNonce();
+        try {
+            CachedCipher cc = acquireCipher(Cipher.ENCRYPT_MODE, key, nonce);
+            byte[] bytes = new byte[nonce.length + cc.getCipher().getOutputSize(value.length)];
+            System.arraycopy(nonce, 0, bytes, 0, nonce.length);
+            int len = cc.getCipher().doFinal(value, 0, value.length, bytes, nonce.length);
+            cc.release();
+            return nonce.length + len == bytes.length ? bytes : Arrays.copyOf(bytes, nonce.length + len);
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Encryption Error", ex);
+        }
+    }
+
+    @Override
+    protected byte[] decrypt(byte[] encrypted, Key key) {
+        try {
+            if (encrypted.length < ivLen) {
+                throw new IllegalArgumentException("Too short to have a nonce");
+            }
+            CachedCipher cc = acquireCipher(Cipher.DECRYPT_MODE, key, Arrays.copyOf(encrypted, ivLen));
+            byte[] bytes = cc.getCipher().doFinal(encrypted, ivLen, encrypted.length - ivLen);
+            cc.release();
+            return bytes;
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Decryption Error", ex);
+        }
+    }
+
+    @Override
+    protected OutputStream encrypting(OutputStream os, Key key) {
+        byte[] nonce = newNonce();
+        try {
+            os.write(nonce);
+            return new CipherOutput(os, acquireCipher(Cipher.ENCRYPT_MODE, key, nonce), "Encryption Error");
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Encryption Error", ex);
+        }
+    }
+
+    @Override
+    protected InputStream decrypting(InputStream is, Key key) {
+        try {
+            byte[] nonce = new byte[ivLen];
+            for (int off = 0; off < nonce.length; ) {
+                int len = is.read(nonce, off, nonce.length - off);
+                if (len < 0) {
+                    throw new IOException("Too short to have a nonce");
+                }
+                off += len;
+            }
+            return new CipherInput(is, acquireCipher(Cipher.DECRYPT_MODE, key, nonce), "Decryption Error");
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Decryption Error", ex);
+        }
+    }
+
+    /**
+     * Cached cipher instances are created without init; every message re-initializes them with its own nonce
+     */
+    @Override
+    protected Cipher initCipher(int opMode, Key key) throws Exception {
+        return provider != null ? Cipher.getInstance(mode, provider) : Cipher.getInstance(mode);
+    }
+
+    private CachedCipher acquireCipher(int opMode, Key key, byte[] nonce) throws Exception {
+        if (nonce == null || nonce.length != ivLen) {
+            throw new IllegalArgumentException("Nonce has to be " + ivLen + " bytes long");
+        }
+        CachedCipher cc = acquireCipher(opMode, key);
+        AlgorithmParameterSpec spec = mode.contains("GCM") ? new GCMParameterSpec(TAG_BITS, nonce) : new IvParameterSpec(nonce);
+        cc.getCipher().init(opMode, key, spec);
+        return cc;
+    }
+}
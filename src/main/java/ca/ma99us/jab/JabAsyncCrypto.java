@@ -1,11 +1,11 @@
 package ca.ma99us.jab;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.Key;
 import java.security.KeyFactory;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
 
 /**
  * Encrypt/decrypt byte arrays with asymmetrical keys.
@@ -38,9 +38,7 @@ public class JabAsyncCrypto extends JabCrypto {
     @Override
     public JabAsyncCrypto setRandomKey() {
         try {
-            KeyPairGenerator keyGen = providerName != null ? KeyPairGenerator.getInstance(keyAlgorithm, providerName) : KeyPairGenerator.getInstance(keyAlgorithm);
-            keyGen.initialize(keyLen * 8, cryptoConfig.getSecureRandom());
-            KeyPair keyPair = keyGen.generateKeyPair();
+            KeyPair keyPair = generateKeyPair();
             privateKey = keyPair.getPrivate();
             publicKey = keyPair.getPublic();
         } catch (Exception ex) {
@@ -56,9 +54,7 @@ public class JabAsyncCrypto extends JabCrypto {
 
     public JabAsyncCrypto setPublicKeyBytes(byte[] keyBytes) {
         try {
-            X509EncodedKeySpec keySpec = new X509EncodedKeySpec(keyBytes);
-            KeyFactory keyFactory = providerName != null ? KeyFactory.getInstance(keyAlgorithm, providerName) : KeyFactory.getInstance(keyAlgorithm);
-            publicKey = keyFactory.generatePublic(keySpec);
+            publicKey = decodePublicKey(keyBytes);
         } catch (Exception ex) {
             throw new IllegalStateException("Error setting public key from bytes", ex);
         }
@@ -70,7 +66,7 @@ public class JabAsyncCrypto extends JabCrypto {
     public JabAsyncCrypto setPrivateKeyBytes(byte[] keyBytes) {
         try {
             PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(keyBytes);
-            KeyFactory keyFactory = providerName != null ? KeyFactory.getInstance(keyAlgorithm, providerName) : KeyFactory.getInstance(keyAlgorithm);
+            KeyFactory keyFactory = provider != null ? KeyFactory.getInstance(keyAlgorithm, provider) : KeyFactory.getInstance(keyAlgorithm);
             privateKey = keyFactory.generatePrivate(keySpec);
         } catch (Exception ex) {
             throw new IllegalStateException("Error setting private key from bytes", ex);
@@ -106,4 +102,22 @@ public class JabAsyncCrypto extends JabCrypto {
 
         return decrypt(encrypted, privateKey);
     }
+
+    @Override
+    public OutputStream encrypting(OutputStream os) {
+        if (publicKey == null) {
+            throw new NullPointerException("Public key has to be set first");
+        }
+
+        return encrypting(os, publicKey);
+    }
+
+    @Override
+    public InputStream decrypting(InputStream is) {
+        if (privateKey == null) {
+            throw new NullPointerException("Private key has to be set first");
+        }
+
+        return decrypting(is, privateKey);
+    }
 }
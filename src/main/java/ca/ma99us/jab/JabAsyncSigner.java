@@ -3,15 +3,18 @@ package ca.ma99us.jab;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
 
 /**
  * Sign/verify byte arrays with asymmetrical keys.
+ * Initialized Signature engines are cached per thread, and reused while the keys stay the same.
  */
 public class JabAsyncSigner extends JabSigner {
     protected final String mode;
     protected Key publicKey;
 
+    // per-thread initialized engines; [0] for signing, [1] for verification
+    private final ThreadLocal<KeySignature[]> signatures = new ThreadLocal<KeySignature[]>();
+
     /**
      * Default algorithm.
      */
@@ -32,9 +35,7 @@ public class JabAsyncSigner extends JabSigner {
     @Override
     public JabAsyncSigner setRandomKey() {
         try {
-            KeyPairGenerator keyGen = providerName != null ? KeyPairGenerator.getInstance(keyAlgorithm, providerName) : KeyPairGenerator.getInstance(keyAlgorithm);
-            keyGen.initialize(keyLen * 8, cryptoConfig.getSecureRandom());
-            KeyPair keyPair = keyGen.generateKeyPair();
+            KeyPair keyPair = generateKeyPair();
             privateKey = keyPair.getPrivate();
             publicKey = keyPair.getPublic();
         } catch (Exception ex) {
@@ -60,9 +61,7 @@ public class JabAsyncSigner extends JabSigner {
 
     public JabAsyncSigner setPublicKeyBytes(byte[] keyBytes) {
         try {
-            X509EncodedKeySpec keySpec = new X509EncodedKeySpec(keyBytes);
-            KeyFactory keyFactory = providerName != null ? KeyFactory.getInstance(keyAlgorithm, providerName) : KeyFactory.getInstance(keyAlgorithm);
-            publicKey = keyFactory.generatePublic(keySpec);
+            publicKey = decodePublicKey(keyBytes);
         } catch (Exception ex) {
             throw new IllegalStateException("Error setting public key from bytes", ex);
         }
@@ -74,7 +73,7 @@ public class JabAsyncSigner extends JabSigner {
     public JabAsyncSigner setPrivateKeyBytes(byte[] keyBytes) {
         try {
             PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(keyBytes);
-            KeyFactory keyFactory = providerName != null ? KeyFactory.getInstance(keyAlgorithm, providerName) : KeyFactory.getInstance(keyAlgorithm);
+            KeyFactory keyFactory = provider != null ? KeyFactory.getInstance(keyAlgorithm, provider) : KeyFactory.getInstance(keyAlgorithm);
             privateKey = keyFactory.generatePrivate(keySpec);
         } catch (Exception ex) {
             throw new IllegalStateException("Error setting private key from bytes", ex);
@@ -94,11 +93,11 @@ public class JabAsyncSigner extends JabSigner {
             if (privateKey == null) {
                 throw new NullPointerException("Private key has to be set first");
             }
-            Signature sig = providerName != null ? Signature.getInstance(mode, providerName) : Signature.getInstance(mode);
-            sig.initSign((PrivateKey) privateKey);
+            Signature sig = signature(0, privateKey);
             sig.update(data);
             return sig.sign();
         } catch (Exception ex) {
+            signatures.remove();    // unknown state, do not reuse
             throw new IllegalArgumentException("Signing Error", ex);
         }
     }
@@ -115,12 +114,46 @@ public class JabAsyncSigner extends JabSigner {
             if (publicKey == null) {
                 throw new NullPointerException("Public key has to be set first");
             }
-            Signature sig = providerName != null ? Signature.getInstance(mode, providerName) : Signature.getInstance(mode);
-            sig.initVerify((PublicKey) publicKey);
+            Signature sig = signature(1, publicKey);
             sig.update(data);
             return sig.verify(signature);
         } catch (Exception ex) {
+            signatures.remove();    // unknown state, do not reuse
             throw new IllegalArgumentException("Verification Error", ex);
         }
     }
+
+    /**
+     * Signature engine initialized with the key for the current thread. sign() and verify() reset it to the
+     * initialized state, so it is reused as is.
+     */
+    private Signature signature(int idx, Key key) throws Exception {
+        KeySignature[] slots = signatures.get();
+        if (slots == null) {
+            slots = new KeySignature[2];
+            signatures.set(slots);
+        }
+        KeySignature ks = slots[idx];
+        if (ks == null || ks.key != key) {
+            Signature sig = provider != null ? Signature.getInstance(mode, provider) : Signature.getInstance(mode);
+            if (idx == 0) {
+                sig.initSign((PrivateKey) key);
+            } else {
+                sig.initVerify((PublicKey) key);
+            }
+            ks = new KeySignature(key, sig);
+            slots[idx] = ks;
+        }
+        return ks.signature;
+    }
+
+    private static class KeySignature {
+        private final Key key;
+        private final Signature signature;
+
+        KeySignature(Key key, Signature signature) {
+            this.key = key;
+            this.signature = signature;
+        }
+    }
 }
@@ -0,0 +1,437 @@
+package ca.ma99us.jab;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled, immutable "field plan" of a java bean class: Jab ordered fields, their resolved element types,
+ * java-lang vs nested bean classification and the accessors. Built once per class with reflection,
+ * then cached and shared by all JabParser instances and threads.
+ *
+ * @param <T> bean class
+ */
+public final class JabBeanPlan<T> {
+    @Getter
+    private final static Plans plans = new Plans();
+
+    @Getter
+    private final Class<T> beanClass;
+    @Getter
+    private final List<FieldPlan> fields;
+
+    private final Constructor<T> constructor;
+
+    private JabBeanPlan(Class<T> beanClass) {
+        this.beanClass = beanClass;
+        List<FieldPlan> fieldPlans = new ArrayList<>();
+        for (Field field : getObjectFields(beanClass)) {
+            fieldPlans.add(new FieldPlan(field));
+        }
+        this.fields = Collections.unmodifiableList(fieldPlans);
+
+        Constructor<T> c = null;
+        try {
+            c = beanClass.getDeclaredConstructor();
+            c.setAccessible(true);
+        } catch (Exception e) {
+            // not instantiable; abstract class, interface, no default constructor, etc.
+        }
+        this.constructor = c;
+    }
+
+    /**
+     * Create a new empty bean instance with the default constructor.
+     *
+     * @return new java bean
+     * @throws IOException if the class can not be instantiated
+     */
+    public T newInstance() throws IOException {
+        if (constructor == null) {
+            throw new IOException("Can't instantiate \"" + beanClass.getSimpleName() + "\"; no default constructor");
+        }
+        try {
+            return constructor.newInstance();
+        } catch (Exception e) {
+            throw new IOException("Can't instantiate \"" + beanClass.getSimpleName() + "\"", e);
+        }
+    }
+
+    /**
+     * Finds cached plan for the given class, or compiles a new one.
+     *
+     * @param beanClass java bean class
+     * @param <T>       generic bean class
+     * @return the class plan
+     */
+    public static <T> JabBeanPlan<T> of(Class<T> beanClass) {
+        return plans.get(beanClass);
+    }
+
+    @Override
+    public String toString() {
+        return beanClass.getSimpleName() + fields;
+    }
+
+    /**
+     * All non-static fields without @JsonIgnore annotation. Parent class fields first, each class fields sorted by name.
+     */
+    private static List<Field> getObjectFields(Class<?> objClass) {
+        List<Field> declaredFields = new ArrayList<>();
+        for (Class<?> c = objClass; c != null; c = c.getSuperclass()) {
+            if (c.equals(Object.class)) {
+                continue;   // don't gig any further
+            }
+            // filter out static fields and fields with @JsonIgnore annotation
+            List<Field> fields = new ArrayList<>();
+            for (Field f : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(f.getModifiers()) && f.getAnnotation(JsonIgnore.class) == null) {
+                    fields.add(f);
+                }
+            }
+            // Unfortunately, some JVMs do not guarantee DeclaredFields order, so we have to sort fields ourselves
+            Collections.sort(fields, new Comparator<Field>() {
+                public int compare(Field f1, Field f2) {
+                    // sort each class fields names alphabetically
+                    return f1.getName().compareTo(f2.getName());
+                }
+            });
+
+            // parent class fields always go before child's fields
+            declaredFields.addAll(0, fields);
+        }
+        return declaredFields;
+    }
+
+    private static boolean isJavaLangClass(Class<?> clazz) {
+        return clazz != null && (clazz.isPrimitive() || clazz.getName().startsWith("java.")); // TODO: maybe java.lang ?
+    }
+
+    /**
+     * How the field value is serialized
+     */
+    public enum Kind {
+        /**
+         * java-lang value (primitive, String, collection of java-lang values, etc.) or enum, serialized by Jackson as is
+         */
+        VALUE,
+        /**
+         * single nested java bean, serialized as a nested json array of its own fields values
+         */
+        BEAN,
+        /**
+         * array of nested java beans
+         */
+        BEAN_ARRAY,
+        /**
+         * list of nested java beans
+         */
+        BEAN_LIST
+    }
+
+    /**
+     * Compiled plan of a single bean field
+     */
+    public static final class FieldPlan {
+        @Getter
+        private final Field field;
+        @Getter
+        private final String name;
+        @Getter
+        private final Class<?> type;
+        @Getter
+        private final Class<?> elementType;
+        @Getter
+        private final Kind kind;
+        @Getter
+        private final JavaType javaType;
+
+        @Getter
+        private final JabFieldAccessor accessor;
+
+        private FieldPlan(Field field) {
+            this.field = field;
+            this.name = field.getName();
+            this.type = field.getType();
+            this.elementType = resolveElementType(field);
+            this.kind = resolveKind(type, elementType);
+            this.javaType = TypeFactory.defaultInstance().constructType(field.getGenericType());
+            this.accessor = JabFieldAccessor.of(field);
+        }
+
+        /**
+         * @return true if this field holds nested java bean(s)
+         */
+        public boolean isNested() {
+            return kind != Kind.VALUE;
+        }
+
+        /**
+         * @return true if the field value can be read with a 'getter' or from a public field
+         */
+        public boolean isReadable() {
+            return accessor.isReadable();
+        }
+
+        /**
+         * @return true if the field value can be set with a 'setter' or directly, the same way Jackson would
+         */
+        public boolean isWritable() {
+            return accessor.isWritable();
+        }
+
+        /**
+         * Read the field value from the bean with the 'getter' or directly from public field.
+         *
+         * @param bean java bean
+         * @return field value
+         * @throws IOException if the field is not accessible
+         */
+        public Object getValue(Object bean) throws IOException {
+            if (!accessor.isReadable()) {
+                throw new IOException("Can't access object's \"" + bean.getClass().getSimpleName() + "\" field \"" + name + "\" value; no getter or public field");
+            }
+            try {
+                return accessor.get(bean);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw getError(bean, e);
+            }
+        }
+
+        /**
+         * Primitive {@code int} version of {@link #getValue(Object)}
+         */
+        public int getInt(Object bean) throws IOException {
+            try {
+                return accessor.getInt(bean);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw getError(bean, e);
+            }
+        }
+
+        /**
+         * Primitive {@code long} version of {@link #getValue(Object)}
+         */
+        public long getLong(Object bean) throws IOException {
+            try {
+                return accessor.getLong(bean);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw getError(bean, e);
+            }
+        }
+
+        /**
+         * Primitive {@code double} version of {@link #getValue(Object)}
+         */
+        public double getDouble(Object bean) throws IOException {
+            try {
+                return accessor.getDouble(bean);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw getError(bean, e);
+            }
+        }
+
+        /**
+         * Primitive {@code boolean} version of {@link #getValue(Object)}
+         */
+        public boolean getBoolean(Object bean) throws IOException {
+            try {
+                return accessor.getBoolean(bean);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw getError(bean, e);
+            }
+        }
+
+        /**
+         * Write the field value to the bean with the 'setter' or directly to the field.
+         *
+         * @param bean  java bean
+         * @param value field value
+         * @throws IOException if the field is not accessible
+         */
+        public void setValue(Object bean, Object value) throws IOException {
+            try {
+                accessor.set(bean, value);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw setError(bean, e);
+            }
+        }
+
+        /**
+         * Primitive {@code int} version of {@link #setValue(Object, Object)}
+         */
+        public void setInt(Object bean, int value) throws IOException {
+            try {
+                accessor.setInt(bean, value);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw setError(bean, e);
+            }
+        }
+
+        /**
+         * Primitive {@code long} version of {@link #setValue(Object, Object)}
+         */
+        public void setLong(Object bean, long value) throws IOException {
+            try {
+                accessor.setLong(bean, value);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw setError(bean, e);
+            }
+        }
+
+        /**
+         * Primitive {@code double} version of {@link #setValue(Object, Object)}
+         */
+        public void setDouble(Object bean, double value) throws IOException {
+            try {
+                accessor.setDouble(bean, value);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw setError(bean, e);
+            }
+        }
+
+        /**
+         * Primitive {@code boolean} version of {@link #setValue(Object, Object)}
+         */
+        public void setBoolean(Object bean, boolean value) throws IOException {
+            try {
+                accessor.setBoolean(bean, value);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw setError(bean, e);
+            }
+        }
+
+        private IOException getError(Object bean, Throwable e) {
+            return new IOException("Can't access object's \"" + bean.getClass().getSimpleName() + "\" field \"" + name + "\" value", e);
+        }
+
+        private IOException setError(Object bean, Throwable e) {
+            return new IOException("Can't set object's \"" + bean.getClass().getSimpleName() + "\" field \"" + name + "\" value", e);
+        }
+
+        @Override
+        public String toString() {
+            return kind == Kind.VALUE ? name : name + ":" + elementType.getSimpleName() + (kind == Kind.BEAN ? "" : "[]");
+        }
+
+        private static Class<?> resolveElementType(Field field) {
+            Class<?> type = field.getType();
+            if (type.isArray()) {
+                return type.getComponentType();
+            } else if (List.class.isAssignableFrom(type)) {
+                Type gt = field.getGenericType();
+                if (gt instanceof ParameterizedType) {
+                    Type arg = ((ParameterizedType) gt).getActualTypeArguments()[0];
+                    if (arg instanceof Class) {
+                        return (Class<?>) arg;
+                    } else if (arg instanceof ParameterizedType) {
+                        return (Class<?>) ((ParameterizedType) arg).getRawType();
+                    }
+                }
+                return Object.class;    // raw or wildcard list
+            }
+            return type;
+        }
+
+        private static Kind resolveKind(Class<?> type, Class<?> elementType) {
+            if (isJavaLangClass(elementType) || elementType.isEnum()) {
+                return Kind.VALUE;
+            } else if (type.isArray()) {
+                return Kind.BEAN_ARRAY;
+            } else if (List.class.isAssignableFrom(type)) {
+                return Kind.BEAN_LIST;
+            }
+            return Kind.BEAN;
+        }
+    }
+
+    /**
+     * Cache of compiled bean plans, shared globally.
+     * Plans can be pre-registered (compiled ahead of time) and inspected.
+     */
+    public static class Plans {
+        private final Map<Class<?>, JabBeanPlan<?>> classPlans = new ConcurrentHashMap<>();
+
+        /**
+         * Compile and cache plans for the given classes and all their nested java bean classes.
+         *
+         * @param classes java bean classes
+         * @return this
+         */
+        public Plans register(Class<?>... classes) {
+            for (Class<?> clazz : classes) {
+                JabBeanPlan<?> plan = get(clazz);
+                for (FieldPlan field : plan.getFields()) {
+                    if (field.isNested() && !classPlans.containsKey(field.getElementType())) {
+                        register(field.getElementType());
+                    }
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Finds already compiled plan without compiling a new one.
+         *
+         * @param clazz java bean class
+         * @param <T>   generic bean class
+         * @return cached plan or null
+         */
+        public <T> JabBeanPlan<T> find(Class<T> clazz) {
+            return clazz != null ? (JabBeanPlan<T>) classPlans.get(clazz) : null;
+        }
+
+        /**
+         * @return all compiled plans
+         */
+        public Collection<JabBeanPlan<?>> getRegistered() {
+            return Collections.unmodifiableCollection(classPlans.values());
+        }
+
+        /**
+         * Drop all compiled plans.
+         */
+        public void clear() {
+            classPlans.clear();
+        }
+
+        private <T> JabBeanPlan<T> get(Class<T> clazz) {
+            JabBeanPlan<T> plan = (JabBeanPlan<T>) classPlans.get(clazz);
+            if (plan == null) {
+                // compiling twice in a race is harmless, plans are immutable
+                plan = new JabBeanPlan<T>(clazz);
+                JabBeanPlan<T> prev = (JabBeanPlan<T>) classPlans.putIfAbsent(clazz, plan);
+                if (prev != null) {
+                    plan = prev;
+                }
+            }
+            return plan;
+        }
+    }
+}
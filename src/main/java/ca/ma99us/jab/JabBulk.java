@@ -0,0 +1,384 @@
+package ca.ma99us.jab;
+
+import ca.ma99us.jab.headers.JabHeader;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Bulk encode/decode of newline-delimited files: Jab strings to json beans (one per line) and back.
+ * Input file is memory-mapped and split into chunks on line boundaries, chunks are processed in parallel on the
+ * parser's batch executor, and the results are written to the output file in the input order.
+ * Every input line produces exactly one output line; failed lines produce empty lines and are counted as errors.
+ */
+public class JabBulk {
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    @Getter
+    private final JabParser parser;
+
+    /**
+     * Approximate size of a chunk processed by one task
+     */
+    @Getter
+    @Setter
+    private int chunkSize = 4 * 1024 * 1024;
+
+    /**
+     * Max size of the input file region mapped at once. Lines can not be longer than this.
+     */
+    @Getter
+    @Setter
+    private int windowSize = 256 * 1024 * 1024;
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
+            ;
+
+    public JabBulk(JabParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Decode a file of Jab strings into a file of json beans. Formats are auto-detected.
+     * @see JabParser.Formats#registerFormat(java.lang.Class, java.lang.Class)
+     * @param in input file of Jab strings, one per line
+     * @param out output file of json beans, one per line
+     * @return the report
+     * @throws IOException if files can not be read or written
+     */
+    public Report decode(Path in, Path out) throws IOException {
+        return process(in, out, new Supplier<LineProcessor>() {
+            @Override
+            public LineProcessor get() {
+                return new LineProcessor() {
+                    @Override
+                    public byte[] process(String line) throws Exception {
+                        return mapper.writeValueAsBytes(parser.jabToObject(line));
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * Encode a file of json beans into a file of Jab strings.
+     * @param in input file of json beans, one per line
+     * @param out output file of Jab strings, one per line
+     * @param headers supplier of JabHeader(s) to apply to payloads, or null for no header. Each task gets its own.
+     * @param payloadClass POJO java bean class
+     * @param <H> generic header class
+     * @param <P> generic payload class
+     * @return the report
+     * @throws IOException if files can not be read or written
+     */
+    public <H extends JabHeader<P>, P> Report encode(Path in, Path out, final Supplier<? extends H> headers, final Class<P> payloadClass) throws IOException {
+        return process(in, out, new Supplier<LineProcessor>() {
+            @Override
+            public LineProcessor get() {
+                final H header = headers != null ? headers.get() : null;
+                return new LineProcessor() {
+                    @Override
+                    public byte[] process(String line) throws Exception {
+                        P payload = mapper.readValue(line, payloadClass);
+                        return parser.objectToJab(header, payload).getBytes(StandardCharsets.UTF_8);
+                    }
+                };
+            }
+        });
+    }
+
+    private Report process(Path in, Path out, Supplier<LineProcessor> processors) throws IOException {
+        Executor executor = parser.getBatchExecutor() != null ? parser.getBatchExecutor() : ForkJoinPool.commonPool();
+        int parallelism = executor instanceof ForkJoinPool ? ((ForkJoinPool) executor).getParallelism() : Runtime.getRuntime().availableProcessors();
+        int maxInFlight = Math.max(2, parallelism * 2);   // bounds the memory held by not yet written chunks
+
+        Report report = new Report();
+        long started = System.nanoTime();
+        try (FileChannel inCh = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel outCh = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Deque<FutureTask<Chunk>> inFlight = new ArrayDeque<FutureTask<Chunk>>();
+            long size = inCh.size();
+            long pos = 0;
+            while (pos < size) {
+                long windowLen = Math.min(windowSize, size - pos);
+                MappedByteBuffer window = inCh.map(FileChannel.MapMode.READ_ONLY, pos, windowLen);
+                boolean lastWindow = pos + windowLen == size;
+                int start = 0;
+                while (start < windowLen) {
+                    int end = (int) Math.min(windowLen, (long) start + chunkSize);
+                    if (end < windowLen || !lastWindow) {
+                        end = nextLineStart(window, end - 1, (int) windowLen);
+                        if (end < 0) {
+                            if (start == 0) {
+                                throw new IOException("Line is longer than " + windowSize + " bytes at offset " + pos);
+                            }
+                            break;  // the last partial line goes to the next window
+                        }
+                    }
+                    ByteBuffer slice = window.duplicate();
+                    slice.position(start).limit(end);
+                    FutureTask<Chunk> task = newChunkTask(slice.slice(), processors);
+                    try {
+                        executor.execute(task);
+                    } catch (RejectedExecutionException ex) {
+                        task.run();
+                    }
+                    inFlight.add(task);
+                    while (inFlight.size() >= maxInFlight) {
+                        write(inFlight.poll(), outCh, report);
+                    }
+                    start = end;
+                }
+                report.bytesIn += start;
+                pos += start;
+            }
+            while (!inFlight.isEmpty()) {
+                write(inFlight.poll(), outCh, report);
+            }
+        }
+        report.nanos = System.nanoTime() - started;
+        return report;
+    }
+
+    /**
+     * @return index after the first '\n' at or after the given index, or -1 if there is none
+     */
+    private static int nextLineStart(ByteBuffer buf, int idx, int limit) {
+        for (int i = Math.max(idx, 0); i < limit; i++) {
+            if (buf.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static FutureTask<Chunk> newChunkTask(final ByteBuffer in, final Supplier<LineProcessor> processors) {
+        return new FutureTask<Chunk>(new Callable<Chunk>() {
+            @Override
+            public Chunk call() {
+                Chunk chunk = new Chunk(in.remaining());
+                LineProcessor processor = null;
+                Exception error = null;
+                try {
+                    processor = processors.get();
+                } catch (Exception ex) {
+                    error = ex;
+                }
+                byte[] lineBytes = new byte[256];
+                while (in.hasRemaining()) {
+                    // find the line
+                    int start = in.position();
+                    int end = start;
+                    int limit = in.limit();
+                    while (end < limit && in.get(end) != '\n') {
+                        end++;
+                    }
+                    in.position(end < limit ? end + 1 : end);
+                    int len = end - start;
+                    if (len > 0 && in.get(end - 1) == '\r') {
+                        len--;
+                    }
+
+                    // process it
+                    if (len > 0) {
+                        if (lineBytes.length < len) {
+                            lineBytes = new byte[Math.max(len, lineBytes.length * 2)];
+                        }
+                        in.position(start);
+                        in.get(lineBytes, 0, len);
+                        in.position(end < limit ? end + 1 : end);
+                        try {
+                            if (error != null) {
+                                throw error;
+                            }
+                            chunk.out.write(processor.process(new String(lineBytes, 0, len, StandardCharsets.UTF_8)));
+                        } catch (Exception ex) {
+                            chunk.error(ex);
+                        }
+                    }
+                    chunk.out.write('\n');
+                    chunk.lines++;
+                }
+                return chunk;
+            }
+        });
+    }
+
+    private static void write(FutureTask<Chunk> task, FileChannel outCh, Report report) throws IOException {
+        Chunk chunk;
+        try {
+            chunk = task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Bulk processing interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("Bulk processing failure", ex.getCause());
+        }
+        ByteBuffer buf = chunk.out.toByteBuffer();
+        report.bytesOut += buf.remaining();
+        while (buf.hasRemaining()) {
+            outCh.write(buf);
+        }
+        for (int i = 0; i < chunk.errorLines.size(); i++) {
+            if (report.errorMessages.size() < MAX_REPORTED_ERRORS) {
+                report.errorMessages.add("line " + (report.lines + chunk.errorLines.get(i) + 1) + ": " + chunk.errorMessages.get(i));
+            }
+        }
+        report.errors += chunk.errors;
+        report.lines += chunk.lines;
+    }
+
+    private interface LineProcessor {
+        byte[] process(String line) throws Exception;
+    }
+
+    private static class Chunk {
+        private final ChunkOutput out;
+        private long lines;
+        private long errors;
+        private final List<Long> errorLines = new ArrayList<Long>();
+        private final List<String> errorMessages = new ArrayList<String>();
+
+        Chunk(int inSize) {
+            out = new ChunkOutput(inSize);
+        }
+
+        void error(Exception ex) {
+            errors++;
+            if (errorLines.size() < MAX_REPORTED_ERRORS) {
+                errorLines.add(lines);
+                errorMessages.add(ex.getClass().getSimpleName() + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    private static class ChunkOutput extends ByteArrayOutputStream {
+        ChunkOutput(int size) {
+            super(Math.max(size, 32));
+        }
+
+        @Override
+        public void write(byte[] b) {
+            write(b, 0, b.length);
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);  // no copy
+        }
+    }
+
+    /**
+     * Bulk processing summary
+     */
+    public static class Report {
+        @Getter
+        private long lines;
+        @Getter
+        private long errors;
+        @Getter
+        private long bytesIn;
+        @Getter
+        private long bytesOut;
+        @Getter
+        private long nanos;
+        private final List<String> errorMessages = new ArrayList<String>();
+
+        /**
+         * @return first few errors, with their line numbers
+         */
+        public List<String> getErrorMessages() {
+            return Collections.unmodifiableList(errorMessages);
+        }
+
+        /**
+         * @return processed lines per second
+         */
+        public double getLinesPerSecond() {
+            return nanos > 0 ? lines * 1e9 / nanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = nanos / 1e9;
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%d lines, %d errors in %.3f s; %.0f lines/s, %.2f MB/s in, %.2f MB/s out",
+                    lines, errors, seconds, getLinesPerSecond(),
+                    seconds > 0 ? bytesIn / seconds / 1e6 : 0, seconds > 0 ? bytesOut / seconds / 1e6 : 0));
+            for (String msg : errorMessages) {
+                sb.append("\n  ").append(msg);
+            }
+            if (errors > errorMessages.size()) {
+                sb.append("\n  ...");
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Command line bulk mode:
+     * <pre>
+     * decode &lt;in&gt; &lt;out&gt; [&lt;header class&gt; &lt;payload class&gt;]...
+     * encode &lt;in&gt; &lt;out&gt; &lt;header class|-&gt; &lt;payload class&gt;
+     * </pre>
+     * Header classes have to have default constructors; headers which need keys (crypto, signature) can only be
+     * used through the library API.
+     * @param args command line arguments
+     * @throws Exception on fatal errors
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3 || !("decode".equals(args[0]) || "encode".equals(args[0]))
+                || ("encode".equals(args[0]) && args.length != 5) || ("decode".equals(args[0]) && args.length % 2 != 1)) {
+            System.err.println("Usage:\n"
+                    + "  JabBulk decode <in> <out> [<header class> <payload class>]...\n"
+                    + "  JabBulk encode <in> <out> <header class|-> <payload class>");
+            System.exit(2);
+            return;
+        }
+        JabBulk bulk = new JabBulk(new JabParser());
+        Path in = Paths.get(args[1]);
+        Path out = Paths.get(args[2]);
+        Report report;
+        if ("decode".equals(args[0])) {
+            for (int i = 3; i < args.length; i += 2) {
+                bulk.getParser().getFormats().registerFormat("-".equals(args[i]) ? null : (Class<JabHeader>) Class.forName(args[i]), Class.forName(args[i + 1]));
+            }
+            report = bulk.decode(in, out);
+        } else {
+            final Class<JabHeader<Object>> headerClass = "-".equals(args[3]) ? null : (Class<JabHeader<Object>>) Class.forName(args[3]);
+            Supplier<JabHeader<Object>> headers = headerClass == null ? null : new Supplier<JabHeader<Object>>() {
+                @Override
+                public JabHeader<Object> get() {
+                    try {
+                        return JabBeanPlan.of(headerClass).newInstance();
+                    } catch (IOException ex) {
+                        throw new IllegalArgumentException(ex.getMessage(), ex);
+                    }
+                }
+            };
+            report = bulk.encode(in, out, headers, (Class<Object>) Class.forName(args[4]));
+        }
+        System.out.println(report);
+        System.exit(report.getErrors() > 0 ? 1 : 0);
+    }
+}
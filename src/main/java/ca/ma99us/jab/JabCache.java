@@ -0,0 +1,234 @@
+package ca.ma99us.jab;
+
+import lombok.Getter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded concurrent cache with time-to-live, shared by the library caches.
+ * Keys are spread over independently locked stripes. Every stripe is a segmented LRU: new entries go to a small
+ * probation segment, and only entries hit again get promoted to the protected segment, so a scan of one-off keys
+ * can not flush the frequently used ones.
+ *
+ * @param <K> key class; has to have proper equals() and hashCode()
+ * @param <V> value class
+ */
+public class JabCache<K, V> {
+    private static final int MAX_STRIPES = 16;
+
+    @Getter
+    private final int capacity;
+    @Getter
+    private final long ttlNanos;
+
+    private final Stripe<K, V>[] stripes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param capacity max number of entries
+     * @param ttl      how long entries stay valid, or 0 for forever
+     * @param unit     ttl unit
+     */
+    public JabCache(int capacity, long ttl, TimeUnit unit) {
+        if (capacity <= 0 || ttl < 0) {
+            throw new IllegalArgumentException("Bad cache size; capacity: " + capacity + ", ttl: " + ttl);
+        }
+        this.capacity = capacity;
+        this.ttlNanos = unit.toNanos(ttl);
+
+        int n = 1;
+        while (n < MAX_STRIPES && n < Runtime.getRuntime().availableProcessors() * 2 && capacity / (n * 2) >= 8) {
+            n *= 2;
+        }
+        stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new Stripe<K, V>(capacity / n + (i < capacity % n ? 1 : 0), evictions, expirations);
+        }
+    }
+
+    /**
+     * @return cached value, or null if not cached or expired
+     */
+    public V get(K key) {
+        V value = stripe(key).get(key, System.nanoTime());
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Cache the value, replacing the old one
+     */
+    public void put(K key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Cached value can not be null");
+        }
+        stripe(key).put(key, value, ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0);
+    }
+
+    /**
+     * @return removed value, or null
+     */
+    public V remove(K key) {
+        return stripe(key).remove(key);
+    }
+
+    public void clear() {
+        for (Stripe<K, V> stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    /**
+     * @return number of entries, including expired ones not evicted yet
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of entries pushed out to make room for new ones
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return number of entries dropped because of their ttl
+     */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * @return hits / (hits + misses), or 0 if nothing was looked up yet
+     */
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total > 0 ? (double) h / total : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("JabCache{size=%d/%d, hits=%d, misses=%d, hitRatio=%.3f, evictions=%d, expirations=%d}",
+                size(), capacity, getHits(), getMisses(), getHitRatio(), getEvictions(), getExpirations());
+    }
+
+    private Stripe<K, V> stripe(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expires;
+
+        Entry(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Segmented LRU; both segments are insertion ordered maps, re-inserted on access
+     */
+    private static class Stripe<K, V> {
+        private final int probationCapacity;
+        private final int protectedCapacity;
+        private final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<K, Entry<V>>();
+        private final LinkedHashMap<K, Entry<V>> protect = new LinkedHashMap<K, Entry<V>>();
+        private final LongAdder evictions;
+        private final LongAdder expirations;
+
+        Stripe(int capacity, LongAdder evictions, LongAdder expirations) {
+            probationCapacity = Math.max(1, capacity / 5);
+            protectedCapacity = Math.max(0, capacity - probationCapacity);
+            this.evictions = evictions;
+            this.expirations = expirations;
+        }
+
+        synchronized V get(K key, long now) {
+            Entry<V> entry = protect.remove(key);
+            if (entry == null) {
+                entry = probation.remove(key);
+                if (entry == null) {
+                    return null;
+                }
+            }
+            if (entry.expires != 0 && entry.expires - now <= 0) {
+                expirations.increment();
+                return null;
+            }
+            // hit, (re)insert as the most recent protected entry
+            protect.put(key, entry);
+            if (protect.size() > protectedCapacity) {
+                Iterator<Map.Entry<K, Entry<V>>> it = protect.entrySet().iterator();
+                Map.Entry<K, Entry<V>> eldest = it.next();
+                it.remove();
+                addProbation(eldest.getKey(), eldest.getValue());   // demote, give it another chance
+            }
+            return entry.value;
+        }
+
+        synchronized void put(K key, V value, long expires) {
+            Entry<V> entry = new Entry<V>(value, expires);
+            if (protect.containsKey(key)) {
+                protect.put(key, entry);
+            } else {
+                probation.remove(key);
+                addProbation(key, entry);
+            }
+        }
+
+        synchronized V remove(K key) {
+            Entry<V> entry = protect.remove(key);
+            if (entry == null) {
+                entry = probation.remove(key);
+            }
+            return entry != null ? entry.value : null;
+        }
+
+        synchronized void clear() {
+            probation.clear();
+            protect.clear();
+        }
+
+        synchronized int size() {
+            return probation.size() + protect.size();
+        }
+
+        private void addProbation(K key, Entry<V> entry) {
+            probation.put(key, entry);
+            if (probation.size() > probationCapacity) {
+                Iterator<Map.Entry<K, Entry<V>>> it = probation.entrySet().iterator();
+                it.next();
+                it.remove();
+                evictions.increment();
+            }
+        }
+    }
+}
@@ -2,15 +2,25 @@ package ca.ma99us.jab;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.Key;
 
 /**
  * Simple platform-independent way to encrypt/decrypt byte arrays.
+ * Initialized ciphers are cached per thread and reused while the key stays the same.
  */
 public class JabCrypto extends AbstractSecret<JabCrypto> {
     protected final String mode;
     protected final int ivLen;
 
+    // per-thread initialized ciphers; [0] for encryption, [1] for decryption
+    private final ThreadLocal<CachedCipher[]> ciphers = new ThreadLocal<CachedCipher[]>();
+    private volatile KeyIv keyIv;
+
     /**
      * Default algorithm.
      */
@@ -46,14 +56,10 @@ public class JabCrypto extends AbstractSecret<JabCrypto> {
 
     protected byte[] encrypt(byte[] value, Key key) {
         try {
-            Cipher cipher = providerName != null ? Cipher.getInstance(mode, providerName) : Cipher.getInstance(mode);
-            if (ivLen > 0) {
-                byte[] ivBytes = wrapBytes(key.getEncoded(), ivLen);
-                cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(ivBytes));
-            } else {
-                cipher.init(Cipher.ENCRYPT_MODE, key);
-            }
-            return cipher.doFinal(value);
+            CachedCipher cc = acquireCipher(Cipher.ENCRYPT_MODE, key);
+            byte[] bytes = cc.cipher.doFinal(value);
+            cc.release();
+            return bytes;
         } catch (Exception ex) {
             throw new IllegalArgumentException("Encryption Error", ex);
         }
@@ -75,16 +81,269 @@ public class JabCrypto extends AbstractSecret<JabCrypto> {
 
     protected byte[] decrypt(byte[] encrypted, Key key) {
         try {
-            Cipher cipher = providerName != null ? Cipher.getInstance(mode, providerName) : Cipher.getInstance(mode);
-            if (ivLen > 0) {
-                byte[] ivBytes = wrapBytes(key.getEncoded(), ivLen);
-                cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(ivBytes));
-            } else {
-                cipher.init(Cipher.DECRYPT_MODE, key);
-            }
-            return cipher.doFinal(encrypted);
+            CachedCipher cc = acquireCipher(Cipher.DECRYPT_MODE, key);
+            byte[] bytes = cc.cipher.doFinal(encrypted);
+            cc.release();
+            return bytes;
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Decryption Error", ex);
+        }
+    }
+
+    /**
+     * Streaming version of {@link #encrypt(byte[])}. Produces exactly the same bytes.
+     *
+     * @param os stream to write encrypted bytes to
+     * @return stream to write plain bytes to. Closing it finishes encryption and closes the given stream.
+     */
+    public OutputStream encrypting(OutputStream os) {
+        if (privateKey == null) {
+            throw new NullPointerException("Crypto key has to be set first");
+        }
+
+        return encrypting(os, privateKey);
+    }
+
+    protected OutputStream encrypting(OutputStream os, Key key) {
+        try {
+            return new CipherOutput(os, acquireCipher(Cipher.ENCRYPT_MODE, key), "Encryption Error");
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Encryption Error", ex);
+        }
+    }
+
+    /**
+     * Streaming version of {@link #decrypt(byte[])}.
+     *
+     * @param is stream to read encrypted bytes from
+     * @return stream to read decrypted bytes from
+     */
+    public InputStream decrypting(InputStream is) {
+        if (privateKey == null) {
+            throw new NullPointerException("Crypto key has to be set first");
+        }
+
+        return decrypting(is, privateKey);
+    }
+
+    protected InputStream decrypting(InputStream is, Key key) {
+        try {
+            return new CipherInput(is, acquireCipher(Cipher.DECRYPT_MODE, key), "Decryption Error");
         } catch (Exception ex) {
             throw new IllegalArgumentException("Decryption Error", ex);
         }
     }
+
+    protected Cipher initCipher(int opMode, Key key) throws Exception {
+        Cipher cipher = provider != null ? Cipher.getInstance(mode, provider) : Cipher.getInstance(mode);
+        if (ivLen > 0) {
+            cipher.init(opMode, key, ivSpec(key));
+        } else {
+            cipher.init(opMode, key);
+        }
+        return cipher;
+    }
+
+    /**
+     * IV is derived from the key, so it is calculated once per key
+     */
+    private IvParameterSpec ivSpec(Key key) {
+        KeyIv ki = keyIv;
+        if (ki == null || ki.key != key) {
+            ki = new KeyIv(key, new IvParameterSpec(wrapBytes(key.getEncoded(), ivLen)));
+            keyIv = ki;
+        }
+        return ki.iv;
+    }
+
+    /**
+     * Cipher initialized with the given key for the current thread. A cipher is reset to its initialized state by
+     * doFinal(), so it is reused as is. Release it after successful doFinal(), otherwise a new one is created next time.
+     */
+    protected CachedCipher acquireCipher(int opMode, Key key) throws Exception {
+        CachedCipher[] slots = ciphers.get();
+        if (slots == null) {
+            slots = new CachedCipher[2];
+            ciphers.set(slots);
+        }
+        int idx = opMode == Cipher.ENCRYPT_MODE ? 0 : 1;
+        CachedCipher cc = slots[idx];
+        if (cc == null || cc.key != key || cc.inUse) {
+            // different key, or the cached one is busy (nested call) or was left in unknown state (failure)
+            cc = new CachedCipher(key, initCipher(opMode, key));
+            slots[idx] = cc;
+        }
+        cc.inUse = true;
+        return cc;
+    }
+
+    /**
+     * Cipher initialized with a key
+     */
+    protected static class CachedCipher {
+        private final Key key;
+        private final Cipher cipher;
+        private boolean inUse;
+
+        CachedCipher(Key key, Cipher cipher) {
+            this.key = key;
+            this.cipher = cipher;
+        }
+
+        public Cipher getCipher() {
+            return cipher;
+        }
+
+        /**
+         * Cipher is ready to be reused
+         */
+        public void release() {
+            inUse = false;
+        }
+    }
+
+    private static class KeyIv {
+        private final Key key;
+        private final IvParameterSpec iv;
+
+        KeyIv(Key key, IvParameterSpec iv) {
+            this.key = key;
+            this.iv = iv;
+        }
+    }
+
+    /**
+     * Unlike javax.crypto.CipherOutputStream, does not swallow final block errors.
+     */
+    protected static class CipherOutput extends FilterOutputStream {
+        private final CachedCipher cc;
+        private final Cipher cipher;
+        private final String error;
+        private boolean closed;
+
+        protected CipherOutput(OutputStream os, CachedCipher cc, String error) {
+            super(os);
+            this.cc = cc;
+            this.cipher = cc.cipher;
+            this.error = error;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            byte[] bytes = cipher.update(b, off, len);
+            if (bytes != null) {
+                out.write(bytes);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                byte[] bytes;
+                try {
+                    bytes = cipher.doFinal();
+                } catch (Exception ex) {
+                    throw new IOException(error, ex);
+                }
+                cc.release();
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Unlike javax.crypto.CipherInputStream, does not swallow final block errors (bad padding, etc.)
+     */
+    protected static class CipherInput extends FilterInputStream {
+        private final CachedCipher cc;
+        private final Cipher cipher;
+        private final String error;
+        private final byte[] inBuf = new byte[512];
+        private byte[] outBuf;
+        private int outPos;
+        private boolean done;
+
+        protected CipherInput(InputStream is, CachedCipher cc, String error) {
+            super(is);
+            this.cc = cc;
+            this.cipher = cc.cipher;
+            this.error = error;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return outBuf[outPos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, outBuf.length - outPos);
+            System.arraycopy(outBuf, outPos, b, off, n);
+            outPos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && fill()) {
+                int s = (int) Math.min(n - skipped, outBuf.length - outPos);
+                outPos += s;
+                skipped += s;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return outBuf != null ? outBuf.length - outPos : 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private boolean fill() throws IOException {
+            while (outBuf == null || outPos >= outBuf.length) {
+                if (done) {
+                    return false;
+                }
+                int len = in.read(inBuf);
+                try {
+                    if (len < 0) {
+                        done = true;
+                        outBuf = cipher.doFinal();
+                        cc.release();
+                    } else {
+                        outBuf = cipher.update(inBuf, 0, len);
+                    }
+                } catch (Exception ex) {
+                    throw new IOException(error, ex);
+                }
+                outPos = 0;
+            }
+            return true;
+        }
+    }
 }
@@ -0,0 +1,221 @@
+package ca.ma99us.jab;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Preset compression dictionary: byte strings typical for a payload class (field values, json punctuation), so even
+ * short payloads compress well. Both encoding and decoding sides have to have the same dictionary.
+ * The id is the dictionary Adler-32 checksum, same as zlib uses for preset dictionaries.
+ */
+public class JabDictionary {
+    public static final int DEFAULT_SIZE = 2048;
+
+    private static final int KMER = 6;
+    private static final int SEGMENT = 32;
+
+    private final byte[] bytes;
+    @Getter
+    private final int id;
+
+    public JabDictionary(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            throw new IllegalArgumentException("Dictionary can not be empty");
+        }
+        this.bytes = bytes.clone();
+        Adler32 adler = new Adler32();
+        adler.update(bytes);
+        this.id = (int) adler.getValue();
+    }
+
+    /**
+     * @return copy of the dictionary bytes
+     */
+    public byte[] getBytes() {
+        return bytes.clone();
+    }
+
+    /**
+     * Set this dictionary to a raw (no zlib wrapper) deflater, before any input
+     * @param deflater new or reset deflater
+     * @return the deflater
+     */
+    public Deflater prime(Deflater deflater) {
+        deflater.setDictionary(bytes);
+        return deflater;
+    }
+
+    /**
+     * Set this dictionary to a raw (no zlib wrapper) inflater, before any input
+     * @param inflater new or reset inflater
+     * @return the inflater
+     */
+    public Inflater prime(Inflater inflater) {
+        inflater.setDictionary(bytes);
+        return inflater;
+    }
+
+    /**
+     * @param path dictionary file written by {@link #write(Path)} or the trainer
+     * @return dictionary
+     * @throws IOException if the file can not be read
+     */
+    public static JabDictionary read(Path path) throws IOException {
+        return new JabDictionary(Files.readAllBytes(path));
+    }
+
+    /**
+     * @param path file to write dictionary bytes to
+     * @throws IOException if the file can not be written
+     */
+    public void write(Path path) throws IOException {
+        Files.write(path, bytes);
+    }
+
+    /**
+     * Train a dictionary from sample payloads.
+     * Greedily picks the sample segments covering the most frequent short byte strings (counted once per sample),
+     * not counting strings already covered. Most valuable segments go to the end of the dictionary, where they are
+     * the cheapest to reference.
+     * @param samples sample payload bytes, as the compression header gets them
+     * @param maxSize max dictionary size in bytes
+     * @return trained dictionary
+     */
+    public static JabDictionary train(Collection<byte[]> samples, int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Bad dictionary size: " + maxSize);
+        }
+        // in how many samples every k-mer appears
+        Map<Long, Integer> freqs = new HashMap<Long, Integer>();
+        Set<Long> seen = new HashSet<Long>();
+        for (byte[] sample : samples) {
+            seen.clear();
+            for (int i = 0; i + KMER <= sample.length; i++) {
+                Long kmer = kmer(sample, i);
+                if (seen.add(kmer)) {
+                    Integer f = freqs.get(kmer);
+                    freqs.put(kmer, f != null ? f + 1 : 1);
+                }
+            }
+        }
+
+        List<byte[]> segments = new ArrayList<byte[]>();
+        int size = 0;
+        while (size < maxSize) {
+            byte[] best = null;
+            int bestAt = 0;
+            long bestScore = 1;     // a k-mer seen in one sample only is not worth it
+            for (byte[] sample : samples) {
+                int len = Math.min(SEGMENT, sample.length);
+                if (len < KMER) {
+                    continue;
+                }
+                // sliding window of the segment k-mers frequencies sum
+                long score = 0;
+                for (int i = 0; i + KMER <= len; i++) {
+                    score += freq(freqs, sample, i);
+                }
+                for (int start = 0; ; start++) {
+                    if (score > bestScore) {
+                        best = sample;
+                        bestAt = start;
+                        bestScore = score;
+                    }
+                    if (start + len >= sample.length) {
+                        break;
+                    }
+                    score += freq(freqs, sample, start + len - KMER + 1) - freq(freqs, sample, start);
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            int len = Math.min(Math.min(SEGMENT, best.length), maxSize - size);
+            byte[] segment = new byte[len];
+            System.arraycopy(best, bestAt, segment, 0, len);
+            segments.add(segment);
+            size += len;
+            for (int i = bestAt; i + KMER <= bestAt + Math.min(SEGMENT, best.length); i++) {
+                freqs.remove(kmer(best, i));    // covered now
+            }
+        }
+        if (segments.isEmpty()) {
+            throw new IllegalArgumentException("Not enough repeating data in " + samples.size() + " samples");
+        }
+
+        byte[] dict = new byte[size];
+        int off = size;
+        for (byte[] segment : segments) {
+            off -= segment.length;
+            System.arraycopy(segment, 0, dict, off, segment.length);
+        }
+        return new JabDictionary(dict);
+    }
+
+    private static long kmer(byte[] bytes, int off) {
+        long kmer = 0;
+        for (int i = 0; i < KMER; i++) {
+            kmer = kmer << 8 | (bytes[off + i] & 0xff);
+        }
+        return kmer;
+    }
+
+    private static int freq(Map<Long, Integer> freqs, byte[] bytes, int off) {
+        Integer f = freqs.get(kmer(bytes, off));
+        return f != null ? f : 0;
+    }
+
+    /**
+     * Dictionary trainer tool.
+     * <pre>
+     * JabDictionary &lt;samples&gt; &lt;dictionary&gt; [&lt;payload class&gt;|- [&lt;max size&gt;]]
+     * </pre>
+     * Samples file has one sample per line; json beans of the payload class (same as {@link JabBulk} encode input),
+     * or, with "-" or no payload class, payload json values arrays as they are.
+     * @param args command line arguments
+     * @throws Exception on fatal errors
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 4) {
+            System.err.println("Usage:\n"
+                    + "  JabDictionary <samples> <dictionary> [<payload class>|- [<max size>]]");
+            System.exit(2);
+            return;
+        }
+        Class<?> payloadClass = args.length > 2 && !"-".equals(args[2]) ? Class.forName(args[2]) : null;
+        int maxSize = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_SIZE;
+
+        JabParser parser = new JabParser();
+        ObjectMapper mapper = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        List<byte[]> samples = new ArrayList<byte[]>();
+        for (String line : Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            String values = payloadClass != null ? parser.objectValuesToJsonArrayString(mapper.readValue(line, payloadClass)) : line;
+            samples.add(JabParser.unwrap(values).getBytes(StandardCharsets.UTF_8));
+        }
+        JabDictionary dictionary = train(samples, maxSize);
+        dictionary.write(Paths.get(args[1]));
+        System.out.println("Dictionary id: " + dictionary.getId() + ", size: " + dictionary.bytes.length
+                + " bytes, from " + samples.size() + " samples");
+    }
+}
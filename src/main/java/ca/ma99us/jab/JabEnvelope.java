@@ -0,0 +1,207 @@
+package ca.ma99us.jab;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hand-written single pass scanner of the Jab envelope:
+ * JAB|format id|[header values][payload values]
+ * Finds the format id and header/payload offsets without regex or substrings.
+ * The header array is bracket/quote balanced (so header strings may contain "][" or escaped quotes),
+ * the payload is everything after it (it might be obfuscated and not a json at all).
+ */
+public final class JabEnvelope {
+    private static final int OK = 0;
+    private static final int BAD_PREFIX = 1;
+    private static final int BAD_FORMAT_ID = 2;
+    private static final int BAD_BODY = 3;
+    private static final int BAD_HEADER = 4;
+    private static final int BAD_PAYLOAD = 5;
+
+    @Getter
+    private long formatId;
+    @Getter
+    private int headerStart = -1;   // index of header's "[", or -1 if no header
+    @Getter
+    private int headerEnd = -1;     // index after header's "]"
+    @Getter
+    private int payloadStart;       // index of payload's "["
+    @Getter
+    private int payloadEnd;         // index after payload's "]"
+
+    private JabEnvelope() {
+    }
+
+    /**
+     * @return true if barcode has a header json array before the payload
+     */
+    public boolean hasHeader() {
+        return headerStart >= 0;
+    }
+
+    /**
+     * Scan the Jab string envelope.
+     *
+     * @param barcode Jab string
+     * @return envelope or null if it is not a Jab string
+     */
+    public static JabEnvelope scan(CharSequence barcode) {
+        if (barcode == null) {
+            return null;
+        }
+        JabEnvelope env = new JabEnvelope();
+        return scan(barcode, env) == OK ? env : null;
+    }
+
+    /**
+     * Scan the Jab bytes (UTF-8) envelope.
+     *
+     * @param barcode Jab bytes
+     * @return envelope or null if it is not a Jab barcode
+     */
+    public static JabEnvelope scan(byte[] barcode) {
+        if (barcode == null) {
+            return null;
+        }
+        JabEnvelope env = new JabEnvelope();
+        return scan(new AsciiChars(barcode), env) == OK ? env : null;
+    }
+
+    /**
+     * Scan the Jab string envelope.
+     *
+     * @param barcode Jab string
+     * @return envelope
+     * @throws IOException with the reason if it is not a Jab string
+     */
+    public static JabEnvelope parse(CharSequence barcode) throws IOException {
+        JabEnvelope env = new JabEnvelope();
+        switch (scan(barcode, env)) {
+            case OK:
+                return env;
+            case BAD_PREFIX:
+                throw new IOException("Unrecognized prefix");
+            case BAD_FORMAT_ID:
+                throw new IOException("Unrecognized format; no checksum");
+            case BAD_BODY:
+                throw new IOException("Bad format; json array expected");
+            case BAD_HEADER:
+                throw new IOException("Bad format; can not parse header");
+            default:
+                throw new IOException("Bad format; can not parse payload");
+        }
+    }
+
+    private static int scan(CharSequence s, JabEnvelope env) {
+        int len = s.length();
+        String prefix = JabParser.PREFIX + JabParser.DELIMITER;
+        int pos = prefix.length();
+        if (len < pos) {
+            return BAD_PREFIX;
+        }
+        for (int i = 0; i < pos; i++) {
+            if (s.charAt(i) != prefix.charAt(i)) {
+                return BAD_PREFIX;
+            }
+        }
+
+        // format id
+        long id = 0;
+        int idStart = pos;
+        char c;
+        while (pos < len && (c = s.charAt(pos)) >= '0' && c <= '9') {
+            if (id > (Long.MAX_VALUE - (c - '0')) / 10) {
+                return BAD_FORMAT_ID;   // overflow
+            }
+            id = id * 10 + (c - '0');
+            pos++;
+        }
+        if (pos == idStart || pos >= len || s.charAt(pos) != JabParser.DELIMITER.charAt(0)) {
+            return BAD_FORMAT_ID;
+        }
+        env.formatId = id;
+        pos++;
+
+        if (pos >= len || s.charAt(pos) != '[' || s.charAt(len - 1) != ']') {
+            return BAD_BODY;
+        }
+
+        // first json array; either the header, or the whole payload
+        int end = skipArray(s, pos, len);
+        if (end == len) {
+            env.payloadStart = pos;
+            env.payloadEnd = len;
+            return OK;
+        } else if (end < 0) {
+            return BAD_HEADER;
+        }
+        if (s.charAt(end) != '[') {
+            return BAD_PAYLOAD;
+        }
+        env.headerStart = pos;
+        env.headerEnd = end;
+        env.payloadStart = end;
+        env.payloadEnd = len;
+        return OK;
+    }
+
+    /**
+     * @return index after the array's closing "]", or -1 if not closed
+     */
+    private static int skipArray(CharSequence s, int pos, int len) {
+        int depth = 0;
+        boolean inString = false;
+        for (; pos < len; pos++) {
+            char c = s.charAt(pos);
+            if (inString) {
+                if (c == '\\') {
+                    pos++;  // skip escaped char
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                if (--depth == 0) {
+                    return pos + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * UTF-8 bytes as chars. Enough for the envelope, since all its tokens are ASCII.
+     */
+    private static class AsciiChars implements CharSequence {
+        private final byte[] bytes;
+
+        AsciiChars(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int length() {
+            return bytes.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);  // same chars as charAt()
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
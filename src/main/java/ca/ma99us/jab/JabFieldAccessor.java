@@ -0,0 +1,157 @@
+package ca.ma99us.jab;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Pre-bound bean field access. Resolves the 'getter'/'setter' or the field itself once, and exposes them as
+ * method handles, generic (boxing) ones and primitive-specialized ones for primitive fields.
+ * The same visibility rules as Jackson are used: public 'getter' ('is' for booleans) or public field for reading,
+ * public 'setter' or the field itself (if readable) for writing.
+ */
+public final class JabFieldAccessor {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Field field;
+    private final Class<?> type;
+
+    private final MethodHandle getter;          // (Object)Object
+    private final MethodHandle primitiveGetter; // (Object)<primitive type>
+    private final MethodHandle setter;          // (Object,Object)void
+    private final MethodHandle primitiveSetter; // (Object,<primitive type>)void
+
+    private JabFieldAccessor(Field field) {
+        this.field = field;
+        this.type = field.getType();
+
+        Class<?> clazz = field.getDeclaringClass();
+        String name = field.getName();
+        String cName = name.substring(0, 1).toUpperCase() + name.substring(1);
+        Method getterMethod = findMethod(clazz, "get" + cName);
+        if (getterMethod == null && (type == boolean.class || type == Boolean.class)) {
+            getterMethod = findMethod(clazz, "is" + cName);
+        }
+        Method setterMethod = findMethod(clazz, "set" + cName, type);
+        boolean publicField = Modifier.isPublic(field.getModifiers());
+
+        MethodHandle get = null;
+        MethodHandle set = null;
+        try {
+            if (getterMethod != null) {
+                getterMethod.setAccessible(true);   // public method, but the class itself might be not
+                get = LOOKUP.unreflect(getterMethod);
+            } else if (publicField) {
+                field.setAccessible(true);
+                get = LOOKUP.unreflectGetter(field);
+            }
+            if (setterMethod != null) {
+                setterMethod.setAccessible(true);
+                set = LOOKUP.unreflect(setterMethod);
+            } else if (get != null) {
+                // no 'setter', but the property is visible; set the field directly (even final one), just like Jackson does
+                field.setAccessible(true);
+                set = fieldSetter(field);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Can't access \"" + clazz.getSimpleName() + "\" field \"" + name + "\"", e);
+        }
+
+        this.getter = get != null ? get.asType(MethodType.methodType(Object.class, Object.class)) : null;
+        this.primitiveGetter = get != null && type.isPrimitive() ? get.asType(MethodType.methodType(type, Object.class)) : null;
+        this.setter = set != null ? set.asType(MethodType.methodType(void.class, Object.class, Object.class)) : null;
+        this.primitiveSetter = set != null && type.isPrimitive() ? set.asType(MethodType.methodType(void.class, Object.class, type)) : null;
+    }
+
+    /**
+     * Resolve accessors for the given bean field.
+     *
+     * @param field bean field
+     * @return new accessor
+     */
+    public static JabFieldAccessor of(Field field) {
+        return new JabFieldAccessor(field);
+    }
+
+    /**
+     * @return true if the field value can be read with a 'getter' or from a public field
+     */
+    public boolean isReadable() {
+        return getter != null;
+    }
+
+    /**
+     * @return true if the field value can be set with a 'setter' or directly, the same way Jackson would
+     */
+    public boolean isWritable() {
+        return setter != null;
+    }
+
+    public Object get(Object bean) throws Throwable {
+        return getter.invokeExact(bean);
+    }
+
+    public int getInt(Object bean) throws Throwable {
+        return (int) primitiveGetter.invokeExact(bean);
+    }
+
+    public long getLong(Object bean) throws Throwable {
+        return (long) primitiveGetter.invokeExact(bean);
+    }
+
+    public double getDouble(Object bean) throws Throwable {
+        return (double) primitiveGetter.invokeExact(bean);
+    }
+
+    public boolean getBoolean(Object bean) throws Throwable {
+        return (boolean) primitiveGetter.invokeExact(bean);
+    }
+
+    public void set(Object bean, Object value) throws Throwable {
+        setter.invokeExact(bean, value);
+    }
+
+    public void setInt(Object bean, int value) throws Throwable {
+        primitiveSetter.invokeExact(bean, value);
+    }
+
+    public void setLong(Object bean, long value) throws Throwable {
+        primitiveSetter.invokeExact(bean, value);
+    }
+
+    public void setDouble(Object bean, double value) throws Throwable {
+        primitiveSetter.invokeExact(bean, value);
+    }
+
+    public void setBoolean(Object bean, boolean value) throws Throwable {
+        primitiveSetter.invokeExact(bean, value);
+    }
+
+    private static MethodHandle fieldSetter(Field field) throws IllegalAccessException {
+        if (!Modifier.isFinal(field.getModifiers())) {
+            return LOOKUP.unreflectSetter(field);
+        }
+        // method handles refuse to write final fields, fall back to reflection bound to this field
+        try {
+            Class<?> type = field.getType();
+            if (type.isPrimitive()) {
+                String cType = type.getName().substring(0, 1).toUpperCase() + type.getName().substring(1);
+                return LOOKUP.findVirtual(Field.class, "set" + cType, MethodType.methodType(void.class, Object.class, type)).bindTo(field);
+            }
+            return LOOKUP.findVirtual(Field.class, "set", MethodType.methodType(void.class, Object.class, Object.class)).bindTo(field);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Method findMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+        try {
+            return clazz.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
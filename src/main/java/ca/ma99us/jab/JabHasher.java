@@ -3,7 +3,10 @@ package ca.ma99us.jab;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 
@@ -23,22 +26,47 @@ public class JabHasher {
         globalHasher = new JabHasher();
     }
 
+    // per-thread digest, reused between calls
+    private final ThreadLocal<PooledDigest> digests = new ThreadLocal<PooledDigest>();
+
     /**
-     * Calculate hash code of the given array of byte arrays
+     * Calculate hash code of the given array of byte arrays.
+     * Same as the hash of all of them concatenated, but without the concatenation.
      * @param datas array of byte arrays
      * @return long number hash
      */
     public long hash(byte[]... datas) {
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        PooledDigest pd = acquire();
         try {
             for (byte[] data : datas) {
-                os.write(data);
+                pd.md.update(data);
             }
+            return toHash(pd.md.digest());
         } catch (Exception e) {
             throw new IllegalArgumentException("Hash Error", e);
+        } finally {
+            pd.release();
         }
+    }
 
-        return hash(os.toByteArray());
+    /**
+     * Full digest of the given array of byte arrays, for when a long number hash is too short (e.g. cache keys of
+     * security checks).
+     * @param datas array of byte arrays
+     * @return SHA-256 digest bytes
+     */
+    public byte[] digest(byte[]... datas) {
+        PooledDigest pd = acquire();
+        try {
+            for (byte[] data : datas) {
+                pd.md.update(data);
+            }
+            return pd.md.digest();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Hash Error", e);
+        } finally {
+            pd.release();
+        }
     }
 
     /**
@@ -61,26 +89,179 @@ public class JabHasher {
      * @return long number hash
      */
     public long hash(byte[] data) {
+        PooledDigest pd = acquire();
         try {
-            MessageDigest md = MessageDigest.getInstance(ALGORITHM);
-            byte[] digest = md.digest(data);
+            return toHash(pd.md.digest(data));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Hash Error", e);
+        } finally {
+            pd.release();
+        }
+    }
 
-            // shrink it to 8 bytes
-            digest = wrapBytes(digest, 8);
+    /**
+     * Calculate hash code of the given buffer remaining bytes. The buffer position is not changed.
+     *
+     * @param data bytes buffer
+     * @return long number hash
+     */
+    public long hash(ByteBuffer data) {
+        PooledDigest pd = acquire();
+        try {
+            pd.md.update(data.duplicate());
+            return toHash(pd.md.digest());
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Hash Error", e);
+        } finally {
+            pd.release();
+        }
+    }
 
-            // build a long integer value
-            long msb = 0;
-            for (int i = 0; i < digest.length; i++) {
-                msb = (msb << 8) | (digest[i] & 0xff);
+    /**
+     * Calculate hash code of all the stream bytes. The stream is read to the end, but not closed.
+     *
+     * @param is input stream
+     * @return long number hash
+     * @throws IOException if reading fails
+     */
+    public long hash(InputStream is) throws IOException {
+        try (Hashing hashing = hashing()) {
+            byte[] buf = new byte[4096];
+            int len;
+            while ((len = is.read(buf)) >= 0) {
+                hashing.write(buf, 0, len);
             }
+            return hashing.getHash();
+        }
+    }
 
-            // make it Unsigned and not larger then MAX_SAFE_INTEGER
-            return Math.abs(msb) % MAX_SAFE_INTEGER;
+    /**
+     * Streaming hash sink. Whatever is written into it is hashed incrementally, so serializers could write
+     * straight into it, without intermediate strings or byte arrays.
+     * {@link Hashing#getHash()} gives the same value as {@link #hash(byte[])} of all the written bytes.
+     *
+     * @return new hashing output stream. Close it when done.
+     */
+    public Hashing hashing() {
+        return new Hashing(acquire());
+    }
+
+    /**
+     * Shrink the digest to a long number hash
+     */
+    private long toHash(byte[] digest) {
+        // shrink it to 8 bytes
+        digest = wrapBytes(digest, 8);
+
+        // build a long integer value
+        long msb = 0;
+        for (int i = 0; i < digest.length; i++) {
+            msb = (msb << 8) | (digest[i] & 0xff);
+        }
+
+        // make it Unsigned and not larger then MAX_SAFE_INTEGER
+        return Math.abs(msb) % MAX_SAFE_INTEGER;
+    }
+
+    private PooledDigest acquire() {
+        PooledDigest pd = digests.get();
+        if (pd == null) {
+            pd = new PooledDigest(newDigest());
+            digests.set(pd);
+        } else if (pd.inUse) {
+            return new PooledDigest(newDigest());    // some hashing is in progress, do not share
+        }
+        pd.inUse = true;
+        return pd;
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
         } catch (Exception e) {
             throw new IllegalArgumentException("Hash Error", e);
         }
     }
 
+    private static class PooledDigest {
+        private final MessageDigest md;
+        private boolean inUse;
+
+        PooledDigest(MessageDigest md) {
+            this.md = md;
+        }
+
+        void release() {
+            md.reset();
+            inUse = false;
+        }
+    }
+
+    /**
+     * Output stream which hashes everything written into it
+     */
+    public class Hashing extends OutputStream {
+        private PooledDigest pd;
+        private Long hash;
+
+        private Hashing(PooledDigest pd) {
+            this.pd = pd;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            digest().update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            digest().update(b, off, len);
+        }
+
+        /**
+         * Hash some more bytes
+         *
+         * @param data bytes buffer, its remaining bytes are consumed
+         */
+        public void write(ByteBuffer data) throws IOException {
+            digest().update(data);
+        }
+
+        /**
+         * Finish hashing. Nothing could be written after that.
+         *
+         * @return long number hash of all the written bytes
+         */
+        public long getHash() {
+            if (hash == null) {
+                if (pd == null) {
+                    throw new IllegalStateException("Hashing is closed");
+                }
+                try {
+                    hash = toHash(pd.md.digest());
+                } finally {
+                    close();
+                }
+            }
+            return hash;
+        }
+
+        private MessageDigest digest() throws IOException {
+            if (pd == null) {
+                throw new IOException("Hashing is finished");
+            }
+            return pd.md;
+        }
+
+        @Override
+        public void close() {
+            if (pd != null) {
+                pd.release();
+                pd = null;
+            }
+        }
+    }
+
     /**
      * Wrap byte array onto itself to create different length byte array as a result
      *
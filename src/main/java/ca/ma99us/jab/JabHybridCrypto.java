@@ -0,0 +1,217 @@
+package ca.ma99us.jab;
+
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Envelope encryption: payload is encrypted with a random symmetric data key (AES-GCM), and only the data key is
+ * encrypted (wrapped) with the asymmetric public key.
+ * Encrypted bytes are: wrapped key length (2 bytes), wrapped key, nonce, cipher text with the tag.
+ * One data key is reused for a number of messages (each with its own nonce), and unwrapped data keys are cached on
+ * decryption, so a batch of barcodes costs one asymmetric operation on each side.
+ */
+public class JabHybridCrypto extends JabAsyncCrypto {
+    private static final int MAX_CACHED_DATA_KEYS = 1024;
+    private static final int NONCE_LEN = 12;
+
+    protected final String dataKeyAlgorithm;
+    protected final String dataMode;
+    protected final int dataKeyLen;
+
+    /**
+     * Max number of messages encrypted with the same data key
+     */
+    @Getter
+    @Setter
+    private volatile int dataKeyUses = 256;
+
+    private volatile DataKey dataKey;
+    private final JabCache<WrappedKey, JabAeadCrypto> unwrapped = new JabCache<WrappedKey, JabAeadCrypto>(MAX_CACHED_DATA_KEYS, 0, TimeUnit.SECONDS);
+    private final LongAdder unwraps = new LongAdder();
+
+    /**
+     * Default algorithm; RSA-2048 OAEP wrapped AES-128-GCM data keys
+     */
+    public JabHybridCrypto() {
+        this("RSA", "RSA/ECB/OAEPWithSHA-256AndMGF1Padding", 256, "AES", JabAeadCrypto.AES_GCM, 16);   // default
+    }
+
+    /**
+     * @param keyAlgorithm     asymmetric algorithm name
+     * @param mode             asymmetric algorithm mode, used to wrap data keys
+     * @param keyLen           asymmetric key length in bytes
+     * @param dataKeyAlgorithm data key algorithm name
+     * @param dataMode         data AEAD cipher transformation
+     * @param dataKeyLen       data key length in bytes
+     */
+    public JabHybridCrypto(String keyAlgorithm, String mode, int keyLen, String dataKeyAlgorithm, String dataMode, int dataKeyLen) {
+        super(keyAlgorithm, mode, keyLen, 0);
+        this.dataKeyAlgorithm = dataKeyAlgorithm;
+        this.dataMode = dataMode;
+        this.dataKeyLen = dataKeyLen;
+    }
+
+    @Override
+    public JabHybridCrypto setRandomKey() {
+        unwrapped.clear();
+        return (JabHybridCrypto) super.setRandomKey();
+    }
+
+    @Override
+    public JabHybridCrypto setPublicKeyBytes(byte[] keyBytes) {
+        return (JabHybridCrypto) super.setPublicKeyBytes(keyBytes);
+    }
+
+    @Override
+    public JabHybridCrypto setPrivateKeyBytes(byte[] keyBytes) {
+        unwrapped.clear();
+        return (JabHybridCrypto) super.setPrivateKeyBytes(keyBytes);
+    }
+
+    /**
+     * @return number of asymmetric data key unwraps so far; the rest were served from the cache
+     */
+    public long getUnwraps() {
+        return unwraps.sum();
+    }
+
+    @Override
+    protected byte[] encrypt(byte[] value, Key key) {
+        DataKey dk = dataKey(key);
+        byte[] nonce = dk.crypto.newNonce();
+        byte[] encrypted = dk.crypto.encrypt(value, nonce);
+        byte[] bytes = new byte[2 + dk.wrapped.length + nonce.length + encrypted.length];
+        int off = writeHeader(bytes, dk.wrapped, nonce);
+        System.arraycopy(encrypted, 0, bytes, off, encrypted.length);
+        return bytes;
+    }
+
+    @Override
+    protected byte[] decrypt(byte[] encrypted, Key key) {
+        try {
+            int len = (encrypted[0] & 0xff) << 8 | (encrypted[1] & 0xff);
+            int off = 2 + len + NONCE_LEN;
+            if (off > encrypted.length) {
+                throw new IOException("Unexpected end of encrypted bytes");
+            }
+            JabAeadCrypto crypto = unwrap(Arrays.copyOfRange(encrypted, 2, 2 + len), key);
+            byte[] nonce = Arrays.copyOfRange(encrypted, 2 + len, off);
+            return crypto.decrypt(Arrays.copyOfRange(encrypted, off, encrypted.length), nonce);
+        } catch (IllegalArgumentException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Decryption Error", ex);
+        }
+    }
+
+    @Override
+    protected OutputStream encrypting(OutputStream os, Key key) {
+        DataKey dk = dataKey(key);
+        byte[] nonce = dk.crypto.newNonce();
+        byte[] header = new byte[2 + dk.wrapped.length + nonce.length];
+        writeHeader(header, dk.wrapped, nonce);
+        try {
+            os.write(header);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Encryption Error", ex);
+        }
+        return dk.crypto.encrypting(os, nonce);
+    }
+
+    @Override
+    protected InputStream decrypting(InputStream is, Key key) {
+        try {
+            byte[] len = readFully(is, 2);
+            JabAeadCrypto crypto = unwrap(readFully(is, (len[0] & 0xff) << 8 | (len[1] & 0xff)), key);
+            return crypto.decrypting(is, readFully(is, NONCE_LEN));
+        } catch (IllegalArgumentException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Decryption Error", ex);
+        }
+    }
+
+    /**
+     * Current data key, or a new one once the current one is used up
+     */
+    private DataKey dataKey(Key key) {
+        DataKey dk = dataKey;
+        if (dk == null || dk.key != key || dk.uses.incrementAndGet() > dataKeyUses) {
+            byte[] keyBytes = new byte[dataKeyLen];
+            cryptoConfig.getNonBlockingSecureRandom().nextBytes(keyBytes);
+            byte[] wrapped = super.encrypt(keyBytes, key);
+            if (wrapped.length > 0xffff) {
+                throw new IllegalArgumentException("Wrapped data key is too long: " + wrapped.length);
+            }
+            dk = new DataKey(key, newDataCrypto().setPrivateKeyBytes(keyBytes), wrapped);
+            dataKey = dk;
+        }
+        return dk;
+    }
+
+    /**
+     * Unwrap the data key, or take it from the cache
+     */
+    private JabAeadCrypto unwrap(byte[] wrapped, Key key) {
+        WrappedKey wk = new WrappedKey(wrapped);
+        JabAeadCrypto crypto = unwrapped.get(wk);
+        if (crypto == null) {
+            unwraps.increment();
+            crypto = newDataCrypto().setPrivateKeyBytes(super.decrypt(wrapped, key));
+            unwrapped.put(wk, crypto);  // scan resistant; a flood of new data keys does not evict the ones in use
+        }
+        return crypto;
+    }
+
+    private JabAeadCrypto newDataCrypto() {
+        return new JabAeadCrypto(dataKeyAlgorithm, dataMode, dataKeyLen, NONCE_LEN);
+    }
+
+    private static int writeHeader(byte[] bytes, byte[] wrapped, byte[] nonce) {
+        bytes[0] = (byte) (wrapped.length >>> 8);
+        bytes[1] = (byte) wrapped.length;
+        System.arraycopy(wrapped, 0, bytes, 2, wrapped.length);
+        System.arraycopy(nonce, 0, bytes, 2 + wrapped.length, nonce.length);
+        return 2 + wrapped.length + nonce.length;
+    }
+
+    private static byte[] readFully(InputStream is, int len) throws IOException {
+        byte[] bytes = new byte[len];
+        for (int off = 0; off < len; ) {
+            int n = is.read(bytes, off, len - off);
+            if (n < 0) {
+                throw new IOException("Unexpected end of encrypted bytes");
+            }
+            off += n;
+        }
+        return bytes;
+    }
+
+    private static class DataKey {
+        private final Key key;
+        private final JabAeadCrypto crypto;
+        private final byte[] wrapped;
+        private final AtomicInteger uses = new AtomicInteger(1);
+
+        DataKey(Key key, JabAeadCrypto crypto, byte[] wrapped) {
+            this.key = key;
+            this.crypto = crypto;
+            this.wrapped = wrapped;
+        }
+    }
+
+    @Data
+    private static class WrappedKey {
+        private final byte[] bytes;
+    }
+}
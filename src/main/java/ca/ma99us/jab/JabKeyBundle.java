@@ -0,0 +1,377 @@
+package ca.ma99us.jab;
+
+import ca.ma99us.jab.headers.CryptoHeader;
+import ca.ma99us.jab.headers.SignatureHeader;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Compact binary bundle of already derived crypto and signer keys, so slow key derivation (PBKDF2) runs once offline,
+ * and keys are loaded at startup in one read.
+ * Each entry has the secret class name, its algorithm parameters (also the data key ones of {@link JabHybridCrypto}),
+ * key bytes and key id. Key ids are verified on import.
+ * The bundle holds raw keys, so protect it the same way as any other key store.
+ */
+public class JabKeyBundle {
+    private static final int MAGIC = 0x4a41424b;   // "JABK"
+    private static final int VERSION = 2;     // 2 adds the data key parameters
+
+    @Getter
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    /**
+     * Add secret's keys to the bundle
+     *
+     * @param secret crypto or signer with the key(s) already set
+     * @return this
+     */
+    public JabKeyBundle add(AbstractSecret<?> secret) {
+        String mode = null;
+        int ivLen = 0;
+        byte[] publicKey = null;
+        String dataKeyAlgorithm = null;
+        String dataMode = null;
+        int dataKeyLen = 0;
+        if (secret instanceof JabCrypto) {
+            mode = ((JabCrypto) secret).mode;
+            ivLen = ((JabCrypto) secret).ivLen;
+        }
+        if (secret instanceof JabHybridCrypto) {
+            dataKeyAlgorithm = ((JabHybridCrypto) secret).dataKeyAlgorithm;
+            dataMode = ((JabHybridCrypto) secret).dataMode;
+            dataKeyLen = ((JabHybridCrypto) secret).dataKeyLen;
+        }
+        if (secret instanceof JabAsyncCrypto) {
+            publicKey = ((JabAsyncCrypto) secret).getPublicKeyBytes();
+        } else if (secret instanceof JabAsyncSigner) {
+            mode = ((JabAsyncSigner) secret).mode;
+            publicKey = ((JabAsyncSigner) secret).getPublicKeyBytes();
+        }
+        entries.add(new Entry(secret.getClass().getName(), secret.keyAlgorithm, mode, secret.keyLen, ivLen,
+                dataKeyAlgorithm, dataMode, dataKeyLen, secret.getPrivateKeyBytes(), publicKey, secret.getKeyId()));
+        return this;
+    }
+
+    /**
+     * Add all the secrets keys to the bundle
+     *
+     * @param secrets cryptos or signers with the key(s) already set
+     * @return this
+     */
+    public JabKeyBundle addAll(Collection<? extends AbstractSecret<?>> secrets) {
+        for (AbstractSecret<?> secret : secrets) {
+            add(secret);
+        }
+        return this;
+    }
+
+    /**
+     * Re-create all the cryptos and signers from the bundle
+     *
+     * @return secrets in the bundle order
+     * @throws IOException if a secret can not be created, or its key id does not match
+     */
+    public List<AbstractSecret<?>> secrets() throws IOException {
+        List<AbstractSecret<?>> secrets = new ArrayList<AbstractSecret<?>>(entries.size());
+        for (Entry entry : entries) {
+            secrets.add(entry.toSecret());
+        }
+        return secrets;
+    }
+
+    /**
+     * Register all the bundle cryptos in {@link CryptoHeader#getDecryptors()},
+     * and all the signers in {@link SignatureHeader#getVerifiers()}
+     *
+     * @return registered secrets
+     * @throws IOException if a secret can not be created, or its key id does not match
+     */
+    public List<AbstractSecret<?>> register() throws IOException {
+        List<AbstractSecret<?>> secrets = secrets();
+        for (AbstractSecret<?> secret : secrets) {
+            if (secret instanceof JabCrypto) {
+                CryptoHeader.getDecryptors().register((JabCrypto) secret);
+            } else if (secret instanceof JabSigner) {
+                SignatureHeader.getVerifiers().register((JabSigner) secret);
+            }
+        }
+        return secrets;
+    }
+
+    /**
+     * Write the bundle
+     *
+     * @param os stream to write to. It is not closed.
+     * @throws IOException if writing fails
+     */
+    public void write(OutputStream os) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+            writeString(out, entry.getType());
+            writeString(out, entry.getKeyAlgorithm());
+            writeString(out, entry.getMode());
+            out.writeInt(entry.getKeyLen());
+            out.writeInt(entry.getIvLen());
+            writeString(out, entry.getDataKeyAlgorithm());
+            writeString(out, entry.getDataMode());
+            out.writeInt(entry.getDataKeyLen());
+            writeBytes(out, entry.getPrivateKey());
+            writeBytes(out, entry.getPublicKey());
+            out.writeLong(entry.getKeyId());
+        }
+        out.flush();
+        bos.writeTo(os);
+    }
+
+    /**
+     * Write the bundle into a file
+     *
+     * @param path file to write
+     * @throws IOException if writing fails
+     */
+    public void write(Path path) throws IOException {
+        try (OutputStream os = Files.newOutputStream(path)) {
+            write(os);
+        }
+    }
+
+    /**
+     * Read the bundle file in one read
+     *
+     * @param path   bundle file
+     * @param mapped true to memory-map the file instead of reading it
+     * @return the bundle
+     * @throws IOException if reading fails, or it is not a valid bundle
+     */
+    public static JabKeyBundle read(Path path, boolean mapped) throws IOException {
+        if (!mapped) {
+            return read(ByteBuffer.wrap(Files.readAllBytes(path)));
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Read the bundle from the buffer
+     *
+     * @param buf bundle bytes
+     * @return the bundle
+     * @throws IOException if it is not a valid bundle
+     */
+    public static JabKeyBundle read(ByteBuffer buf) throws IOException {
+        try {
+            if (buf.getInt() != MAGIC) {
+                throw new IOException("Not a Jab key bundle");
+            }
+            int version = buf.getInt();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported Jab key bundle version: " + version);
+            }
+            JabKeyBundle bundle = new JabKeyBundle();
+            for (int i = 0, count = buf.getInt(); i < count; i++) {
+                String type = readString(buf);
+                String keyAlgorithm = readString(buf);
+                String mode = readString(buf);
+                int keyLen = buf.getInt();
+                int ivLen = buf.getInt();
+                String dataKeyAlgorithm = version > 1 ? readString(buf) : null;
+                String dataMode = version > 1 ? readString(buf) : null;
+                int dataKeyLen = version > 1 ? buf.getInt() : 0;
+                bundle.entries.add(new Entry(type, keyAlgorithm, mode, keyLen, ivLen, dataKeyAlgorithm, dataMode, dataKeyLen,
+                        readBytes(buf), readBytes(buf), buf.getLong()));
+            }
+            return bundle;
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            throw new IOException("Bad Jab key bundle", ex);
+        }
+    }
+
+    /**
+     * Derive secrets keys from strings (slow PBKDF2) in parallel. Use it to build bundles, or when bundles
+     * are not available.
+     *
+     * @param derivations secrets with their key and salt strings
+     * @param executor    executor to run derivations in, or null for {@link ForkJoinPool#commonPool()}
+     * @throws IllegalArgumentException if any derivation fails
+     */
+    public static void derive(Collection<Derivation> derivations, Executor executor) {
+        if (executor == null) {
+            executor = ForkJoinPool.commonPool();
+        }
+        List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(derivations.size());
+        for (final Derivation d : derivations) {
+            FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+                @Override
+                public void run() {
+                    d.getSecret().setSecretKey(d.getKey(), d.getSalt());
+                }
+            }, null);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException ex) {
+                task.run();     // saturated executor, do it ourselves
+            }
+            tasks.add(task);
+        }
+        try {
+            for (FutureTask<Void> task : tasks) {
+                task.run();     // still queued ones are run here, so derivations nested in the executor do not deadlock
+                task.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException("Keys derivation interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalArgumentException("Keys derivation failed", ex.getCause());
+        }
+    }
+
+    /**
+     * @return all the derivations secrets
+     */
+    public static List<AbstractSecret<?>> secrets(Collection<Derivation> derivations) {
+        List<AbstractSecret<?>> secrets = new ArrayList<AbstractSecret<?>>(derivations.size());
+        for (Derivation d : derivations) {
+            secrets.add(d.getSecret());
+        }
+        return Collections.unmodifiableList(secrets);
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        writeBytes(out, str != null ? str.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = readBytes(buf);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    private static byte[] readBytes(ByteBuffer buf) {
+        int len = buf.getInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * A secret to derive its key from a key string and salt
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Derivation {
+        private final AbstractSecret<?> secret;
+        private final String key;
+        private final String salt;
+    }
+
+    /**
+     * Single secret keys
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Entry {
+        private final String type;
+        private final String keyAlgorithm;
+        private final String mode;
+        private final int keyLen;
+        private final int ivLen;
+        private final String dataKeyAlgorithm;
+        private final String dataMode;
+        private final int dataKeyLen;
+        private final byte[] privateKey;
+        private final byte[] publicKey;
+        private final long keyId;
+
+        /**
+         * Re-create the crypto or signer
+         *
+         * @return secret with the keys set
+         * @throws IOException if the secret can not be created, or its key id does not match
+         */
+        public AbstractSecret<?> toSecret() throws IOException {
+            // nothing but secrets is loaded, let alone instantiated, from the bundle
+            Class<?> clazz;
+            try {
+                clazz = Class.forName(type, false, JabKeyBundle.class.getClassLoader());
+            } catch (ClassNotFoundException ex) {
+                throw new IOException("Can not create " + type + " from the key bundle", ex);
+            }
+            if (!AbstractSecret.class.isAssignableFrom(clazz)) {
+                throw new IOException("Not a secret type " + type + " in the key bundle");
+            }
+            AbstractSecret<?> secret;
+            try {
+                if (JabHybridCrypto.class.isAssignableFrom(clazz)) {
+                    if (dataKeyAlgorithm == null) {
+                        throw new IOException("No data key parameters");
+                    }
+                    secret = (AbstractSecret<?>) clazz.getConstructor(String.class, String.class, int.class, String.class, String.class, int.class)
+                            .newInstance(keyAlgorithm, mode, keyLen, dataKeyAlgorithm, dataMode, dataKeyLen);
+                } else if (JabCrypto.class.isAssignableFrom(clazz)) {
+                    secret = (AbstractSecret<?>) clazz.getConstructor(String.class, String.class, int.class, int.class)
+                            .newInstance(keyAlgorithm, mode, keyLen, ivLen);
+                } else if (JabAsyncSigner.class.isAssignableFrom(clazz)) {
+                    secret = (AbstractSecret<?>) clazz.getConstructor(String.class, String.class, int.class)
+                            .newInstance(keyAlgorithm, mode, keyLen);
+                } else {
+                    secret = (AbstractSecret<?>) clazz.getConstructor(String.class, int.class).newInstance(keyAlgorithm, keyLen);
+                }
+                if (privateKey != null) {
+                    secret.setPrivateKeyBytes(privateKey);
+                }
+                if (publicKey != null) {
+                    if (secret instanceof JabAsyncCrypto) {
+                        ((JabAsyncCrypto) secret).setPublicKeyBytes(publicKey);
+                    } else if (secret instanceof JabAsyncSigner) {
+                        ((JabAsyncSigner) secret).setPublicKeyBytes(publicKey);
+                    }
+                }
+            } catch (Exception ex) {
+                throw new IOException("Can not create " + type + " from the key bundle", ex);
+            }
+            if (secret.getKeyId() != keyId) {
+                throw new IOException("Key id mismatch; expected " + keyId + ", but got " + secret.getKeyId());
+            }
+            return secret;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package ca.ma99us.jab;
+
+import lombok.Data;
+import lombok.Getter;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of key pairs pre-generated on background threads, so asymmetric setRandomKey() calls return immediately.
+ * Pairs are kept per key algorithm, provider and key size; each pair is handed out only once.
+ * The pool is refilled up to its capacity as soon as it drops to the low-water mark. When it is empty, the pair is
+ * generated by the caller thread, and counted as a miss. If background generation of a key type fails, the failure
+ * is counted, and that type is not refilled until a caller generates a pair of it successfully.
+ * Enable it by returning an instance from {@link AbstractSecret.CryptoConfig#getKeyPairPool()}.
+ */
+public class JabKeyPairPool {
+    @Getter
+    private final int capacity;
+    @Getter
+    private final int lowWaterMark;
+
+    private final ConcurrentHashMap<Key, Slot> slots = new ConcurrentHashMap<Key, Slot>();
+    private final ExecutorService executor;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Pool of 32 pairs per key type, refilled below 8, by a single background thread
+     */
+    public JabKeyPairPool() {
+        this(32, 8, 1);
+    }
+
+    /**
+     * @param capacity     max number of pairs kept per key type
+     * @param lowWaterMark refill when the number of pairs drops to this
+     * @param threads      number of background generator threads
+     */
+    public JabKeyPairPool(int capacity, int lowWaterMark, int threads) {
+        if (capacity <= 0 || lowWaterMark < 0 || lowWaterMark >= capacity || threads <= 0) {
+            throw new IllegalArgumentException("Bad key pair pool size; capacity: " + capacity + ", low-water mark: "
+                    + lowWaterMark + ", threads: " + threads);
+        }
+        this.capacity = capacity;
+        this.lowWaterMark = lowWaterMark;
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "jab-keypair-pool-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Take a pre-generated key pair, or generate one right away if there is none
+     *
+     * @param keyAlgorithm key algorithm name
+     * @param provider     security provider, or null for default JVM providers
+     * @param keyBits      key size in bits
+     * @param random       random to generate pairs with. Should be a non-blocking one.
+     * @return new key pair, never given to anyone else
+     * @throws Exception if a key pair can not be generated
+     */
+    public KeyPair take(String keyAlgorithm, Provider provider, int keyBits, SecureRandom random) throws Exception {
+        Slot slot = slot(keyAlgorithm, provider, keyBits, random);
+        KeyPair keyPair = slot.pairs.poll();
+        if (keyPair != null) {
+            hits.increment();
+            if (slot.depth.decrementAndGet() <= lowWaterMark) {
+                refill(slot);
+            }
+            return keyPair;
+        }
+        misses.increment();
+        refill(slot);
+        keyPair = slot.generate();
+        slot.failed = false;    // works now, resume background refills
+        return keyPair;
+    }
+
+    /**
+     * Start filling the pool of the key type in background, e.g. on startup
+     *
+     * @param keyAlgorithm key algorithm name
+     * @param provider     security provider, or null for default JVM providers
+     * @param keyBits      key size in bits
+     * @param random       random to generate pairs with. Should be a non-blocking one.
+     * @return this
+     */
+    public JabKeyPairPool warmUp(String keyAlgorithm, Provider provider, int keyBits, SecureRandom random) {
+        refill(slot(keyAlgorithm, provider, keyBits, random));
+        return this;
+    }
+
+    /**
+     * @return number of ready key pairs of all types
+     */
+    public int getDepth() {
+        int depth = 0;
+        for (Slot slot : slots.values()) {
+            depth += slot.depth.get();
+        }
+        return depth;
+    }
+
+    /**
+     * @return number of ready key pairs of the given type
+     */
+    public int getDepth(String keyAlgorithm, Provider provider, int keyBits) {
+        Slot slot = slots.get(new Key(keyAlgorithm, provider != null ? provider.getName() : null, keyBits));
+        return slot != null ? slot.depth.get() : 0;
+    }
+
+    /**
+     * @return number of pairs taken from the pool
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of pairs generated by the callers, because the pool was empty
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of failed background refills
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Stop background generation. Ready pairs can still be taken.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Slot slot(String keyAlgorithm, Provider provider, int keyBits, SecureRandom random) {
+        Key key = new Key(keyAlgorithm, provider != null ? provider.getName() : null, keyBits);
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            slot = new Slot(keyAlgorithm, provider, keyBits, random);
+            Slot prev = slots.putIfAbsent(key, slot);
+            if (prev != null) {
+                slot = prev;
+            }
+        }
+        return slot;
+    }
+
+    private void refill(final Slot slot) {
+        if (slot.failed || !slot.refilling.compareAndSet(false, true)) {
+            return;     // broken, or already on it
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (slot.depth.get() < capacity && !Thread.currentThread().isInterrupted()) {
+                            slot.pairs.offer(slot.generate());
+                            slot.depth.incrementAndGet();
+                        }
+                    } catch (Exception ex) {
+                        // stop refilling; callers generate themselves, and fail if it is still broken
+                        failures.increment();
+                        slot.failed = true;
+                    } finally {
+                        slot.refilling.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            slot.refilling.set(false);  // shut down
+        }
+    }
+
+    @Data
+    private static class Key {
+        private final String algorithm;
+        private final String provider;
+        private final int keyBits;
+    }
+
+    private static class Slot {
+        private final String keyAlgorithm;
+        private final Provider provider;
+        private final int keyBits;
+        private final SecureRandom random;
+        private final Queue<KeyPair> pairs = new ConcurrentLinkedQueue<KeyPair>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final AtomicBoolean refilling = new AtomicBoolean();
+        private volatile boolean failed;
+
+        Slot(String keyAlgorithm, Provider provider, int keyBits, SecureRandom random) {
+            this.keyAlgorithm = keyAlgorithm;
+            this.provider = provider;
+            this.keyBits = keyBits;
+            this.random = random;
+        }
+
+        KeyPair generate() throws Exception {
+            KeyPairGenerator keyGen = provider != null ? KeyPairGenerator.getInstance(keyAlgorithm, provider) : KeyPairGenerator.getInstance(keyAlgorithm);
+            keyGen.initialize(keyBits, random);
+            return keyGen.generateKeyPair();
+        }
+    }
+}
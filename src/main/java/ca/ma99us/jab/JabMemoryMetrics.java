@@ -0,0 +1,235 @@
+package ca.ma99us.jab;
+
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * In-memory lock-free {@link JabMetrics}: counters and log2 latency histograms per format id, stage and header.
+ * Enable with JabMetrics.setGlobalMetrics(new JabMemoryMetrics()), then take {@link #snapshot()} at any time.
+ */
+public class JabMemoryMetrics extends JabMetrics {
+    /**
+     * bucket i counts latencies in [2^(i-1), 2^i) nanos; the last one is everything above ~2 minutes
+     */
+    public static final int BUCKETS = 38;
+    private static final int MAX_CAUSES = 32;
+    private static final String OTHER_CAUSES = "other";
+
+    private final ConcurrentHashMap<Key, Stats> stats = new ConcurrentHashMap<Key, Stats>();
+
+    @Getter
+    @Setter
+    private volatile boolean enabled = true;
+
+    @Override
+    public void record(long formatId, Stage stage, String name, long nanos, long bytesIn, long bytesOut) {
+        stats(formatId, stage, name).record(nanos, bytesIn, bytesOut);
+    }
+
+    @Override
+    public void failure(long formatId, Stage stage, String name, Throwable cause) {
+        stats(formatId, stage, name).failure(cause);
+    }
+
+    /**
+     * @return current values of all the counters, ordered by format id, stage and name
+     */
+    public List<StageSnapshot> snapshot() {
+        List<StageSnapshot> list = new ArrayList<StageSnapshot>(stats.size());
+        for (Map.Entry<Key, Stats> e : stats.entrySet()) {
+            list.add(e.getValue().snapshot(e.getKey()));
+        }
+        Collections.sort(list, new Comparator<StageSnapshot>() {
+            @Override
+            public int compare(StageSnapshot o1, StageSnapshot o2) {
+                int c = Long.compare(o1.getFormatId(), o2.getFormatId());
+                if (c == 0) {
+                    c = o1.getStage().compareTo(o2.getStage());
+                }
+                return c != 0 ? c : o1.getName().compareTo(o2.getName());
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Find counters snapshot of a single stage
+     *
+     * @return the stage counters, or null if nothing was recorded
+     */
+    public StageSnapshot snapshot(long formatId, Stage stage, String name) {
+        Key key = new Key(formatId, stage, name);
+        Stats s = stats.get(key);
+        return s != null ? s.snapshot(key) : null;
+    }
+
+    /**
+     * Drop all the counters
+     */
+    public void reset() {
+        stats.clear();
+    }
+
+    private Stats stats(long formatId, Stage stage, String name) {
+        Key key = new Key(formatId, stage, name != null ? name : "");
+        Stats s = stats.get(key);
+        if (s == null) {
+            s = new Stats();
+            Stats prev = stats.putIfAbsent(key, s);
+            if (prev != null) {
+                s = prev;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * @return histogram bucket index of the latency
+     */
+    static int bucket(long nanos) {
+        int idx = 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0));
+        return Math.min(idx, BUCKETS - 1);
+    }
+
+    @Data
+    private static class Key {
+        private final long formatId;
+        private final Stage stage;
+        private final String name;
+    }
+
+    private static class Stats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(new LongBinaryOperator() {
+            @Override
+            public long applyAsLong(long left, long right) {
+                return Math.max(left, right);
+            }
+        }, 0);
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder[] histogram = new LongAdder[BUCKETS];
+        private final ConcurrentHashMap<String, LongAdder> causes = new ConcurrentHashMap<String, LongAdder>();
+
+        Stats() {
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+
+        void record(long time, long in, long out) {
+            count.increment();
+            nanos.add(time);
+            maxNanos.accumulate(time);
+            histogram[bucket(time)].increment();
+            if (in != 0) {
+                bytesIn.add(in);
+            }
+            if (out != 0) {
+                bytesOut.add(out);
+            }
+        }
+
+        void failure(Throwable cause) {
+            failures.increment();
+            String key = cause.getClass().getSimpleName() + (cause.getMessage() != null ? ": " + cause.getMessage() : "");
+            LongAdder counter = causes.get(key);
+            if (counter == null) {
+                if (causes.size() >= MAX_CAUSES) {
+                    key = OTHER_CAUSES;     // do not let random messages grow the map
+                }
+                counter = new LongAdder();
+                LongAdder prev = causes.putIfAbsent(key, counter);
+                if (prev != null) {
+                    counter = prev;
+                }
+            }
+            counter.increment();
+        }
+
+        StageSnapshot snapshot(Key key) {
+            long[] buckets = new long[histogram.length];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = histogram[i].sum();
+            }
+            Map<String, Long> causeCounts = new LinkedHashMap<String, Long>();
+            for (Map.Entry<String, LongAdder> e : causes.entrySet()) {
+                causeCounts.put(e.getKey(), e.getValue().sum());
+            }
+            return new StageSnapshot(key.getFormatId(), key.getStage(), key.getName(), count.sum(), nanos.sum(), maxNanos.get(),
+                    bytesIn.sum(), bytesOut.sum(), failures.sum(), buckets, causeCounts);
+        }
+    }
+
+    /**
+     * Point in time counters of a single stage. Counters are read one by one, so they might be slightly inconsistent
+     * with each other under load.
+     */
+    @Data
+    public static class StageSnapshot {
+        private final long formatId;
+        private final Stage stage;
+        private final String name;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long bytesIn;
+        private final long bytesOut;
+        private final long failures;
+        private final long[] histogram;
+        private final Map<String, Long> failureCauses;
+
+        /**
+         * @return average latency
+         */
+        public long getMeanNanos() {
+            return count > 0 ? totalNanos / count : 0;
+        }
+
+        /**
+         * Approximate latency percentile; upper bound of its histogram bucket.
+         *
+         * @param percentile 0.0 - 100.0
+         * @return latency nanos
+         */
+        public long getPercentileNanos(double percentile) {
+            long total = 0;
+            for (long c : histogram) {
+                total += c;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= Math.max(rank, 1)) {
+                    return Math.min(1L << i, maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d %s %s: count=%d, mean=%dns, p50=%dns, p99=%dns, max=%dns, in=%d, out=%d, failures=%d %s",
+                    formatId, stage, name, count, getMeanNanos(), getPercentileNanos(50), getPercentileNanos(99), maxNanos,
+                    bytesIn, bytesOut, failures, failureCauses.isEmpty() ? "" : failureCauses.toString());
+        }
+    }
+}
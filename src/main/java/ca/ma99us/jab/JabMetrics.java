@@ -0,0 +1,481 @@
+package ca.ma99us.jab;
+
+import ca.ma99us.jab.headers.JabHeader;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Injectable instrumentation of Jab encoding/decoding. Disabled by default.
+ * Reports per format id: each stage time (self time, excluding nested stages), bytes in/out, and failure causes.
+ * Header stages are reported for every header, including members of header groups.
+ */
+public abstract class JabMetrics {
+    /**
+     * Disabled metrics; costs a single check per operation
+     */
+    public static final JabMetrics NOOP = new JabMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void record(long formatId, Stage stage, String name, long nanos, long bytesIn, long bytesOut) {
+            // no-op
+        }
+
+        @Override
+        public void failure(long formatId, Stage stage, String name, Throwable cause) {
+            // no-op
+        }
+    };
+
+    @Getter
+    @Setter
+    private static JabMetrics globalMetrics = NOOP;
+
+    private static final ThreadLocal<Probe> probes = new ThreadLocal<Probe>();
+
+    /**
+     * Stages of encoding/decoding
+     */
+    public enum Stage {
+        /**
+         * whole objectToJab call
+         */
+        ENCODE,
+        /**
+         * whole jabToObject call
+         */
+        DECODE,
+        /**
+         * Jab envelope (prefix, format id, header/payload offsets) scanning
+         */
+        ENVELOPE,
+        /**
+         * header populate
+         */
+        POPULATE,
+        /**
+         * java bean to json array values
+         */
+        SERIALIZE,
+        /**
+         * header payload bytes modification
+         */
+        OBFUSCATE,
+        /**
+         * header payload bytes restoration
+         */
+        DEOBFUSCATE,
+        /**
+         * json array values to java bean
+         */
+        BIND,
+        /**
+         * header validate
+         */
+        VALIDATE
+    }
+
+    /**
+     * @return false to skip all the instrumentation
+     */
+    public abstract boolean isEnabled();
+
+    /**
+     * A single stage measurement
+     *
+     * @param formatId barcode format id
+     * @param stage    the stage
+     * @param name     header or payload class simple name
+     * @param nanos    stage self time
+     * @param bytesIn  bytes the stage consumed, or 0
+     * @param bytesOut bytes the stage produced, or 0
+     */
+    public abstract void record(long formatId, Stage stage, String name, long nanos, long bytesIn, long bytesOut);
+
+    /**
+     * A failed encoding/decoding
+     *
+     * @param formatId barcode format id, or 0 if unknown
+     * @param stage    the stage which failed
+     * @param name     header or payload class simple name
+     * @param cause    the error
+     */
+    public abstract void failure(long formatId, Stage stage, String name, Throwable cause);
+
+    /**
+     * @return true if global metrics are enabled
+     */
+    public static boolean isActive() {
+        return globalMetrics.isEnabled();
+    }
+
+    /**
+     * Start measuring an operation in the current thread.
+     *
+     * @param formatId barcode format id
+     * @param stage    {@link Stage#ENCODE} or {@link Stage#DECODE}
+     * @param name     payload class simple name
+     * @return the operation probe, or null if metrics are disabled
+     */
+    public static Probe start(long formatId, Stage stage, String name) {
+        return start(formatId, stage, name, System.nanoTime());
+    }
+
+    /**
+     * Start measuring an operation in the current thread, which actually started a bit earlier.
+     *
+     * @param formatId barcode format id
+     * @param stage    {@link Stage#ENCODE} or {@link Stage#DECODE}
+     * @param name     payload class simple name
+     * @param started  {@link System#nanoTime()} when the operation started, or 0 for now
+     * @return the operation probe, or null if metrics are disabled
+     */
+    public static Probe start(long formatId, Stage stage, String name, long started) {
+        JabMetrics metrics = globalMetrics;
+        if (!metrics.isEnabled()) {
+            return null;
+        }
+        Probe probe = new Probe(metrics, formatId, stage, name, started != 0 ? started : System.nanoTime(), probes.get());
+        probes.set(probe);
+        return probe;
+    }
+
+    /**
+     * @return the operation probe of the current thread, or null if metrics are disabled or there is no operation
+     */
+    public static Probe currentProbe() {
+        return globalMetrics.isEnabled() ? probes.get() : null;
+    }
+
+    /**
+     * Start a new frame, if there is a probe
+     *
+     * @param probe current probe or null
+     * @return started frame or null
+     */
+    public static Frame begin(Probe probe, Stage stage, String name) {
+        return probe != null ? probe.begin(stage, name) : null;
+    }
+
+    /**
+     * Finish the frame, if there is one
+     *
+     * @param probe current probe or null
+     * @param frame started frame or null
+     */
+    public static void end(Probe probe, Frame frame) {
+        if (frame != null) {
+            probe.end(frame);
+        }
+    }
+
+    /**
+     * @return header or payload class simple name
+     */
+    public static String nameOf(Object obj) {
+        return obj != null ? nameOf(obj.getClass()) : "";
+    }
+
+    /**
+     * @return header or payload class simple name
+     */
+    public static String nameOf(Class<?> clazz) {
+        return clazz != null ? clazz.getSimpleName() : "";
+    }
+
+    /**
+     * Measured piece of work. Nested frames time is subtracted from the parent frame's time.
+     */
+    public static final class Frame {
+        private final Stage stage;
+        private final String name;
+        private long self;
+        private long entered;
+        private long children;
+        private Frame parent;
+        private long bytesIn;
+        private long bytesOut;
+
+        private Frame(Stage stage, String name) {
+            this.stage = stage;
+            this.name = name;
+        }
+
+        public void addBytes(long in, long out) {
+            bytesIn += in;
+            bytesOut += out;
+        }
+
+        public void addNanos(long nanos) {
+            self += nanos;
+        }
+    }
+
+    /**
+     * Measurements of a single encoding/decoding operation in one thread.
+     * Reported to the metrics when finished.
+     */
+    public static final class Probe {
+        private final JabMetrics metrics;
+        private final long formatId;
+        private final Frame root;
+        private final long started;
+        private final Probe previous;
+        private final List<Frame> frames = new ArrayList<Frame>();
+        private Frame current;
+        private boolean failed;
+
+        private Probe(JabMetrics metrics, long formatId, Stage stage, String name, long started, Probe previous) {
+            this.metrics = metrics;
+            this.formatId = formatId;
+            this.root = new Frame(stage, name);
+            this.started = started;
+            this.previous = previous;
+        }
+
+        /**
+         * @return {@link System#nanoTime()} when the operation started
+         */
+        public long getStarted() {
+            return started;
+        }
+
+        /**
+         * Start a new frame
+         *
+         * @return started frame
+         */
+        public Frame begin(Stage stage, String name) {
+            Frame frame = new Frame(stage, name);
+            frames.add(frame);
+            enter(frame);
+            return frame;
+        }
+
+        /**
+         * Finish the frame
+         */
+        public void end(Frame frame) {
+            exit(frame);
+        }
+
+        /**
+         * Measure header obfuscating stream: its construction, and all writes into it.
+         */
+        public OutputStream obfuscating(JabHeader<?> header, OutputStream os, StreamFactory<OutputStream> factory) throws IOException {
+            Frame frame = begin(Stage.OBFUSCATE, nameOf(header));
+            CountingOutputStream counter = new CountingOutputStream(os, frame);
+            OutputStream hos = factory.create(counter);
+            end(frame);
+            return new ProbeOutputStream(hos, this, frame);
+        }
+
+        /**
+         * Measure header deobfuscating stream: its construction, and all reads from it.
+         */
+        public InputStream deobfuscating(JabHeader<?> header, InputStream is, StreamFactory<InputStream> factory) throws IOException {
+            Frame frame = begin(Stage.DEOBFUSCATE, nameOf(header));
+            CountingInputStream counter = new CountingInputStream(is, frame);
+            InputStream his = factory.create(counter);
+            end(frame);
+            return new ProbeInputStream(his, this, frame);
+        }
+
+        /**
+         * Mark the operation as failed. The failure is attributed to the innermost unfinished stage.
+         */
+        public void fail(Throwable cause) {
+            failed = true;
+            Frame frame = current != null ? current : root;
+            metrics.failure(formatId, frame.stage, frame.name, cause);
+        }
+
+        /**
+         * Report all the measurements, and detach from the current thread
+         */
+        public void finish() {
+            if (previous != null) {
+                probes.set(previous);
+            } else {
+                probes.remove();
+            }
+            if (failed) {
+                return;
+            }
+            for (Frame frame : frames) {
+                metrics.record(formatId, frame.stage, frame.name, frame.self, frame.bytesIn, frame.bytesOut);
+            }
+            metrics.record(formatId, root.stage, root.name, System.nanoTime() - started, root.bytesIn, root.bytesOut);
+        }
+
+        /**
+         * Total bytes of the operation; barcode length
+         */
+        public void addBytes(long in, long out) {
+            root.addBytes(in, out);
+        }
+
+        private void enter(Frame frame) {
+            frame.parent = current;
+            current = frame;
+            frame.children = 0;
+            frame.entered = System.nanoTime();
+        }
+
+        private void exit(Frame frame) {
+            long elapsed = System.nanoTime() - frame.entered;
+            frame.self += elapsed - frame.children;
+            current = frame.parent;
+            if (current != null) {
+                current.children += elapsed;
+            }
+        }
+    }
+
+    /**
+     * Creates header stream around the given one
+     */
+    public interface StreamFactory<S> {
+        S create(S stream) throws IOException;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private final Frame frame;
+
+        CountingOutputStream(OutputStream os, Frame frame) {
+            super(os);
+            this.frame = frame;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            frame.bytesOut++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            frame.bytesOut += len;
+        }
+    }
+
+    private static class ProbeOutputStream extends FilterOutputStream {
+        private final Probe probe;
+        private final Frame frame;
+
+        ProbeOutputStream(OutputStream os, Probe probe, Frame frame) {
+            super(os);
+            this.probe = probe;
+            this.frame = frame;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            probe.enter(frame);
+            out.write(b);
+            frame.bytesIn++;
+            probe.exit(frame);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            probe.enter(frame);
+            out.write(b, off, len);
+            frame.bytesIn += len;
+            probe.exit(frame);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            probe.enter(frame);
+            out.flush();
+            probe.exit(frame);
+        }
+
+        @Override
+        public void close() throws IOException {
+            probe.enter(frame);
+            out.close();
+            probe.exit(frame);
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final Frame frame;
+
+        CountingInputStream(InputStream is, Frame frame) {
+            super(is);
+            this.frame = frame;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                frame.bytesIn++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                frame.bytesIn += n;
+            }
+            return n;
+        }
+    }
+
+    private static class ProbeInputStream extends FilterInputStream {
+        private final Probe probe;
+        private final Frame frame;
+
+        ProbeInputStream(InputStream is, Probe probe, Frame frame) {
+            super(is);
+            this.probe = probe;
+            this.frame = frame;
+        }
+
+        @Override
+        public int read() throws IOException {
+            probe.enter(frame);
+            int b = in.read();
+            if (b >= 0) {
+                frame.bytesOut++;
+            }
+            probe.exit(frame);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            probe.enter(frame);
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                frame.bytesOut += n;
+            }
+            probe.exit(frame);
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            probe.enter(frame);
+            in.close();
+            probe.exit(frame);
+        }
+    }
+}
@@ -2,21 +2,25 @@ package ca.ma99us.jab;
 
 
 import ca.ma99us.jab.headers.JabHeader;
-import com.fasterxml.jackson.annotation.JsonIgnore;
+import ca.ma99us.jab.headers.JabHeaderStreams;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
+import lombok.Setter;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.lang.reflect.*;
+import java.io.*;
+import java.lang.reflect.Array;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
 
 /**
  * My custom barcode format called JAB (Json Array Barcode) looks like this:
@@ -31,8 +35,21 @@ public class JabParser {
     public static final String DELIMITER = "|";
     @Getter
     private final Formats formats = new Formats();
+    /**
+     * Executor for batch methods. {@link ForkJoinPool#commonPool()} if not set.
+     */
+    @Getter
+    @Setter
+    private Executor batchExecutor;
+    /**
+     * Optional cache of decoded payloads, so repeated scans of the same barcode skip decoding. Null (default) for none.
+     */
+    @Getter
+    @Setter
+    private volatile DecodedCache decodedCache;
 
-    private final Pattern pattern = Pattern.compile("^JAB\\|\\d+\\|(?:\\[.*\\])?\\[.*\\]$", Pattern.MULTILINE);
+    private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<PayloadBuffer> payloadBuffers = new ThreadLocal<PayloadBuffer>();
 
     private final ObjectMapper mapper = new ObjectMapper()
             .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
@@ -46,22 +63,7 @@ public class JabParser {
      * @return possible JabBarcode, and parsing could be attempted
      */
     public boolean isPossibleJab(String barcode) {
-        // no regex
-//        if (barcode != null
-//                && barcode.startsWith(PREFIX + DELIMITER)
-//                && barcode.indexOf(DELIMITER, (PREFIX + DELIMITER).length() + 1) > 0
-//                && barcode.indexOf("[") > 0
-//                && barcode.endsWith("]")) {
-//            return true;
-//        }
-//        return false;
-
-        // regex
-        if (barcode == null) {
-            return false;
-        }
-        final Matcher matcher = pattern.matcher(barcode);
-        return matcher.find();
+        return JabEnvelope.scan(barcode) != null;
     }
 
     /**
@@ -70,21 +72,8 @@ public class JabParser {
      * @return long format id or null
      */
     public Long findJabFormatId(String barcode) {
-        if (!isPossibleJab(barcode)) {
-            return null; // bad format
-        }
-        try {
-            //TODO: do this in regex maybe?
-            barcode = barcode.substring((PREFIX + DELIMITER).length());
-            int p0 = barcode.indexOf(DELIMITER);
-            if (p0 <= 0) {
-                return null;  // no format id
-            }
-            return Long.parseLong(barcode.substring(0, p0));
-        } catch (Exception ex) {
-            // bad format id value
-            return null;
-        }
+        JabEnvelope env = JabEnvelope.scan(barcode);
+        return env != null ? env.getFormatId() : null;
     }
 
     /**
@@ -98,20 +87,13 @@ public class JabParser {
      */
     public <H extends JabHeader<P>, P> String objectToJab(H header, P payload) throws IOException {
         StringBuilder sb = new StringBuilder();
-
-        sb.append(PREFIX);
-        sb.append(DELIMITER);
-        sb.append(new Formats.JabFormat<H, P>(header, payload).getFormatId());
-        sb.append(DELIMITER);
-        String payloadStr = unwrap(objectValuesToJsonArrayString(payload));
-        if (header != null) {
-            // populate the header
-            header.populate(payload);
-            // encrypt the payload
-            payloadStr = new String(header.obfuscate(payloadStr.getBytes(StandardCharsets.UTF_8)));
-            sb.append(objectValuesToJsonArrayString(header));
+        PayloadBuffer buffer = PayloadBuffer.acquire();
+        try {
+            writeJab(header, payload, sb, buffer);
+            sb.append(buffer.toString(StandardCharsets.UTF_8.name()));
+        } finally {
+            buffer.release();
         }
-        sb.append(wrap(payloadStr) );
 
         return sb.toString();
     }
@@ -127,26 +109,86 @@ public class JabParser {
      */
     public <H extends JabHeader<P>, P> byte[] objectToJabBytes(H header, P payload) throws IOException {
         StringBuilder sb = new StringBuilder();
+        PayloadBuffer buffer = PayloadBuffer.acquire();
+        try {
+            writeJab(header, payload, sb, buffer);
+            byte[] prefix = sb.toString().getBytes(StandardCharsets.UTF_8);
+            byte[] bytes = new byte[prefix.length + buffer.size()];
+            System.arraycopy(prefix, 0, bytes, 0, prefix.length);
+            buffer.copyTo(bytes, prefix.length);
+            return bytes;
+        } finally {
+            buffer.release();
+        }
+    }
 
+    /**
+     * Write the Jab prefix, format id and header into the string builder, and the payload into the buffer.
+     */
+    private <H extends JabHeader<P>, P> void writeJab(H header, P payload, StringBuilder sb, PayloadBuffer buffer) throws IOException {
+        long formatId = Formats.formatId(header != null ? header.getClass() : null, payload.getClass());
         sb.append(PREFIX);
         sb.append(DELIMITER);
-        sb.append(new Formats.JabFormat<H, P>(header, payload).getFormatId());
+        sb.append(formatId);
         sb.append(DELIMITER);
-        byte[] payloadBytes = unwrap(objectValuesToJsonArrayString(payload)).getBytes(StandardCharsets.UTF_8);
+        JabMetrics.Probe probe = JabMetrics.start(formatId, JabMetrics.Stage.ENCODE, JabMetrics.nameOf(payload));
+        if (probe == null) {
+            writeJab(header, payload, sb, buffer, null);
+            return;
+        }
+        try {
+            writeJab(header, payload, sb, buffer, probe);
+            probe.addBytes(0, sb.length() + buffer.size());
+        } catch (Throwable ex) {
+            probe.fail(ex);
+            throw ex;
+        } finally {
+            probe.finish();
+        }
+    }
+
+    private <H extends JabHeader<P>, P> void writeJab(H header, P payload, StringBuilder sb, PayloadBuffer buffer, JabMetrics.Probe probe) throws IOException {
+        JabMetrics.Frame frame;
         if (header != null) {
             // populate the header
+            frame = JabMetrics.begin(probe, JabMetrics.Stage.POPULATE, JabMetrics.nameOf(header));
             header.populate(payload);
-            // encrypt the payload
-            payloadBytes = header.obfuscate(payloadBytes);
+            JabMetrics.end(probe, frame);
+        }
+        // serialize and encrypt the payload in one pass
+        frame = JabMetrics.begin(probe, JabMetrics.Stage.SERIALIZE, JabMetrics.nameOf(payload));
+        writePayload(header, payload, buffer);
+        JabMetrics.end(probe, frame);
+        if (header != null) {
+            frame = JabMetrics.begin(probe, JabMetrics.Stage.SERIALIZE, JabMetrics.nameOf(header));
             sb.append(objectValuesToJsonArrayString(header));
+            JabMetrics.end(probe, frame);
         }
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        os.write(sb.toString().getBytes(StandardCharsets.UTF_8));
-        os.write("[".getBytes(StandardCharsets.UTF_8));
-        os.write(payloadBytes);
-        os.write("]".getBytes(StandardCharsets.UTF_8));
+    }
 
-        return os.toByteArray();
+    /**
+     * Serialize the payload values straight into the header(s) obfuscation pipeline:
+     * json array -> (unwrap) -> header streams -> "[" obfuscated payload "]" in the given stream.
+     * If the pipeline starts with a values header (e.g. CBOR), the values are written in its format instead.
+     * Header has to be populated already.
+     */
+    private <H extends JabHeader<P>, P> void writePayload(H header, P payload, OutputStream os) throws IOException {
+        os.write('[');
+        OutputStream hos = new NonClosingOutputStream(os);
+        if (header != null) {
+            hos = JabHeaderStreams.obfuscating(header, hos);
+        }
+        if (hos instanceof JabHeaderStreams.ValuesOutputStream) {
+            try (OutputStream vos = hos; JsonGenerator generator = ((JabHeaderStreams.ValuesOutputStream) vos).createGenerator()) {
+                generator.setCodec(mapper);
+                writeObjectValues(generator, payload);
+            }
+        } else {
+            try (OutputStream uos = new UnwrappingOutputStream(hos)) {
+                objectValuesToJsonArray(payload, uos);
+            }
+        }
+        os.write(']');
     }
 
     /**
@@ -182,15 +224,16 @@ public class JabParser {
      * @throws IOException in case of any failure
      */
     public Object jabToObject(String barcode) throws IOException {
-        Long formatId = findJabFormatId(barcode);
-        if (formatId == null) {
-            throw new IOException("Unrecognized format");
+        long started = JabMetrics.isActive() ? System.nanoTime() : 0;
+        JabEnvelope env = JabEnvelope.scan(barcode);
+        if (env == null) {
+            throw envelopeFailure(0, new IOException("Unrecognized format"));
         }
-        Formats.JabFormat<?, ?> format = formats.findFormat(formatId);
+        Formats.JabFormat<?, ?> format = formats.findFormat(env.getFormatId());
         if (format == null) {
-            throw new IOException("Unregistered format id: " + formatId);
+            throw envelopeFailure(env.getFormatId(), new IOException("Unregistered format id: " + env.getFormatId()));
         }
-        return jabToObject(barcode, format.getHeaderClass(), format.getPayloadClass());
+        return jabToObject(barcode, env, format.getHeaderClass(), format.getPayloadClass(), started);
     }
 
     /**
@@ -207,42 +250,282 @@ public class JabParser {
         if (barcode == null) {
             return null;
         }
-        //TODO: do this in regex maybe?
-        if (!barcode.startsWith(PREFIX + DELIMITER)) {
-            throw new IOException("Unrecognized prefix");
+        long started = JabMetrics.isActive() ? System.nanoTime() : 0;
+        JabEnvelope env;
+        try {
+            env = JabEnvelope.parse(barcode);
+        } catch (IOException ex) {
+            throw envelopeFailure(started != 0 ? Formats.formatId(headerClass, payloadClass) : 0, ex);
         }
-        barcode = barcode.substring((PREFIX + DELIMITER).length());
-        int p0 = barcode.indexOf(DELIMITER);
-        if (p0 <= 0) {
-            throw new IOException("Unrecognized format; no checksum");
+        return jabToObject(barcode, env, headerClass, payloadClass, started);
+    }
+
+    private static IOException envelopeFailure(long formatId, IOException ex) {
+        if (JabMetrics.isActive()) {
+            JabMetrics.getGlobalMetrics().failure(formatId, JabMetrics.Stage.ENVELOPE, "", ex);
+        }
+        return ex;
+    }
+
+    private <H extends JabHeader<P>, P> P jabToObject(String barcode, JabEnvelope env, Class<H> headerClass, Class<P> payloadClass, long started) throws IOException {
+        long formatId = Formats.formatId(headerClass, payloadClass);
+        DecodedCache cache = decodedCache;
+        DecodedCache.Mode mode = cache != null && env.getFormatId() == formatId ? cache.getMode(formatId) : null;
+        if (mode == null) {
+            return decodeObject(barcode, env, headerClass, payloadClass, formatId, started);
+        }
+        DecodedCache.Decoded key = new DecodedCache.Decoded(barcode);
+        Object cached = cache.getCache().get(key);
+        if (payloadClass.isInstance(cached)) {
+            return mode == DecodedCache.Mode.COPY ? copyObject(payloadClass.cast(cached), payloadClass) : payloadClass.cast(cached);
+        }
+        P payload = decodeObject(barcode, env, headerClass, payloadClass, formatId, started);
+        if (payload != null) {
+            cache.getCache().put(key, payload);
+            if (mode == DecodedCache.Mode.COPY) {
+                payload = copyObject(payload, payloadClass);     // keep the cached instance away from the caller
+            }
+        }
+        return payload;
+    }
+
+    private <H extends JabHeader<P>, P> P decodeObject(String barcode, JabEnvelope env, Class<H> headerClass, Class<P> payloadClass,
+                                                       long formatId, long started) throws IOException {
+        JabMetrics.Probe probe = JabMetrics.start(formatId, JabMetrics.Stage.DECODE, JabMetrics.nameOf(payloadClass), started);
+        if (probe == null) {
+            return jabToObject(barcode, env, headerClass, payloadClass, formatId, null);
         }
-        long barcodeFormatId = Long.parseLong(barcode.substring(0, p0));
-        long formatId = new Formats.JabFormat<H, P>(headerClass, payloadClass).getFormatId();
-        if (barcodeFormatId != formatId) {
-            throw new IOException("Format id mismatch; expected " + formatId + ", but got " + barcodeFormatId);
+        try {
+            probe.addBytes(barcode.length(), 0);
+            return jabToObject(barcode, env, headerClass, payloadClass, formatId, probe);
+        } catch (Throwable ex) {
+            probe.fail(ex);
+            throw ex;
+        } finally {
+            probe.finish();
+        }
+    }
+
+    private <H extends JabHeader<P>, P> P jabToObject(String barcode, JabEnvelope env, Class<H> headerClass, Class<P> payloadClass,
+                                                      long formatId, JabMetrics.Probe probe) throws IOException {
+        JabMetrics.Frame frame = JabMetrics.begin(probe, JabMetrics.Stage.ENVELOPE, "");
+        if (frame != null) {
+            frame.addNanos(System.nanoTime() - probe.getStarted());  // the envelope scan itself
+        }
+        if (env.getFormatId() != formatId) {
+            throw new IOException("Format id mismatch; expected " + formatId + ", but got " + env.getFormatId());
+        }
+        if ((headerClass != null) != env.hasHeader()) {
+            throw new IOException("Bad format; can not parse header");
         }
-        barcode = barcode.substring(p0 + 1);
+        JabMetrics.end(probe, frame);
         H header = null;
+        P payload;
         if (headerClass != null) {
-            int p1 = barcode.indexOf("]["); // FIXME: not very reliable
-            if (p1 <= 0) {
-                throw new IOException("Bad format; can not parse header");
-            }
-            header = jsonArrayStringToObject(barcode.substring(0, p1 + 1), headerClass);
-            barcode = barcode.substring(p1 + 1);
-            // decrypt barcode payload
-            barcode = unwrap(barcode);
-            barcode = new String(header.deobfuscate(barcode.getBytes(StandardCharsets.UTF_8)));
-            barcode = wrap(barcode);
-        }
-        P payload = jsonArrayStringToObject(barcode, payloadClass);
+            frame = JabMetrics.begin(probe, JabMetrics.Stage.BIND, JabMetrics.nameOf(headerClass));
+            header = jsonArrayStringToObject(barcode.substring(env.getHeaderStart(), env.getHeaderEnd()), headerClass);
+            JabMetrics.end(probe, frame);
+            // decrypt barcode payload while parsing it
+            byte[] payloadBytes = barcode.substring(env.getPayloadStart() + 1, env.getPayloadEnd() - 1).getBytes(StandardCharsets.UTF_8);
+            InputStream is = JabHeaderStreams.deobfuscating(header, new ByteArrayInputStream(payloadBytes));
+            frame = JabMetrics.begin(probe, JabMetrics.Stage.BIND, JabMetrics.nameOf(payloadClass));
+            if (is instanceof JabHeaderStreams.ValuesInputStream) {
+                payload = valuesStreamToObject((JabHeaderStreams.ValuesInputStream) is, payloadClass);
+            } else {
+                payload = jsonArrayStreamToObject(new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                        new ByteArrayInputStream(new byte[]{'['}), is, new ByteArrayInputStream(new byte[]{']'})))), payloadClass);
+            }
+            JabMetrics.end(probe, frame);
+        } else {
+            frame = JabMetrics.begin(probe, JabMetrics.Stage.BIND, JabMetrics.nameOf(payloadClass));
+            payload = jsonArrayStringToObject(barcode.substring(env.getPayloadStart(), env.getPayloadEnd()), payloadClass);
+            JabMetrics.end(probe, frame);
+        }
         if (header != null) {
             // validate checksum
+            frame = JabMetrics.begin(probe, JabMetrics.Stage.VALIDATE, JabMetrics.nameOf(header));
             header.validate(payload);
+            JabMetrics.end(probe, frame);
         }
         return payload;
     }
 
+    /**
+     * Serializes a batch of POJOs into Jab strings, in parallel on the {@link #getBatchExecutor()}.
+     * Headers are stateful (populated per payload), so each worker gets its own header from the supplier,
+     * and reuses it for all its payloads.
+     * @param headers supplier of JabHeader(s) to apply to payloads, or null for no header
+     * @param payloads POJO java beans
+     * @param <H> generic header class
+     * @param <P> generic payload class
+     * @return Jab strings or failures, in the payloads order
+     */
+    public <H extends JabHeader<P>, P> List<BatchResult<String>> objectsToJab(final Supplier<? extends H> headers, Collection<? extends P> payloads) {
+        final List<? extends P> items = new ArrayList<P>(payloads);
+        final AtomicReferenceArray<BatchResult<String>> results = new AtomicReferenceArray<BatchResult<String>>(items.size());
+        runBatch(items.size(), new BatchChunk() {
+            @Override
+            public void run(int from, int to) {
+                H header = null;
+                Exception error = null;
+                try {
+                    header = headers != null ? headers.get() : null;
+                } catch (Exception ex) {
+                    error = ex;
+                }
+                for (int i = from; i < to; i++) {
+                    try {
+                        if (error != null) {
+                            throw error;
+                        }
+                        results.set(i, new BatchResult<String>(i, objectToJab(header, items.get(i)), null));
+                    } catch (Exception ex) {
+                        results.set(i, new BatchResult<String>(i, null, ex));
+                    }
+                }
+            }
+        });
+        return completeBatchResults(results);
+    }
+
+    /**
+     * Serializes a batch of POJOs into Jab strings with a single header instance. Since the header is populated
+     * for each payload, this runs sequentially in the calling thread.
+     * @see #objectsToJab(Supplier, Collection) for parallel version
+     * @param header JabHeader(s) to apply to payloads
+     * @param payloads POJO java beans
+     * @param <H> generic header class
+     * @param <P> generic payload class
+     * @return Jab strings or failures, in the payloads order
+     */
+    public <H extends JabHeader<P>, P> List<BatchResult<String>> objectsToJab(H header, Collection<? extends P> payloads) {
+        List<BatchResult<String>> results = new ArrayList<BatchResult<String>>(payloads.size());
+        for (P payload : payloads) {
+            int i = results.size();
+            try {
+                results.add(new BatchResult<String>(i, objectToJab(header, payload), null));
+            } catch (Exception ex) {
+                results.add(new BatchResult<String>(i, null, ex));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Parses a batch of Jab strings, in parallel on the {@link #getBatchExecutor()}.
+     * @param barcodes Jab strings
+     * @param headerClass JabHeader(s) class to apply to payload string portion
+     * @param payloadClass POJO java bean class
+     * @param <H> generic header class
+     * @param <P> generic payload class
+     * @return POJO java beans or failures, in the barcodes order
+     */
+    public <H extends JabHeader<P>, P> List<BatchResult<P>> jabToObjects(Collection<String> barcodes, final Class<H> headerClass, final Class<P> payloadClass) {
+        final List<String> items = new ArrayList<String>(barcodes);
+        final AtomicReferenceArray<BatchResult<P>> results = new AtomicReferenceArray<BatchResult<P>>(items.size());
+        runBatch(items.size(), new BatchChunk() {
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        results.set(i, new BatchResult<P>(i, jabToObject(items.get(i), headerClass, payloadClass), null));
+                    } catch (Exception ex) {
+                        results.set(i, new BatchResult<P>(i, null, ex));
+                    }
+                }
+            }
+        });
+        return completeBatchResults(results);
+    }
+
+    /**
+     * Parses a batch of Jab strings of any registered formats, in parallel on the {@link #getBatchExecutor()}.
+     * @see Formats#registerFormat(java.lang.Class, java.lang.Class)
+     * @param barcodes Jab strings
+     * @return POJO java beans or failures, in the barcodes order
+     */
+    public List<BatchResult<Object>> jabToObjects(Collection<String> barcodes) {
+        final List<String> items = new ArrayList<String>(barcodes);
+        final AtomicReferenceArray<BatchResult<Object>> results = new AtomicReferenceArray<BatchResult<Object>>(items.size());
+        runBatch(items.size(), new BatchChunk() {
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        results.set(i, new BatchResult<Object>(i, jabToObject(items.get(i)), null));
+                    } catch (Exception ex) {
+                        results.set(i, new BatchResult<Object>(i, null, ex));
+                    }
+                }
+            }
+        });
+        return completeBatchResults(results);
+    }
+
+    private interface BatchChunk {
+        void run(int from, int to);
+    }
+
+    /**
+     * Split the batch into a few chunks per executor thread (to even out uneven items), run them,
+     * and wait for all of them. The calling thread runs the last chunk itself, and then the chunks the executor has
+     * not started yet.
+     */
+    private void runBatch(int size, final BatchChunk chunk) {
+        Executor executor = batchExecutor != null ? batchExecutor : ForkJoinPool.commonPool();
+        int parallelism = executor instanceof ForkJoinPool ? ((ForkJoinPool) executor).getParallelism() : Runtime.getRuntime().availableProcessors();
+        int chunks = Math.min(size, parallelism * 4);
+        if (parallelism <= 1 || chunks <= 1) {
+            chunk.run(0, size);
+            return;
+        }
+        List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(chunks - 1);
+        for (int c = 0; c < chunks - 1; c++) {
+            final int from = (int) ((long) size * c / chunks);
+            final int to = (int) ((long) size * (c + 1) / chunks);
+            FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+                @Override
+                public void run() {
+                    chunk.run(from, to);
+                }
+            }, null);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException ex) {
+                task.run();     // saturated executor, do it ourselves
+            }
+            tasks.add(task);
+        }
+        chunk.run((int) ((long) size * (chunks - 1) / chunks), size);
+        try {
+            for (FutureTask<Void> task : tasks) {
+                task.run();     // still queued chunks are run here, so batches nested in the executor do not deadlock
+                task.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt(); // unfinished items are reported as failures
+            for (FutureTask<Void> task : tasks) {
+                task.cancel(true);
+            }
+        } catch (ExecutionException ex) {
+            // items failures are reported in results, so this is something serious
+            Throwable cause = ex.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Batch failure", cause);
+        }
+    }
+
+    private static <T> List<BatchResult<T>> completeBatchResults(AtomicReferenceArray<BatchResult<T>> results) {
+        List<BatchResult<T>> list = new ArrayList<BatchResult<T>>(results.length());
+        for (int i = 0; i < results.length(); i++) {
+            BatchResult<T> result = results.get(i);
+            list.add(result != null ? result : new BatchResult<T>(i, null, new InterruptedIOException("Batch interrupted")));
+        }
+        return list;
+    }
+
     private String objectFieldNamesToJsonArrayString(Object obj) throws IOException {
         List<Object> beanDataValues = getObjectFieldNames(obj);
         return mapper.writeValueAsString(beanDataValues);
@@ -255,101 +538,254 @@ public class JabParser {
      * @throws IOException in case of any failure
      */
     public String objectValuesToJsonArrayString(Object obj) throws IOException {
-        List<Object> beanDataValues = getObjectValues(obj);
-        return mapper.writeValueAsString(beanDataValues);
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(writer)) {
+            writeObjectValues(generator, obj);
+        }
+        return writer.toString();
     }
 
-    private <T> T jsonArrayStringToObject(String json, Class<T> clazz) throws IOException {
-        List<Object> beanDataValues = mapper.readValue(json, ArrayList.class);
-        return parseObjectValues(beanDataValues, clazz);
+    /**
+     * Serialize POJO java bean as a JSON array of only object fields values, directly into the output stream (UTF-8).
+     * Produces exactly the same bytes as {@link #objectValuesToJsonArrayString(Object)}.
+     * @param obj POJO java bean
+     * @param os output stream to write to. It is not closed.
+     * @throws IOException in case of any failure
+     */
+    public void objectValuesToJsonArray(Object obj, OutputStream os) throws IOException {
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(os)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            writeObjectValues(generator, obj);
+        }
+    }
+
+    /**
+     * Walk the bean once, writing its fields values in Jab order straight to the generator.
+     * Nested java beans are written as nested arrays of their own fields values.
+     */
+    private void writeObjectValues(JsonGenerator generator, Object obj) throws IOException {
+        if (obj == null) {
+            generator.writeNull();
+            return;
+        }
+        List<JabBeanPlan.FieldPlan> fields = JabBeanPlan.of(obj.getClass()).getFields();
+        generator.writeStartArray(obj, fields.size());   // binary formats write definite length arrays
+        for (JabBeanPlan.FieldPlan field : fields) {
+            if (!field.isReadable()) {
+                // Jackson does not see such properties either
+                generator.writeNull();
+                continue;
+            }
+            Class<?> type = field.getType();
+            if (type.isPrimitive() && writePrimitive(generator, field, type, obj)) {
+                continue;
+            }
+            Object value = field.getValue(obj);
+            if (value == null) {
+                generator.writeNull();
+                continue;
+            }
+            switch (field.getKind()) {
+                case BEAN:
+                    writeObjectValues(generator, value);
+                    break;
+                case BEAN_ARRAY:
+                    int length = Array.getLength(value);
+                    generator.writeStartArray(value, length);
+                    for (int i = 0; i < length; i++) {
+                        writeObjectValues(generator, Array.get(value, i));
+                    }
+                    generator.writeEndArray();
+                    break;
+                case BEAN_LIST:
+                    generator.writeStartArray(value, ((List<?>) value).size());
+                    for (Object elem : (List<?>) value) {
+                        writeObjectValues(generator, elem);
+                    }
+                    generator.writeEndArray();
+                    break;
+                default:
+                    writeValue(generator, value);
+            }
+        }
+        generator.writeEndArray();
     }
 
-    private <T> T parseObjectValues(List<Object> beanDataValues, Class<T> clazz) throws IOException {
-        Map<String, Object> beanData = parseMapValues(beanDataValues, clazz);
-        return mapper.convertValue(beanData, clazz);
+    private boolean writePrimitive(JsonGenerator generator, JabBeanPlan.FieldPlan field, Class<?> type, Object obj) throws IOException {
+        // read the most common primitives without boxing
+        if (type == int.class) {
+            generator.writeNumber(field.getInt(obj));
+        } else if (type == long.class) {
+            generator.writeNumber(field.getLong(obj));
+        } else if (type == double.class) {
+            generator.writeNumber(field.getDouble(obj));
+        } else if (type == boolean.class) {
+            generator.writeBoolean(field.getBoolean(obj));
+        } else {
+            return false;
+        }
+        return true;
     }
 
-    private <T> Map<String, Object> parseMapValues(List<Object> beanDataValues, Class<T> clazz) throws IOException {
-        int fieldIdx = 0;
-        LinkedHashMap<String, Object> objectData = new LinkedHashMap<String, Object>();
-        List<Field> fieldNames = getObjectFieldNames(clazz); // actual bean fields in proper order
-        for (Object value : beanDataValues) {
-            if (fieldIdx < fieldNames.size()) {
-                Field field = fieldNames.get(fieldIdx);
-                Class<?> fieldType = getFieldType(field);
-                if (value instanceof List && !isJavaLangClass(fieldType)) {
-                    // not a java.lang field, probably nested java bean, parse with Value Mapper recursively
-                    if (field.getType().isArray() || List.class.isAssignableFrom(field.getType())) {
-                        // list or array of non-java.lang types
-                        List<Object> arrValue = new ArrayList<Object>();
-                        for (Object elem : (List) value) {
-                            arrValue.add(parseObjectValues((List) elem, fieldType));
-                        }
-                        value = arrValue;
-                    } else {
-                        // single composition object
-                        value = parseObjectValues((List) value, fieldType);
-                    }
-                }
+    private void writeValue(JsonGenerator generator, Object value) throws IOException {
+        // shortcuts for the most common java.lang values, everything else goes through Jackson serializers
+        if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Integer) {
+            generator.writeNumber((Integer) value);
+        } else if (value instanceof Long) {
+            generator.writeNumber((Long) value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else {
+            generator.writeObject(value);
+        }
+    }
+
+    /**
+     * Deep copy of a java bean, through its json values array
+     */
+    private <T> T copyObject(T obj, Class<T> clazz) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        objectValuesToJsonArray(obj, os);
+        return jsonArrayStreamToObject(new ByteArrayInputStream(os.toByteArray()), clazz);
+    }
 
-                objectData.put(field.getName(), value);
-                fieldIdx++;
+    private <T> T jsonArrayStringToObject(String json, Class<T> clazz) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Bad format; json array expected");
             }
+            return readObjectValues(parser, JabBeanPlan.of(clazz));
         }
-        return objectData;
     }
 
-    private List<Object> getObjectValues(Object obj) throws IOException {
-        Map<String, Object> objData = mapper.convertValue(obj, LinkedHashMap.class);
-        return getMapValues(objData, obj);
+    private <T> T jsonArrayStreamToObject(InputStream is, Class<T> clazz) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(is)) {
+            return readArrayStream(parser, is, clazz);
+        }
     }
 
-    private List<Object> getMapValues(Map<String, Object> objData, Object obj) throws IOException {
-        List<Object> dataValues = new ArrayList<>();
-        List<Field> fieldNames = getObjectFieldNames(obj.getClass());
-        for (Field field : fieldNames) {
-            Object value = objData.get(field.getName());
-            Class<?> fieldType = getFieldType(field);
-            if (value instanceof Map && !isJavaLangClass(fieldType)) {
-                // not a java.lang property, probably nested java bean, serialize with Value Mapper recursively
-                Object objectValue = getObjectFieldValueByName(obj, field.getName());
-                value = getObjectValues(objectValue);
-            } else if (value instanceof List && !isJavaLangClass(fieldType)) {
-                // array of not a java.lang objects, probably array of java beans, serialize each element with Value Mapper recursively
-                Object objectValue = getObjectFieldValueByName(obj, field.getName());
-                List<Object> arrValue = new ArrayList<Object>();
-                if (objectValue.getClass().isArray()) {
-                    int length = Array.getLength(objectValue);
-                    for (int i = 0; i < length; i++) {
-                        Object elem = Array.get(objectValue, i);
-                        arrValue.add(getObjectValues(elem));
+    /**
+     * Read the values array in the values header own format (e.g. CBOR) directly, without the json text in between
+     */
+    private <T> T valuesStreamToObject(JabHeaderStreams.ValuesInputStream is, Class<T> clazz) throws IOException {
+        try (JsonParser parser = is.createParser()) {
+            parser.setCodec(mapper);
+            return readArrayStream(parser, is, clazz);
+        }
+    }
+
+    private <T> T readArrayStream(JsonParser parser, InputStream is, Class<T> clazz) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new IOException("Bad format; json array expected");
+        }
+        T obj = readObjectValues(parser, JabBeanPlan.of(clazz));
+        // read the rest of the stream, so headers verify their trailing bytes (padding, checksums, etc.)
+        byte[] buf = new byte[64];
+        while (is.read(buf) >= 0) {
+            // skip
+        }
+        return obj;
+    }
+
+    /**
+     * Read the json array token stream once, assigning values straight into a new bean in Jab fields order.
+     * Nested java beans are read recursively from nested arrays. Parser has to be positioned on the array start.
+     */
+    private <T> T readObjectValues(JsonParser parser, JabBeanPlan<T> plan) throws IOException {
+        T bean = plan.newInstance();
+        List<JabBeanPlan.FieldPlan> fields = plan.getFields(); // actual bean fields in proper order
+        int fieldIdx = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new IOException("Bad format; unexpected end of json array");
+            }
+            if (fieldIdx >= fields.size()) {
+                parser.skipChildren();  // more values than fields, ignore the rest
+                continue;
+            }
+            JabBeanPlan.FieldPlan field = fields.get(fieldIdx++);
+            if (!field.isWritable()) {
+                parser.skipChildren();
+                continue;
+            }
+            if (token == JsonToken.VALUE_NULL) {
+                if (!field.getType().isPrimitive()) {
+                    field.setValue(bean, null);
+                }
+                continue;
+            }
+            if (token == JsonToken.START_ARRAY && field.isNested()) {
+                // not a java.lang field, probably nested java bean, parse recursively
+                JabBeanPlan<?> elemPlan = JabBeanPlan.of(field.getElementType());
+                if (field.getKind() == JabBeanPlan.Kind.BEAN) {
+                    // single composition object
+                    field.setValue(bean, readObjectValues(parser, elemPlan));
+                } else {
+                    // list or array of nested java beans
+                    List<Object> elems = new ArrayList<Object>();
+                    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        if (token == JsonToken.START_ARRAY) {
+                            elems.add(readObjectValues(parser, elemPlan));
+                        } else if (token == JsonToken.VALUE_NULL) {
+                            elems.add(null);
+                        } else {
+                            throw new IOException("Bad format; nested \"" + field.getName() + "\" json array expected");
+                        }
                     }
-                } else if (objectValue instanceof List) {
-                    for (Object elem : (List) objectValue) {
-                        arrValue.add(getObjectValues(elem));
+                    if (field.getKind() == JabBeanPlan.Kind.BEAN_ARRAY) {
+                        Object arr = Array.newInstance(field.getElementType(), elems.size());
+                        for (int i = 0; i < elems.size(); i++) {
+                            Array.set(arr, i, elems.get(i));
+                        }
+                        field.setValue(bean, arr);
+                    } else {
+                        field.setValue(bean, elems);
                     }
                 }
-                value = arrValue;
+            } else {
+                readValue(parser, token, field, bean);
+            }
+        }
+        return bean;
+    }
+
+    private void readValue(JsonParser parser, JsonToken token, JabBeanPlan.FieldPlan field, Object bean) throws IOException {
+        // primitives are set without boxing, everything else is read by Jackson deserializers from the same token stream
+        Class<?> type = field.getType();
+        boolean number = token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT;
+        if (type == int.class && number) {
+            field.setInt(bean, parser.getIntValue());
+        } else if (type == long.class && number) {
+            field.setLong(bean, parser.getLongValue());
+        } else if (type == double.class && number) {
+            field.setDouble(bean, parser.getDoubleValue());
+        } else if (type == boolean.class && (token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE)) {
+            field.setBoolean(bean, token == JsonToken.VALUE_TRUE);
+        } else if (type == String.class && token == JsonToken.VALUE_STRING) {
+            field.setValue(bean, parser.getText());
+        } else {
+            Object value = mapper.readValue(parser, field.getJavaType());
+            if (value != null || !type.isPrimitive()) {
+                field.setValue(bean, value);
             }
-            dataValues.add(value);
         }
-        return dataValues;
     }
 
     private List<Object> getMapKeys(Map<String, Object> objData, Object obj) throws IOException {
         List<Object> dataValues = new ArrayList<>();
-        List<Field> fieldNames = getObjectFieldNames(obj.getClass());
-        for (Field field : fieldNames) {
+        for (JabBeanPlan.FieldPlan field : JabBeanPlan.of(obj.getClass()).getFields()) {
             String name = field.getName();
             Object value = objData.get(name);
-            Class<?> fieldType = getFieldType(field);
-            if (value instanceof Map && !isJavaLangClass(fieldType)) {
+            if (value instanceof Map && field.isNested()) {
                 // not a java.lang property, probably nested java bean, serialize with Value Mapper recursively
-                Object objectValue = getObjectFieldValueByName(obj, name);
+                Object objectValue = field.getValue(obj);
                 value = name + ":" + getObjectFieldNames(objectValue);
-            } else if (value instanceof List && !isJavaLangClass(fieldType)) {
+            } else if (value instanceof List && field.isNested()) {
                 // array of not a java.lang objects, probably array of java beans, serialize each element with Value Mapper recursively
-                Object objectValue = getObjectFieldValueByName(obj, name);
+                Object objectValue = field.getValue(obj);
                 List<Object> arrValue = new ArrayList<Object>();
                 if (objectValue.getClass().isArray()) {
                     int length = Array.getLength(objectValue);
@@ -376,96 +812,245 @@ public class JabParser {
         return getMapKeys(objData, obj);
     }
 
-    private List<Field> getObjectFieldNames(Class objClass) {
-        List<Field> declaredFields = new ArrayList<>();
-        for (Class<?> c = objClass; c != null; c = c.getSuperclass()) {
-            if (c.equals(Object.class)) {
-                continue;   // don't gig any further
-            }
-            List<Field> allFields = new ArrayList<>(Arrays.asList(c.getDeclaredFields()));
-            // filter out static fields and fields with @JsonIgnore annotation
-            List<Field> fields = new ArrayList<>();
-            for (Field f : allFields) {
-                if (!Modifier.isStatic(f.getModifiers()) && f.getAnnotation(JsonIgnore.class) == null) {
-                    fields.add(f);
+    /**
+     * wrap in "[", "]"
+     * @param str payload to wrap
+     * @return wrapped string
+     */
+    public static String wrap(String str) {
+        return "[" + str + "]";
+    }
+
+    /**
+     * trim off "[", "]", if previously wrapped;
+     * @param str payload to unwrap
+     * @return unwrapped string
+     */
+    public static String unwrap(String str) {
+        if (str.startsWith("[") && str.endsWith("]")) {
+            return str.substring(1, str.length() - 1);
+        }
+        return str;
+    }
+
+    /**
+     * Result of a single batch item; either a value or a failure.
+     * @param <T> generic value class
+     */
+    @Data
+    @AllArgsConstructor
+    public static class BatchResult<T> {
+        private final int index;
+        private final T value;
+        private final Exception error;
+
+        /**
+         * @return true if the item was processed without errors
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Cache of decoded barcode payloads, keyed by the raw barcode string. Only enabled formats are cached.
+     * Cached payloads skip header decoding and validation (decryption, checksums, signatures) on repeated scans,
+     * so only enable it for formats where the same barcode string always means the same payload.
+     */
+    public static class DecodedCache {
+        /**
+         * SHARED returns the same cached payload instance to every caller (callers must not modify it);
+         * COPY returns a fresh copy of it every time.
+         */
+        public enum Mode {SHARED, COPY}
+
+        @Getter
+        private final JabCache<Decoded, Object> cache;
+        private final Map<Long, Mode> modes = new ConcurrentHashMap<Long, Mode>();
+
+        /**
+         * @param capacity max number of cached payloads
+         * @param ttl      how long payloads stay cached, or 0 for forever
+         * @param unit     ttl unit
+         */
+        public DecodedCache(int capacity, long ttl, TimeUnit unit) {
+            this.cache = new JabCache<Decoded, Object>(capacity, ttl, unit);
+        }
+
+        /**
+         * Cache decoded payloads of the given format
+         * @param headerClass header class or null
+         * @param payloadClass POJO java bean class (payload)
+         * @param mode shared or copied payloads
+         * @return this
+         */
+        public DecodedCache enable(Class<?> headerClass, Class<?> payloadClass, Mode mode) {
+            modes.put(Formats.formatId(headerClass, payloadClass), mode);
+            return this;
+        }
+
+        /**
+         * Stop caching the given format. Already cached payloads are not served anymore, and age out.
+         * @param headerClass header class or null
+         * @param payloadClass POJO java bean class (payload)
+         * @return this
+         */
+        public DecodedCache disable(Class<?> headerClass, Class<?> payloadClass) {
+            modes.remove(Formats.formatId(headerClass, payloadClass));
+            return this;
+        }
+
+        /**
+         * @param formatId long number format id
+         * @return cache mode of the format, or null if not cached
+         */
+        public Mode getMode(long formatId) {
+            return modes.get(formatId);
+        }
+
+        public double getHitRatio() {
+            return cache.getHitRatio();
+        }
+
+        @Override
+        public String toString() {
+            return "DecodedCache{formats=" + modes.size() + ", " + cache + "}";
+        }
+
+        /**
+         * Cache key; 64-bit hash of the barcode string, confirmed with the full string on a match
+         */
+        static final class Decoded {
+            private final String barcode;
+            private final long hash;
+
+            Decoded(String barcode) {
+                this.barcode = barcode;
+                long h = 0xcbf29ce484222325L;
+                for (int i = 0; i < barcode.length(); i++) {
+                    h = (h ^ barcode.charAt(i)) * 0x100000001b3L;
                 }
+                this.hash = h;
             }
-            // Unfortunately, some JVMs do not guarantee DeclaredFields order, so we have to sort fields ourselves
-            Collections.sort(fields, new Comparator<Field>() {
-                public int compare(Field f1, Field f2) {
-                    // sort each class fields names alphabetically
-                    return f1.getName().compareTo(f2.getName());
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) {
+                    return true;
+                }
+                if (!(o instanceof Decoded)) {
+                    return false;
                 }
-            });
+                Decoded other = (Decoded) o;
+                return hash == other.hash && barcode.equals(other.barcode);
+            }
 
-            // parent class fields always go before child's fields
-            declaredFields.addAll(0, fields);
+            @Override
+            public int hashCode() {
+                long h = hash * 0x9E3779B97F4A7C15L;
+                return (int) (h ^ (h >>> 32));
+            }
         }
-        return declaredFields;
     }
 
-    private boolean isJavaLangClass(Class<?> clazz) {
-        return clazz != null && (clazz.isPrimitive() || clazz.getName().startsWith("java.")); // TODO: maybe java.lang ?
-    }
+    /**
+     * Per-thread reusable payload bytes buffer. Oversized buffers are not retained.
+     */
+    private static class PayloadBuffer extends ByteArrayOutputStream {
+        private boolean inUse;
 
-    private Object getObjectFieldValueByName(Object obj, String fieldName) throws IOException {
-        try {
-//            return PropertyUtils.getProperty(obj, fieldName); // Unfortunately, commons-beanutils do not work on Android!
+        PayloadBuffer() {
+            super(1024);
+        }
 
-            // TODO: is there a better cross-platform way to getting a field value from object?
-            try {
-                // try to find a 'getter' for this field first
-                Method method = obj.getClass().getMethod("get" + fieldName.substring(0, 1).toUpperCase() + fieldName.substring(1));
-                return method.invoke(obj);
-            } catch (NoSuchMethodException ex) {
-                // if no 'getter', then try to access field directly. This will fail if it is not public field.
-                Class<?> clazz = obj.getClass();
-                Field field = clazz.getField(fieldName);
-                return field.get(obj);
+        static PayloadBuffer acquire() {
+            PayloadBuffer buffer = payloadBuffers.get();
+            if (buffer == null) {
+                buffer = new PayloadBuffer();
+                payloadBuffers.set(buffer);
+            } else if (buffer.inUse) {
+                buffer = new PayloadBuffer();   // re-entered from a header, do not share
             }
-        } catch (Exception e) {
-            throw new IOException("Can't access object's \"" + obj.getClass().getSimpleName() + "\" field \"" + fieldName + "\" value", e);
+            buffer.inUse = true;
+            return buffer;
         }
-    }
 
-    private Class<?> getFieldType(Field field) {
-        Class<?> type = field.getType();
-        if (type.isArray()) {
-            return type.getComponentType();
-        } else if (List.class.isAssignableFrom(field.getType())) {
-            ParameterizedType pt = (ParameterizedType) field.getGenericType();
-            return (Class) pt.getActualTypeArguments()[0];
+        void copyTo(byte[] bytes, int off) {
+            System.arraycopy(buf, 0, bytes, off, count);
+        }
+
+        void release() {
+            inUse = false;
+            if (buf.length > MAX_POOLED_BUFFER_SIZE) {
+                buf = new byte[1024];
+            }
+            reset();
         }
-        return type;
     }
 
     /**
-     * wrap in "[", "]"
-     * @param str payload to wrap
-     * @return wrapped string
+     * Keeps the underlying stream open, when header streams are closed.
      */
-    public static String wrap(String str) {
-        return "[" + str + "]";
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream os) {
+            super(os);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
     }
 
     /**
-     * trim off "[", "]", if previously wrapped;
-     * @param str payload to unwrap
-     * @return unwrapped string
+     * Trims off the first and the last byte ("[", "]") of the json array being written.
      */
-    public static String unwrap(String str) {
-        if (str.startsWith("[") && str.endsWith("]")) {
-            return str.substring(1, str.length() - 1);
+    private static class UnwrappingOutputStream extends FilterOutputStream {
+        private boolean first = true;
+        private int last = -1;
+
+        UnwrappingOutputStream(OutputStream os) {
+            super(os);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (first && len > 0) {
+                first = false;
+                off++;
+                len--;
+            }
+            if (len <= 0) {
+                return;
+            }
+            if (last >= 0) {
+                out.write(last);
+            }
+            out.write(b, off, len - 1);
+            last = b[off + len - 1] & 0xff;
         }
-        return str;
     }
 
     /**
      * Simple collection of registered barcode formats.
      * Finds java bean classes from the barcode format id.
+     * Reads are lock-free, registration copies the table (formats are normally registered once at startup).
      */
     public static class Formats {
-        private final Map<Long, JabFormat<?, ?>> formats = new HashMap<>();
+        private static final Class<?> NO_HEADER = Void.class;
+        private static volatile FormatIds formatIds = new FormatIds(JabHasher.getGlobalHasher());
+
+        private volatile FormatTable table = new FormatTable(16);
 
         /**
          * Register a Jab Format - a pair of Header and Payload classes
@@ -474,10 +1059,19 @@ public class JabParser {
          * @param <H> generic header class
          * @param <P> generic payload class
          * @return this
+         * @throws IllegalArgumentException if another pair of classes has the same format id
          */
         public synchronized <H extends JabHeader, P> Formats registerFormat(Class<H> headerClass, Class<P> payloadClass) {
             JabFormat<H, P> format = new JabFormat<H, P>(headerClass, payloadClass);
-            formats.put(format.getFormatId(), format);
+            long id = format.getFormatId();
+            JabFormat<?, ?> registered = table.get(id);
+            if (registered != null) {
+                if (registered.equals(format)) {
+                    return this;
+                }
+                throw new IllegalArgumentException("Format id " + id + " collision; " + format + " and already registered " + registered);
+            }
+            table = table.with(id, format);
             return this;
         }
 
@@ -486,8 +1080,124 @@ public class JabParser {
          * @param id long number format id
          * @return registered Jab format or null
          */
-        public synchronized JabFormat<?, ?> findFormat(Long id) {
-            return id != null ? formats.get(id) : null;
+        public JabFormat<?, ?> findFormat(Long id) {
+            return id != null ? table.get(id) : null;
+        }
+
+        /**
+         * Finds registered format for a given id
+         * @param id long number format id
+         * @return registered Jab format or null
+         */
+        public JabFormat<?, ?> findFormat(long id) {
+            return table.get(id);
+        }
+
+        /**
+         * Format id of Header and Payload classes pair. Calculated once per pair.
+         * @param headerClass header class or null
+         * @param payloadClass POJO java bean class (payload)
+         * @return long number format id
+         */
+        public static long formatId(Class<?> headerClass, Class<?> payloadClass) {
+            FormatIds ids = formatIds;
+            if (ids.hasher != JabHasher.getGlobalHasher()) {
+                // different hasher injected, drop all the cached ids
+                ids = new FormatIds(JabHasher.getGlobalHasher());
+                formatIds = ids;
+            }
+            return ids.get(headerClass != null ? headerClass : NO_HEADER, payloadClass);
+        }
+
+        /**
+         * Cached format ids, per payload class, per header class.
+         * Plain concurrent maps, not {@link ClassValue}, which is not available on Android.
+         */
+        private static class FormatIds {
+            private final JabHasher hasher;
+            private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Class<?>, Long>> payloadIds = new ConcurrentHashMap<Class<?>, ConcurrentHashMap<Class<?>, Long>>();
+
+            FormatIds(JabHasher hasher) {
+                this.hasher = hasher;
+            }
+
+            long get(Class<?> headerClass, Class<?> payloadClass) {
+                ConcurrentHashMap<Class<?>, Long> ids = payloadIds.get(payloadClass);
+                if (ids == null) {
+                    ConcurrentHashMap<Class<?>, Long> created = new ConcurrentHashMap<Class<?>, Long>();
+                    ids = payloadIds.putIfAbsent(payloadClass, created);
+                    if (ids == null) {
+                        ids = created;
+                    }
+                }
+                Long id = ids.get(headerClass);
+                if (id == null) {
+                    StringBuilder sb = new StringBuilder();
+                    if (headerClass != NO_HEADER) {
+                        sb.append(headerClass.getSimpleName());
+                    }
+                    sb.append(payloadClass.getSimpleName());
+                    id = hasher.hash(sb.toString());
+                    ids.put(headerClass, id);
+                }
+                return id;
+            }
+        }
+
+        /**
+         * Immutable open addressing long to format hash table
+         */
+        private static class FormatTable {
+            private final long[] ids;
+            private final JabFormat<?, ?>[] formats;
+            private final int size;
+
+            FormatTable(int capacity) {
+                this(capacity, 0);
+            }
+
+            private FormatTable(int capacity, int size) {
+                ids = new long[capacity];
+                formats = new JabFormat<?, ?>[capacity];
+                this.size = size;
+            }
+
+            JabFormat<?, ?> get(long id) {
+                int mask = formats.length - 1;
+                for (int i = index(id, mask); formats[i] != null; i = (i + 1) & mask) {
+                    if (ids[i] == id) {
+                        return formats[i];
+                    }
+                }
+                return null;
+            }
+
+            FormatTable with(long id, JabFormat<?, ?> format) {
+                // keep it at most half full
+                FormatTable copy = new FormatTable((size + 1) * 2 > formats.length ? formats.length * 2 : formats.length, size + 1);
+                for (int i = 0; i < formats.length; i++) {
+                    if (formats[i] != null) {
+                        copy.put(ids[i], formats[i]);
+                    }
+                }
+                copy.put(id, format);
+                return copy;
+            }
+
+            private void put(long id, JabFormat<?, ?> format) {
+                int mask = formats.length - 1;
+                int i = index(id, mask);
+                while (formats[i] != null && ids[i] != id) {
+                    i = (i + 1) & mask;
+                }
+                ids[i] = id;
+                formats[i] = format;
+            }
+
+            private static int index(long id, int mask) {
+                long h = id * 0x9E3779B97F4A7C15L;
+                return (int) (h ^ (h >>> 32)) & mask;
+            }
         }
 
         /**
@@ -511,12 +1221,7 @@ public class JabParser {
              * @return long number format id
              */
             public long getFormatId() {
-                StringBuilder sb = new StringBuilder();
-                if (headerClass != null) {
-                    sb.append(headerClass.getSimpleName());
-                }
-                sb.append(payloadClass.getSimpleName());
-                return JabHasher.getGlobalHasher().hash(sb.toString());
+                return formatId(headerClass, payloadClass);
             }
         }
     }
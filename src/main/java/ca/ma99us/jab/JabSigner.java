@@ -1,12 +1,17 @@
 package ca.ma99us.jab;
 
 import javax.crypto.Mac;
+import java.security.Key;
 import java.util.Arrays;
 
 /**
  * Simple platform-independent way to sign/verify byte arrays.
+ * Initialized Mac is cloned once per thread, and reused while the key stays the same.
  */
 public class JabSigner extends AbstractSecret<JabSigner> {
+    // initialized Mac to clone, and per-thread clones of it
+    private volatile KeyMac prototype;
+    private final ThreadLocal<KeyMac> macs = new ThreadLocal<KeyMac>();
 
     /**
      * Default algorithm.
@@ -34,10 +39,9 @@ public class JabSigner extends AbstractSecret<JabSigner> {
             if (privateKey == null) {
                 throw new NullPointerException("Crypto key has to be set first");
             }
-            Mac mac = Mac.getInstance(keyAlgorithm);
-            mac.init(privateKey);
-            return mac.doFinal(data);
+            return mac().doFinal(data);
         } catch (Exception ex) {
+            macs.remove();  // unknown state, do not reuse
             throw new IllegalArgumentException("Signing Error", ex);
         }
     }
@@ -54,12 +58,52 @@ public class JabSigner extends AbstractSecret<JabSigner> {
             if (privateKey == null) {
                 throw new NullPointerException("Crypto key has to be set first");
             }
-            Mac mac = Mac.getInstance(keyAlgorithm);
-            mac.init(privateKey);
-            byte[] newSignature = mac.doFinal(data);
+            byte[] newSignature = mac().doFinal(data);
             return Arrays.equals(newSignature, signature);
         } catch (Exception ex) {
+            macs.remove();  // unknown state, do not reuse
             throw new IllegalArgumentException("Verification Error", ex);
         }
     }
+
+    /**
+     * Mac initialized with the current key for the current thread. doFinal() resets it to the initialized state,
+     * so it is reused as is.
+     */
+    private Mac mac() throws Exception {
+        Key key = privateKey;
+        KeyMac km = macs.get();
+        if (km == null || km.key != key) {
+            km = new KeyMac(key, newMac(key));
+            macs.set(km);
+        }
+        return km.mac;
+    }
+
+    private Mac newMac(Key key) throws Exception {
+        KeyMac proto = prototype;
+        if (proto == null || proto.key != key) {
+            Mac mac = Mac.getInstance(keyAlgorithm);
+            mac.init(key);
+            proto = new KeyMac(key, mac);
+            prototype = proto;
+        }
+        try {
+            return (Mac) proto.mac.clone();  // no provider lookup and key setup
+        } catch (CloneNotSupportedException ex) {
+            Mac mac = Mac.getInstance(keyAlgorithm);
+            mac.init(key);
+            return mac;
+        }
+    }
+
+    private static class KeyMac {
+        private final Key key;
+        private final Mac mac;
+
+        KeyMac(Key key, Mac mac) {
+            this.key = key;
+            this.mac = mac;
+        }
+    }
 }
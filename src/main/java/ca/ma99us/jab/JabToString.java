@@ -3,6 +3,8 @@ package ca.ma99us.jab;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Base64;
 
 /**
@@ -41,4 +43,24 @@ public class JabToString {
         // use URL_SAFE, NO_WRAP standards
         return Base64.getDecoder().decode(string);        //TODO: this might not work on Android or older Java
     }
+
+    /**
+     * Streaming version of {@link #bytesToString(byte[])}. Has to be overridden together with it.
+     *
+     * @param os stream to write string (UTF-8) bytes to
+     * @return stream to write arbitrary bytes to. Closing it closes the given stream.
+     */
+    public OutputStream bytesToStringStream(OutputStream os) {
+        return Base64.getEncoder().wrap(os);
+    }
+
+    /**
+     * Streaming version of {@link #stringToBytes(String)}. Has to be overridden together with it.
+     *
+     * @param is stream to read string (UTF-8) bytes from
+     * @return stream to read original bytes from
+     */
+    public InputStream stringToBytesStream(InputStream is) {
+        return Base64.getDecoder().wrap(is);
+    }
 }
@@ -0,0 +1,229 @@
+package ca.ma99us.jab;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Bounded pool of reusable Deflater and Inflater instances, per compression settings.
+ * Every instance holds native zlib memory, which is otherwise only freed by finalization. Released instances are reset
+ * and kept for reuse, and the ones over the pool capacity are ended right away, so native memory stays bounded.
+ * Always release what was acquired, also on failures.
+ */
+public class JabZipPool {
+    @Getter
+    @Setter
+    private static JabZipPool globalPool = new JabZipPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    /**
+     * Max number of idle instances kept per settings
+     */
+    @Getter
+    private final int capacity;
+
+    private final ConcurrentMap<Integer, BlockingQueue<Deflater>> deflaters = new ConcurrentHashMap<Integer, BlockingQueue<Deflater>>();
+    private final ConcurrentMap<Boolean, BlockingQueue<Inflater>> inflaters = new ConcurrentHashMap<Boolean, BlockingQueue<Inflater>>();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder ended = new LongAdder();
+
+    public JabZipPool(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Bad pool capacity: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param level    compression level, {@link Deflater#DEFAULT_COMPRESSION} or 0-9
+     * @param strategy compression strategy, e.g. {@link Deflater#DEFAULT_STRATEGY}
+     * @param nowrap   raw deflate without zlib header and checksum
+     * @return deflater ready for a new input; has to be released with {@link #release(Deflater, int, int, boolean)}
+     */
+    public Deflater acquireDeflater(int level, int strategy, boolean nowrap) {
+        Deflater deflater = queue(deflaters, deflaterKey(level, strategy, nowrap)).poll();
+        if (deflater != null) {
+            reused.increment();
+            return deflater;
+        }
+        created.increment();
+        deflater = new Deflater(level, nowrap);
+        deflater.setStrategy(strategy);
+        return deflater;
+    }
+
+    /**
+     * Return the deflater to the pool, or end it if the pool is full
+     */
+    public void release(Deflater deflater, int level, int strategy, boolean nowrap) {
+        deflater.reset();
+        if (capacity == 0 || !queue(deflaters, deflaterKey(level, strategy, nowrap)).offer(deflater)) {
+            deflater.end();
+            ended.increment();
+        }
+    }
+
+    /**
+     * @param nowrap raw deflate without zlib header and checksum
+     * @return inflater ready for a new input; has to be released with {@link #release(Inflater, boolean)}
+     */
+    public Inflater acquireInflater(boolean nowrap) {
+        Inflater inflater = queue(inflaters, nowrap).poll();
+        if (inflater != null) {
+            reused.increment();
+            return inflater;
+        }
+        created.increment();
+        return new Inflater(nowrap);
+    }
+
+    /**
+     * Return the inflater to the pool, or end it if the pool is full
+     */
+    public void release(Inflater inflater, boolean nowrap) {
+        inflater.reset();
+        if (capacity == 0 || !queue(inflaters, nowrap).offer(inflater)) {
+            inflater.end();
+            ended.increment();
+        }
+    }
+
+    /**
+     * Compress all the input with a new or reset deflater
+     * @param deflater deflater to use; not released
+     * @param input    bytes to compress
+     * @return compressed bytes
+     */
+    public static byte[] deflate(Deflater deflater, byte[] input) {
+        deflater.setInput(input);
+        deflater.finish();
+        byte[] bytes = new byte[Math.max(64, input.length / 2 + 16)];
+        int len = 0;
+        while (!deflater.finished()) {
+            if (len == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            len += deflater.deflate(bytes, len, bytes.length - len);
+        }
+        return Arrays.copyOf(bytes, len);
+    }
+
+    /**
+     * Uncompress all the input with a new or reset inflater
+     * @param inflater inflater to use; not released
+     * @param input    compressed bytes
+     * @return uncompressed bytes
+     * @throws IOException if the input is truncated or corrupted
+     */
+    public static byte[] inflate(Inflater inflater, byte[] input) throws IOException {
+        try {
+            inflater.setInput(input);
+            byte[] bytes = new byte[Math.max(64, input.length * 3)];
+            int len = 0;
+            boolean padded = false;
+            while (!inflater.finished()) {
+                if (len == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+                int n = inflater.inflate(bytes, len, bytes.length - len);
+                if (n == 0 && inflater.needsInput() && !padded) {
+                    // raw (nowrap) inflater may need an extra dummy byte to finish
+                    inflater.setInput(new byte[1]);
+                    padded = true;
+                } else if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Unexpected end of compressed bytes");
+                }
+                len += n;
+            }
+            return Arrays.copyOf(bytes, len);
+        } catch (DataFormatException ex) {
+            throw new IOException("Bad compressed bytes", ex);
+        }
+    }
+
+    /**
+     * End all idle instances
+     */
+    public void clear() {
+        for (BlockingQueue<Deflater> queue : deflaters.values()) {
+            for (Deflater deflater; (deflater = queue.poll()) != null; ) {
+                deflater.end();
+                ended.increment();
+            }
+        }
+        for (BlockingQueue<Inflater> queue : inflaters.values()) {
+            for (Inflater inflater; (inflater = queue.poll()) != null; ) {
+                inflater.end();
+                ended.increment();
+            }
+        }
+    }
+
+    /**
+     * @return number of idle instances in the pool
+     */
+    public int getIdle() {
+        int idle = 0;
+        for (BlockingQueue<Deflater> queue : deflaters.values()) {
+            idle += queue.size();
+        }
+        for (BlockingQueue<Inflater> queue : inflaters.values()) {
+            idle += queue.size();
+        }
+        return idle;
+    }
+
+    /**
+     * @return number of instances created so far
+     */
+    public long getCreated() {
+        return created.sum();
+    }
+
+    /**
+     * @return number of times a pooled instance was reused
+     */
+    public long getReused() {
+        return reused.sum();
+    }
+
+    /**
+     * @return number of instances ended so far
+     */
+    public long getEnded() {
+        return ended.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "JabZipPool{capacity=" + capacity + ", idle=" + getIdle() + ", created=" + getCreated()
+                + ", reused=" + getReused() + ", ended=" + getEnded() + "}";
+    }
+
+    private static int deflaterKey(int level, int strategy, boolean nowrap) {
+        return (level + 1) << 8 | strategy << 1 | (nowrap ? 1 : 0);
+    }
+
+    private <K, V> BlockingQueue<V> queue(ConcurrentMap<K, BlockingQueue<V>> queues, K key) {
+        BlockingQueue<V> queue = queues.get(key);
+        if (queue == null) {
+            BlockingQueue<V> created = new ArrayBlockingQueue<V>(Math.max(1, capacity));
+            queue = queues.putIfAbsent(key, created);
+            if (queue == null) {
+                queue = created;
+            }
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,56 @@
+package ca.ma99us.jab.codecs;
+
+import ca.ma99us.jab.JabZipPool;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw deflate (no zlib header and checksum), with pooled deflaters and inflaters. Best ratio of the built-in codecs.
+ */
+public class DeflateCodec implements JabCodec {
+    public static final int ID = 1;
+
+    /**
+     * Compression level, {@link Deflater#DEFAULT_COMPRESSION} or 0-9. Only affects compression.
+     */
+    @Getter
+    private final int level;
+
+    public DeflateCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);   // default
+    }
+
+    public DeflateCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        JabZipPool pool = JabZipPool.getGlobalPool();
+        Deflater deflater = pool.acquireDeflater(level, Deflater.DEFAULT_STRATEGY, true);
+        try {
+            return JabZipPool.deflate(deflater, data);
+        } finally {
+            pool.release(deflater, level, Deflater.DEFAULT_STRATEGY, true);
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] data) throws IOException {
+        JabZipPool pool = JabZipPool.getGlobalPool();
+        Inflater inflater = pool.acquireInflater(true);
+        try {
+            return JabZipPool.inflate(inflater, data);
+        } finally {
+            pool.release(inflater, true);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package ca.ma99us.jab.codecs;
+
+import java.io.IOException;
+
+/**
+ * Compression codec used by {@link ca.ma99us.jab.headers.CodecCompressHeader}.
+ * Codecs are found by their id, which is recorded in the barcode header, so ids have to be unique and never change.
+ * Built-in codecs are registered automatically; other implementations are registered explicitly, or discovered with
+ * {@link java.util.ServiceLoader} (listed in META-INF/services/ca.ma99us.jab.codecs.JabCodec).
+ * Implementations have to be thread safe.
+ */
+public interface JabCodec {
+
+    /**
+     * @return unique codec id; 1-99 are reserved for built-in codecs
+     */
+    int getId();
+
+    /**
+     * @param data bytes to compress
+     * @return compressed bytes
+     * @throws IOException if compression fails
+     */
+    byte[] compress(byte[] data) throws IOException;
+
+    /**
+     * @param data compressed bytes
+     * @return uncompressed bytes
+     * @throws IOException if the compressed bytes are truncated or corrupted
+     */
+    byte[] decompress(byte[] data) throws IOException;
+}
@@ -1,11 +1,13 @@
 package ca.ma99us.jab.headers;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Does nothing. Just an interface adapter
  */
-public abstract class AbstractHeader<P> implements JabHeader<P> {
+public abstract class AbstractHeader<P> implements JabStreamHeader<P> {
 
     @Override
     public void populate(P dto) throws IOException {
@@ -26,4 +28,16 @@ public abstract class AbstractHeader<P> implements JabHeader<P> {
     public byte[] deobfuscate(byte[] payload) throws IOException {
         return payload;  // no-op
     }
+
+    @Override
+    public OutputStream obfuscating(OutputStream os) throws IOException {
+        // headers which only override the byte arrays version get buffered
+        return JabHeaderStreams.bufferedObfuscating(this, os);
+    }
+
+    @Override
+    public InputStream deobfuscating(InputStream is) throws IOException {
+        // headers which only override the byte arrays version get buffered
+        return JabHeaderStreams.bufferedDeobfuscating(this, is);
+    }
 }
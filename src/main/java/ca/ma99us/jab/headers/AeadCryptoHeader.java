@@ -0,0 +1,97 @@
+package ca.ma99us.jab.headers;
+
+import ca.ma99us.jab.JabAeadCrypto;
+import ca.ma99us.jab.JabCrypto;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Encrypts/decrypts payload bytes with authenticated encryption, and a new random nonce for every barcode.
+ * The nonce travels in the header. Tampered payload fails decryption, so there is no need for a {@link ChecksumHeader}.
+ * Decryption keys are looked up in the same {@link CryptoHeader#getDecryptors()} registry.
+ * @param <P> generic payload class
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class AeadCryptoHeader<P> extends AbstractHeader<P> {
+    private Long keyId;
+    private byte[] nonce;
+
+    @JsonIgnore
+    private JabAeadCrypto encrypt;
+    @JsonIgnore
+    private boolean nonceUsed;
+
+    public AeadCryptoHeader<P> setCrypto(JabAeadCrypto encrypt) {
+        this.encrypt = encrypt;
+        CryptoHeader.getDecryptors().register(this.encrypt);   // also register globally for decryption
+        return this;
+    }
+
+    @Override
+    public void populate(P dto) throws IOException {
+        if (encrypt == null) {
+            throw new IOException("Encryption Crypto has to be specified. Set AeadCryptoHeader.setCrypto(...) first");
+        }
+
+        // populate key id and a fresh nonce
+        keyId = encrypt.getKeyId();
+        nonce = encrypt.newNonce();
+        nonceUsed = false;
+    }
+
+    @Override
+    public byte[] obfuscate(byte[] payload) throws IOException {
+        // encrypt the payload
+        return encrypt().encrypt(payload, nonce);
+    }
+
+    @Override
+    public byte[] deobfuscate(byte[] payload) throws IOException {
+        //decrypt the payload
+        return decrypt().decrypt(payload, nonce);
+    }
+
+    @Override
+    public OutputStream obfuscating(OutputStream os) throws IOException {
+        // encrypt the payload as it is being written
+        return encrypt().encrypting(os, nonce);
+    }
+
+    @Override
+    public InputStream deobfuscating(InputStream is) throws IOException {
+        //decrypt the payload as it is being read
+        return decrypt().decrypting(is, nonce);
+    }
+
+    /**
+     * @return the crypto, once per populated nonce
+     */
+    private JabAeadCrypto encrypt() throws IOException {
+        if (encrypt == null) {
+            throw new IOException("Encryption Crypto has to be specified. Set AeadCryptoHeader.setCrypto(...) first");
+        }
+        if (nonce == null || nonceUsed) {
+            throw new IOException("Nonce can be used only once. Populate the header first");
+        }
+        nonceUsed = true;
+        return encrypt;
+    }
+
+    private JabAeadCrypto decrypt() throws IOException {
+        // validate the key id first
+        JabCrypto decrypt = CryptoHeader.getDecryptors().find(keyId);
+        if (!(decrypt instanceof JabAeadCrypto)) {
+            throw new IOException("Not registered AEAD key id: " + keyId);
+        }
+        if (nonce == null) {
+            throw new IOException("Missing nonce");
+        }
+        return (JabAeadCrypto) decrypt;
+    }
+}
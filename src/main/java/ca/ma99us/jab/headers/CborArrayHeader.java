@@ -1,49 +1,235 @@
 package ca.ma99us.jab.headers;
 
-import ca.ma99us.jab.JabParser;
-import com.google.iot.cbor.CborArray;
-import com.google.iot.cbor.CborObject;
-import com.google.iot.cbor.CborParseException;
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.TreeNode;
+import com.fasterxml.jackson.core.io.IOContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.POJONode;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
-import org.json.JSONArray;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
- * Encode/decode payload bytes using Google's CBOR algorithm
- * @see <a href="https://github.com/google/cbortree">CborTree</a>
+ * Encode/decode payload fields values as a CBOR array.
+ * When this is the first header to modify the payload bytes, {@link ca.ma99us.jab.JabParser} writes and reads the
+ * values as CBOR directly, without the json text in between.
+ * Values are written with definite length arrays and maps, map keys in the json order, integers and floats in their
+ * shortest exact form, and binary values as base64 text, the same as they are in json. Any standard CBOR is read, so
+ * barcodes written with CborTree before still decode, but new ones may differ from them byte-for-byte.
+ * @see <a href="https://cbor.io/">CBOR</a>
  */
 @Data
 @EqualsAndHashCode(callSuper = false)
 public class CborArrayHeader<P> extends AbstractHeader<P> {
+    private static final CBORFactory factory = new CanonicalFactory();
 
     // compress
     @Override
     public byte[] obfuscate(byte[] payload) throws IOException {
-        // wrap to turn in to json array string
-        String payloadStr = JabParser.wrap(new String(payload));
-
-        // encode to cbor bytes
-        CborArray cbor = CborArray.createFromJSONArray(new JSONArray(payloadStr));
-        return cbor.toCborByteArray();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream os = obfuscating(bytes)) {
+            os.write(payload);
+        }
+        return bytes.toByteArray();
     }
 
     // uncompress
     @Override
     public byte[] deobfuscate(byte[] payload) throws IOException {
-        // decode cbor bytes
-        CborObject cbor = null;
-        try {
-            cbor = CborArray.createFromCborByteArray(payload);
-        } catch (CborParseException e) {
-            throw new IOException(e);
+        return JabHeaderStreams.readAll(deobfuscating(new ByteArrayInputStream(payload)));
+    }
+
+    @Override
+    public OutputStream obfuscating(OutputStream os) throws IOException {
+        return new JabHeaderStreams.ValuesOutputStream(os, factory);
+    }
+
+    @Override
+    public InputStream deobfuscating(InputStream is) throws IOException {
+        return new JabHeaderStreams.ValuesInputStream(is, factory);
+    }
+
+    /**
+     * Half precision bits of the float, if it is exactly representable as half precision
+     * @param f float value
+     * @return half precision bits, or -1 if it would lose precision
+     */
+    static int halfBits(float f) {
+        int bits = Float.floatToIntBits(f);
+        int sign = (bits >>> 16) & 0x8000;
+        int exp = (bits >>> 23) & 0xff;
+        int mant = bits & 0x7fffff;
+        if (exp == 0xff) {
+            return mant == 0 ? sign | 0x7c00 : 0x7e00;   // infinity, or canonical NaN
+        }
+        if (exp == 0) {
+            return mant == 0 ? sign : -1;   // zero; float subnormals are too small
+        }
+        int halfExp = exp - 127 + 15;
+        if (halfExp >= 31) {
+            return -1;
         }
+        if (halfExp > 0) {
+            return (mant & 0x1fff) == 0 ? sign | halfExp << 10 | mant >>> 13 : -1;
+        }
+        // half subnormal
+        int full = mant | 0x800000;
+        int shift = 126 - exp;
+        if (shift > 24 || (full & ((1 << shift) - 1)) != 0) {
+            return -1;
+        }
+        return sign | full >>> shift;
+    }
 
-        // unwrap from json array
-        String payloadStr = JabParser.unwrap(cbor.toJsonString());
+    /**
+     * Creates {@link CanonicalGenerator}s
+     */
+    private static class CanonicalFactory extends CBORFactory {
+        private static final long serialVersionUID = 1L;
 
-        return payloadStr.getBytes(StandardCharsets.UTF_8);
+        @Override
+        public CBORGenerator createGenerator(OutputStream out) throws IOException {
+            IOContext ctxt = _createContext(_createContentReference(out), false);
+            return new CanonicalGenerator(ctxt, _generatorFeatures, _formatGeneratorFeatures, _objectCodec, out);
+        }
+
+        @Override
+        public CBORGenerator createGenerator(OutputStream out, JsonEncoding enc) throws IOException {
+            return createGenerator(out);
+        }
+    }
+
+    /**
+     * CBOR generator with definite lengths and shortest numbers. Arrays of the known size are definite by CBORGenerator
+     * itself; other objects go through a json tree, so maps sizes are known before they are written.
+     */
+    private static class CanonicalGenerator extends CBORGenerator {
+        CanonicalGenerator(IOContext ctxt, int stdFeatures, int formatFeatures, ObjectCodec codec, OutputStream out) {
+            super(ctxt, stdFeatures, formatFeatures, codec, out);
+        }
+
+        @Override
+        public void writeNumber(double d) throws IOException {
+            float f = (float) d;
+            if (f != d && !Double.isNaN(d)) {
+                super.writeNumber(d);
+                return;
+            }
+            int half = halfBits(f);
+            if (half < 0) {
+                super.writeNumber(f);
+                return;
+            }
+            _verifyValueWrite("write number");
+            _ensureSpace(3);
+            _outputBuffer[_outputTail++] = (byte) 0xf9;
+            _outputBuffer[_outputTail++] = (byte) (half >> 8);
+            _outputBuffer[_outputTail++] = (byte) half;
+        }
+
+        @Override
+        public void writeNumber(float f) throws IOException {
+            writeNumber(Double.parseDouble(Float.toString(f)));    // the same value as in json text
+        }
+
+        @Override
+        public void writeBinary(Base64Variant b64variant, byte[] data, int offset, int len) throws IOException {
+            writeString(b64variant.encode(Arrays.copyOfRange(data, offset, offset + len)));
+        }
+
+        @Override
+        public void writeObject(Object value) throws IOException {
+            if (value == null) {
+                writeNull();
+            } else if (value instanceof String) {
+                writeString((String) value);
+            } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                writeNumber(((Number) value).longValue());
+            } else if (value instanceof Double) {
+                writeNumber((Double) value);
+            } else if (value instanceof Float) {
+                writeNumber((Float) value);
+            } else if (value instanceof Boolean) {
+                writeBoolean((Boolean) value);
+            } else if (getCodec() instanceof ObjectMapper) {
+                writeTree(((ObjectMapper) getCodec()).valueToTree(value));
+            } else {
+                super.writeObject(value);
+            }
+        }
+
+        @Override
+        public void writeTree(TreeNode tree) throws IOException {
+            if (!(tree instanceof JsonNode)) {
+                super.writeTree(tree);
+                return;
+            }
+            JsonNode node = (JsonNode) tree;
+            switch (node.getNodeType()) {
+                case OBJECT:
+                    // keys stay in the json order, ChecksumHeader hashes the json text
+                    writeStartObject(node.size());
+                    for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
+                        Map.Entry<String, JsonNode> field = it.next();
+                        writeFieldName(field.getKey());
+                        writeTree(field.getValue());
+                    }
+                    writeEndObject();
+                    break;
+                case ARRAY:
+                    writeStartArray(node, node.size());
+                    for (JsonNode elem : node) {
+                        writeTree(elem);
+                    }
+                    writeEndArray();
+                    break;
+                case NUMBER:
+                    switch (node.numberType()) {
+                        case INT:
+                        case LONG:
+                            writeNumber(node.longValue());
+                            break;
+                        case BIG_INTEGER:
+                            writeNumber(node.bigIntegerValue());
+                            break;
+                        case FLOAT:
+                            writeNumber(node.floatValue());
+                            break;
+                        case DOUBLE:
+                            writeNumber(node.doubleValue());
+                            break;
+                        default:
+                            writeNumber(node.decimalValue());
+                    }
+                    break;
+                case STRING:
+                    writeString(node.textValue());
+                    break;
+                case BOOLEAN:
+                    writeBoolean(node.booleanValue());
+                    break;
+                case BINARY:
+                    writeBinary(node.binaryValue());
+                    break;
+                case POJO:
+                    writeObject(((POJONode) node).getPojo());
+                    break;
+                default:
+                    writeNull();
+            }
+        }
     }
 }
@@ -13,22 +13,32 @@ import java.io.IOException;
 @Data
 @EqualsAndHashCode(callSuper = false)
 public class ChecksumHeader<P> extends AbstractHeader<P> {
+    private static final JabParser parser = new JabParser();
+
     private Long checksum;
 
     @Override
     public void populate(P dto) throws IOException {
         // just checksum of the DTO JSON values array string. Ignore the payload string.
-        JabParser parser = new JabParser();
-        checksum = JabHasher.getGlobalHasher().hash(parser.objectValuesToJsonArrayString(dto));
+        checksum = checksum(dto);
     }
 
     @Override
     public void validate(P dto) throws IOException {
         // just checksum of the DTO JSON values array string. Ignore the payload string.
-        JabParser parser = new JabParser();
-        long hash = JabHasher.getGlobalHasher().hash(parser.objectValuesToJsonArrayString(dto));
+        long hash = checksum(dto);
         if (checksum != hash) {
             throw new IOException("Barcode checksum mismatch; expected " + checksum + ", but got " + hash);
         }
     }
+
+    /**
+     * Hash of the DTO JSON values array, serialized straight into the hasher
+     */
+    private long checksum(P dto) throws IOException {
+        try (JabHasher.Hashing hashing = JabHasher.getGlobalHasher().hashing()) {
+            parser.objectValuesToJsonArray(dto, hashing);
+            return hashing.getHash();
+        }
+    }
 }
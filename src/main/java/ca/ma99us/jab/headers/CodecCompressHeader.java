@@ -0,0 +1,143 @@
+package ca.ma99us.jab.headers;
+
+import ca.ma99us.jab.codecs.DeflateCodec;
+import ca.ma99us.jab.codecs.JabCodec;
+import ca.ma99us.jab.codecs.Lz4Codec;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Compresses/uncompresses payload bytes with a pluggable {@link JabCodec}; {@link Lz4Codec} by default.
+ * The codec id is recorded in the header, so every barcode is uncompressed with the codec it was compressed with.
+ * @param <P> generic payload class
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class CodecCompressHeader<P> extends AbstractHeader<P> {
+    private Integer codecId;
+
+    @Getter
+    private final static Codecs codecs = new Codecs();
+
+    @JsonIgnore
+    private JabCodec codec = codecs.find(Lz4Codec.ID);
+
+    public CodecCompressHeader<P> setCodec(JabCodec codec) {
+        this.codec = codec;
+        codecs.register(this.codec);   // also register globally for decompression
+        return this;
+    }
+
+    @Override
+    public void populate(P dto) throws IOException {
+        if (codec == null) {
+            throw new IOException("Compression codec has to be specified. Set CodecCompressHeader.setCodec(...) first");
+        }
+
+        // populate codec id
+        codecId = codec.getId();
+    }
+
+    // compress
+    @Override
+    public byte[] obfuscate(byte[] payload) throws IOException {
+        if (codec == null) {
+            throw new IOException("Compression codec has to be specified. Set CodecCompressHeader.setCodec(...) first");
+        }
+
+        return codec.compress(payload);
+    }
+
+    // uncompress
+    @Override
+    public byte[] deobfuscate(byte[] payload) throws IOException {
+        // find the codec first
+        JabCodec decompress = codecs.find(codecId);
+        if (decompress == null) {
+            throw new IOException("Not registered codec id: " + codecId);
+        }
+
+        return decompress.decompress(payload);
+    }
+
+    /**
+     * Simple collection of registered codecs. Built-in codecs and the ones found by {@link ServiceLoader} are
+     * registered from the start. Broken or colliding discovered codecs are skipped, and listed in {@link #getLoadErrors()}.
+     * Finds the codec from the barcode header codec id.
+     */
+    public static class Codecs {
+        private static final int MAX_LOAD_ERRORS = 100;
+
+        private final Map<Integer, JabCodec> idCodecs = new HashMap<>();
+        private final List<Throwable> loadErrors = new ArrayList<>();
+
+        Codecs() {
+            this(ServiceLoader.load(JabCodec.class));
+        }
+
+        /**
+         * @param classLoader class loader to discover codecs with
+         */
+        public Codecs(ClassLoader classLoader) {
+            this(ServiceLoader.load(JabCodec.class, classLoader));
+        }
+
+        private Codecs(ServiceLoader<JabCodec> loader) {
+            register(new DeflateCodec());
+            register(new Lz4Codec());
+            Iterator<JabCodec> it = loader.iterator();
+            while (loadErrors.size() < MAX_LOAD_ERRORS) {
+                try {
+                    if (!it.hasNext()) {
+                        break;
+                    }
+                    register(it.next());
+                } catch (ServiceConfigurationError | IllegalArgumentException ex) {
+                    loadErrors.add(ex);     // skip it, the rest still work
+                }
+            }
+        }
+
+        /**
+         * @return discovered codecs which could not be loaded or registered
+         */
+        public synchronized List<Throwable> getLoadErrors() {
+            return Collections.unmodifiableList(new ArrayList<>(loadErrors));
+        }
+
+        /**
+         * @param codec codec to register
+         * @return this
+         * @throws IllegalArgumentException if a different codec class is already registered with the same id
+         */
+        public synchronized Codecs register(JabCodec codec) {
+            JabCodec registered = idCodecs.get(codec.getId());
+            if (registered != null && registered.getClass() != codec.getClass()) {
+                throw new IllegalArgumentException("Codec id " + codec.getId() + " collision; " + codec.getClass().getName()
+                        + " and already registered " + registered.getClass().getName());
+            }
+            idCodecs.put(codec.getId(), codec);
+            return this;
+        }
+
+        public synchronized JabCodec unregister(JabCodec codec) {
+            return idCodecs.remove(codec.getId());
+        }
+
+        public synchronized JabCodec find(Integer id) {
+            return id != null ? idCodecs.get(id) : null;
+        }
+    }
+}
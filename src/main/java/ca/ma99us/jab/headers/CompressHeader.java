@@ -1,40 +1,152 @@
 package ca.ma99us.jab.headers;
 
+import ca.ma99us.jab.JabZipPool;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
+import java.io.*;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
- * Compresses/uncompresses payload bytes using default ZIP algorithm
+ * Compresses/uncompresses payload bytes using default ZIP algorithm.
+ * Deflaters and inflaters are taken from the {@link JabZipPool#getGlobalPool()} and returned there when done.
  */
 @Data
 @EqualsAndHashCode(callSuper = false)
 public class CompressHeader<P> extends AbstractHeader<P> {
+    private static final int BUFFER_SIZE = 512;
+
+    /**
+     * Compression level, {@link Deflater#DEFAULT_COMPRESSION} or 0-9. Only affects compression.
+     */
+    @JsonIgnore
+    private int level = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Compression strategy, e.g. {@link Deflater#FILTERED}. Only affects compression.
+     */
+    @JsonIgnore
+    private int strategy = Deflater.DEFAULT_STRATEGY;
+
+    /**
+     * Raw deflate without the zlib header and the Adler-32 checksum (6 bytes shorter).
+     * Decoding always starts from a new header, so it is fixed per header class; see {@link RawCompressHeader}.
+     */
+    @JsonIgnore
+    private final boolean nowrap;
+
+    public CompressHeader() {
+        this(false);
+    }
+
+    protected CompressHeader(boolean nowrap) {
+        this.nowrap = nowrap;
+    }
 
     // compress
     @Override
     public byte[] obfuscate(byte[] payload) throws IOException {
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        try (DeflaterOutputStream dos = new DeflaterOutputStream(os, new Deflater(Deflater.DEFAULT_COMPRESSION))) {
-            dos.write(payload);
+        Deflater deflater = acquireDeflater();
+        try {
+            return JabZipPool.deflate(deflater, payload);
+        } finally {
+            releaseDeflater(deflater);
         }
-        return os.toByteArray();
     }
 
     // uncompress
     @Override
     public byte[] deobfuscate(byte[] payload) throws IOException {
-
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        try (OutputStream ios = new InflaterOutputStream(os)) {
-            ios.write(payload);
+        Inflater inflater = acquireInflater();
+        try {
+            return JabZipPool.inflate(inflater, payload);
+        } finally {
+            releaseInflater(inflater);
         }
-        return os.toByteArray();
+    }
+
+    @Override
+    public OutputStream obfuscating(OutputStream os) throws IOException {
+        final Deflater deflater = acquireDeflater();
+        return new DeflaterOutputStream(os, deflater, BUFFER_SIZE) {
+            private boolean released;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!released) {
+                        released = true;
+                        releaseDeflater(deflater);   // custom deflater is not released by the stream itself
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream deobfuscating(InputStream is) throws IOException {
+        final Inflater inflater = acquireInflater();
+        return new InflaterInputStream(is, inflater, BUFFER_SIZE) {
+            private boolean released;
+            private boolean padded;
+
+            @Override
+            protected void fill() throws IOException {
+                try {
+                    super.fill();
+                } catch (EOFException ex) {
+                    if (!nowrap || padded) {
+                        throw ex;
+                    }
+                    // raw inflater may need an extra dummy byte to finish
+                    padded = true;
+                    buf[0] = 0;
+                    len = 1;
+                    inf.setInput(buf, 0, 1);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!released) {
+                        released = true;
+                        releaseInflater(inflater);   // custom inflater is not released by the stream itself
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @return pooled deflater with this header settings
+     * @throws IOException if it can not be prepared
+     */
+    protected Deflater acquireDeflater() throws IOException {
+        return JabZipPool.getGlobalPool().acquireDeflater(level, strategy, nowrap);
+    }
+
+    protected void releaseDeflater(Deflater deflater) {
+        JabZipPool.getGlobalPool().release(deflater, level, strategy, nowrap);
+    }
+
+    /**
+     * @return pooled inflater with this header settings
+     * @throws IOException if it can not be prepared
+     */
+    protected Inflater acquireInflater() throws IOException {
+        return JabZipPool.getGlobalPool().acquireInflater(nowrap);
+    }
+
+    protected void releaseInflater(Inflater inflater) {
+        JabZipPool.getGlobalPool().release(inflater, nowrap);
     }
 }
@@ -7,6 +7,8 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -63,6 +65,28 @@ public class CryptoHeader<P> extends AbstractHeader<P> {
         return decrypt.decrypt(payload);
     }
 
+    @Override
+    public OutputStream obfuscating(OutputStream os) throws IOException {
+        if(encrypt == null){
+            throw new IOException("Encryption Crypto has to be specified. Set CryptoHeader.setEncrypt(...) first");
+        }
+
+        // encrypt the payload as it is being written
+        return encrypt.encrypting(os);
+    }
+
+    @Override
+    public InputStream deobfuscating(InputStream is) throws IOException {
+        // validate the key id first
+        JabCrypto decrypt = decryptors.find(keyId);
+        if (decrypt == null) {
+            throw new IOException("Not registered key id: " + keyId);
+        }
+
+        //decrypt the payload as it is being read
+        return decrypt.decrypting(is);
+    }
+
     /**
      * Simple collection of registered crypo keys and salts.
      * Finds crypto key from the barcode header key id.
@@ -70,12 +94,12 @@ public class CryptoHeader<P> extends AbstractHeader<P> {
     public static class Decryptors {
         private final Map<Long, JabCrypto> keyIdCryptos = new HashMap<>();
 
-        public Decryptors register(JabCrypto crypto) {
+        public synchronized Decryptors register(JabCrypto crypto) {
             keyIdCryptos.put(crypto.getKeyId(), crypto);
             return this;
         }
 
-        public JabCrypto unregister(JabCrypto crypto) {
+        public synchronized JabCrypto unregister(JabCrypto crypto) {
             return keyIdCryptos.remove(crypto.getKeyId());
         }
 
@@ -0,0 +1,91 @@
+package ca.ma99us.jab.headers;
+
+import ca.ma99us.jab.JabDictionary;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses/uncompresses payload bytes using raw deflate with a preset dictionary, see {@link JabDictionary}.
+ * Much better than {@link CompressHeader} on short payloads. There is no zlib wrapper and checksum, so use it together
+ * with a {@link ChecksumHeader}.
+ * @param <P> generic payload class
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class DictionaryCompressHeader<P> extends CompressHeader<P> {
+    private Integer dictId;
+
+    @Getter
+    private final static Dictionaries dictionaries = new Dictionaries();
+
+    @JsonIgnore
+    private JabDictionary dictionary;
+
+    public DictionaryCompressHeader() {
+        super(true);
+        setLevel(Deflater.BEST_COMPRESSION);
+    }
+
+    public DictionaryCompressHeader<P> setDictionary(JabDictionary dictionary) {
+        this.dictionary = dictionary;
+        dictionaries.register(this.dictionary);   // also register globally for decompression
+        return this;
+    }
+
+    @Override
+    public void populate(P dto) throws IOException {
+        if (dictionary == null) {
+            throw new IOException("Compression dictionary has to be specified. Set DictionaryCompressHeader.setDictionary(...) first");
+        }
+
+        // populate dictionary id
+        dictId = dictionary.getId();
+    }
+
+    @Override
+    protected Deflater acquireDeflater() throws IOException {
+        if (dictionary == null) {
+            throw new IOException("Compression dictionary has to be specified. Set DictionaryCompressHeader.setDictionary(...) first");
+        }
+        return dictionary.prime(super.acquireDeflater());
+    }
+
+    @Override
+    protected Inflater acquireInflater() throws IOException {
+        // find the dictionary first
+        JabDictionary dict = dictionaries.find(dictId);
+        if (dict == null) {
+            throw new IOException("Not registered dictionary id: " + dictId);
+        }
+        return dict.prime(super.acquireInflater());
+    }
+
+    /**
+     * Simple collection of registered compression dictionaries.
+     * Finds the dictionary from the barcode header dictionary id.
+     */
+    public static class Dictionaries {
+        private final Map<Integer, JabDictionary> idDictionaries = new HashMap<>();
+
+        public synchronized Dictionaries register(JabDictionary dictionary) {
+            idDictionaries.put(dictionary.getId(), dictionary);
+            return this;
+        }
+
+        public synchronized JabDictionary unregister(JabDictionary dictionary) {
+            return idDictionaries.remove(dictionary.getId());
+        }
+
+        public synchronized JabDictionary find(Integer id) {
+            return id != null ? idDictionaries.get(id) : null;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package ca.ma99us.jab.headers;
+
+import ca.ma99us.jab.JabMetrics;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Adapters which let any {@link JabHeader} take part in a streaming header chain.
+ */
+public class JabHeaderStreams {
+    private static final Map<Class<?>, Boolean> passThroughClasses = new ConcurrentHashMap<>();
+    private static final ObjectMapper jsonMapper = new ObjectMapper();
+
+    /**
+     * Wrap the output stream with header obfuscation. Streaming headers do it natively, others are buffered.
+     * @param header any header
+     * @param os stream to write modified payload bytes to
+     * @param <P> generic payload class
+     * @return stream to write original payload bytes to
+     * @throws IOException if compression/encryption fails
+     */
+    public static <P> OutputStream obfuscating(final JabHeader<P> header, OutputStream os) throws IOException {
+        if (isPassThrough(header)) {
+            return os;
+        }
+        JabMetrics.Probe probe = JabMetrics.currentProbe();
+        if (probe != null) {
+            return probe.obfuscating(header, os, new JabMetrics.StreamFactory<OutputStream>() {
+                @Override
+                public OutputStream create(OutputStream stream) throws IOException {
+                    return headerObfuscating(header, stream);
+                }
+            });
+        }
+        return headerObfuscating(header, os);
+    }
+
+    private static <P> OutputStream headerObfuscating(JabHeader<P> header, OutputStream os) throws IOException {
+        if (header instanceof JabStreamHeader) {
+            return ((JabStreamHeader<P>) header).obfuscating(os);
+        }
+        return bufferedObfuscating(header, os);
+    }
+
+    /**
+     * Wrap the input stream with header deobfuscation. Streaming headers do it natively, others are buffered.
+     * @param header any header
+     * @param is stream to read obfuscated payload bytes from
+     * @param <P> generic payload class
+     * @return stream to read modified payload bytes from
+     * @throws IOException if validation/decryption fails
+     */
+    public static <P> InputStream deobfuscating(final JabHeader<P> header, InputStream is) throws IOException {
+        if (isPassThrough(header)) {
+            return is;
+        }
+        JabMetrics.Probe probe = JabMetrics.currentProbe();
+        if (probe != null) {
+            return probe.deobfuscating(header, is, new JabMetrics.StreamFactory<InputStream>() {
+                @Override
+                public InputStream create(InputStream stream) throws IOException {
+                    return headerDeobfuscating(header, stream);
+                }
+            });
+        }
+        return headerDeobfuscating(header, is);
+    }
+
+    private static <P> InputStream headerDeobfuscating(JabHeader<P> header, InputStream is) throws IOException {
+        if (header instanceof JabStreamHeader) {
+            return ((JabStreamHeader<P>) header).deobfuscating(is);
+        }
+        return bufferedDeobfuscating(header, is);
+    }
+
+    /**
+     * Byte array adapter. Collects all the payload bytes, then obfuscates them at once on close.
+     */
+    public static <P> OutputStream bufferedObfuscating(final JabHeader<P> header, final OutputStream os) {
+        return new ByteArrayOutputStream() {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    os.write(header.obfuscate(toByteArray()));
+                } finally {
+                    os.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Byte array adapter. Reads all the obfuscated bytes on first access, then deobfuscates them at once.
+     */
+    public static <P> InputStream bufferedDeobfuscating(final JabHeader<P> header, final InputStream is) {
+        return new InputStream() {
+            private InputStream decoded;
+
+            private InputStream decoded() throws IOException {
+                if (decoded == null) {
+                    decoded = new ByteArrayInputStream(header.deobfuscate(readAll(is)));
+                }
+                return decoded;
+            }
+
+            @Override
+            public int read() throws IOException {
+                return decoded().read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return decoded().read(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                is.close();
+            }
+        };
+    }
+
+    /**
+     * Headers which do not override {@link AbstractHeader} byte arrays modification (like checksum or signature
+     * headers) do not touch the payload bytes at all.
+     * @param header any header
+     * @return true if this header leaves payload bytes as is
+     */
+    public static boolean isPassThrough(JabHeader<?> header) {
+        if (!(header instanceof AbstractHeader)) {
+            return false;
+        }
+        Class<?> clazz = header.getClass();
+        Boolean passThrough = passThroughClasses.get(clazz);
+        if (passThrough == null) {
+            try {
+                passThrough = clazz.getMethod("obfuscate", byte[].class).getDeclaringClass() == AbstractHeader.class
+                        && clazz.getMethod("deobfuscate", byte[].class).getDeclaringClass() == AbstractHeader.class
+                        && clazz.getMethod("obfuscating", OutputStream.class).getDeclaringClass() == AbstractHeader.class
+                        && clazz.getMethod("deobfuscating", InputStream.class).getDeclaringClass() == AbstractHeader.class;
+            } catch (NoSuchMethodException e) {
+                passThrough = false;
+            }
+            passThroughClasses.put(clazz, passThrough);
+        }
+        return passThrough;
+    }
+
+    /**
+     * Read the whole stream into a byte array
+     * @param is input stream
+     * @return all the bytes
+     * @throws IOException if reading fails
+     */
+    public static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buf = new byte[512];
+        int len;
+        while ((len = is.read(buf)) >= 0) {
+            os.write(buf, 0, len);
+        }
+        return os.toByteArray();
+    }
+
+    /**
+     * Obfuscating end of a header which stores the payload fields values in its own format (e.g. CBOR) instead of
+     * the json array text. {@link ca.ma99us.jab.JabParser} writes the values with {@link #createGenerator()} straight
+     * into it, when all the headers before it leave the payload bytes as is.
+     * Json text written as bytes (unwrapped, like for any other header) is converted on close.
+     */
+    public static class ValuesOutputStream extends FilterOutputStream {
+        private final JsonFactory factory;
+        private ByteArrayOutputStream json;
+        private boolean closed;
+
+        public ValuesOutputStream(OutputStream os, JsonFactory factory) {
+            super(os);
+            this.factory = factory;
+        }
+
+        /**
+         * @return generator writing the whole values array directly to the underlying stream. It does not close it.
+         * @throws IOException if the generator can not be created
+         */
+        public JsonGenerator createGenerator() throws IOException {
+            return factory.createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (json == null) {
+                json = new ByteArrayOutputStream();
+                json.write('[');
+            }
+            json.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (json != null) {
+                    json.write(']');
+                    // a tree knows arrays and maps sizes, so they are written with definite lengths
+                    try (JsonGenerator generator = createGenerator()) {
+                        generator.setCodec(jsonMapper);
+                        generator.writeTree(jsonMapper.readTree(json.toByteArray()));
+                    }
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Deobfuscating end of a header which stores the payload fields values in its own format (e.g. CBOR).
+     * {@link ca.ma99us.jab.JabParser} reads the values with {@link #createParser()} straight from it; after that
+     * the stream only gives the rest of the underlying bytes. Otherwise it reads as the (unwrapped) json array text.
+     */
+    public static class ValuesInputStream extends FilterInputStream {
+        private final JsonFactory factory;
+        private InputStream json;
+        private boolean direct;
+
+        public ValuesInputStream(InputStream is, JsonFactory factory) {
+            super(is);
+            this.factory = factory;
+        }
+
+        /**
+         * @return parser reading the values array directly from the underlying stream
+         * @throws IOException if the parser can not be created, or the stream was already read as json
+         */
+        public JsonParser createParser() throws IOException {
+            if (json != null) {
+                throw new IOException("Payload values are already read as json");
+            }
+            direct = true;
+            return factory.createParser(in);
+        }
+
+        private InputStream json() throws IOException {
+            if (json == null) {
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                try (JsonParser parser = factory.createParser(in);
+                     JsonGenerator generator = jsonMapper.getFactory().createGenerator(os)) {
+                    parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+                    if (parser.nextToken() != null) {
+                        generator.copyCurrentStructure(parser);
+                    }
+                }
+                readAll(in);    // let the headers below verify their trailing bytes
+                // unwrap from json array
+                byte[] bytes = os.toByteArray();
+                int wrapped = bytes.length >= 2 && bytes[0] == '[' && bytes[bytes.length - 1] == ']' ? 1 : 0;
+                json = new ByteArrayInputStream(bytes, wrapped, bytes.length - 2 * wrapped);
+            }
+            return json;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return direct ? in.read() : json().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return direct ? in.read(b, off, len) : json().read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return direct ? in.skip(n) : json().skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return direct ? in.available() : json().available();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
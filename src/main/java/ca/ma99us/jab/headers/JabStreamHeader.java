@@ -0,0 +1,29 @@
+package ca.ma99us.jab.headers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Optional streaming contract of a header. Lets a chain of headers run as one pipeline without
+ * intermediate byte arrays between them.
+ * Byte array only headers are adapted with {@link JabHeaderStreams}.
+ */
+public interface JabStreamHeader<P> extends JabHeader<P> {
+
+    /**
+     * Streaming version of {@link #obfuscate(byte[])}.
+     * @param os stream to write modified payload bytes to
+     * @return stream to write original payload bytes to. Closing it finishes the payload and closes the given stream.
+     * @throws IOException if compression/encryption fails
+     */
+    OutputStream obfuscating(OutputStream os) throws IOException;
+
+    /**
+     * Streaming version of {@link #deobfuscate(byte[])}.
+     * @param is stream to read obfuscated payload bytes from
+     * @return stream to read modified payload bytes from
+     * @throws IOException if validation/decryption fails
+     */
+    InputStream deobfuscating(InputStream is) throws IOException;
+}
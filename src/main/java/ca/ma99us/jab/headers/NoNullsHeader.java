@@ -1,13 +1,9 @@
 package ca.ma99us.jab.headers;
 
-import ca.ma99us.jab.JabParser;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.*;
 
 /**
  * Remove/adds back 'null's from json array string to make payload bytes a bit shorter.
@@ -21,15 +17,11 @@ public class NoNullsHeader<P> extends AbstractHeader<P> {
      */
     @Override
     public byte[] obfuscate(byte[] payload) throws IOException {
-        // shrink the nulls
-        String str = JabParser.wrap(new String(payload));
-        Pattern regex = Pattern.compile("([\\[,])(null)([,\\]])");
-        Matcher matcher = regex.matcher(str);
-        while (matcher.find()) {
-            str = matcher.replaceAll("$1$3");
-            matcher = regex.matcher(str);
-        }
-        return JabParser.unwrap(str).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream os = new ByteArrayOutputStream(payload.length);
+        try (OutputStream nos = obfuscating(os)) {
+            nos.write(payload);
+        }
+        return os.toByteArray();
     }
 
     /**
@@ -37,14 +29,199 @@ public class NoNullsHeader<P> extends AbstractHeader<P> {
      */
     @Override
     public byte[] deobfuscate(byte[] payload) throws IOException {
-        // expand nulls back
-        String str = JabParser.wrap(new String(payload));
-        Pattern regex = Pattern.compile("([\\[,])([,\\]])");
-        Matcher matcher = regex.matcher(str);
-        while (matcher.find()) {
-            str = matcher.replaceAll("$1null$2");
-            matcher = regex.matcher(str);
-        }
-        return JabParser.unwrap(str).getBytes(StandardCharsets.UTF_8);
+        return JabHeaderStreams.readAll(deobfuscating(new ByteArrayInputStream(payload)));
+    }
+
+    @Override
+    public OutputStream obfuscating(OutputStream os) throws IOException {
+        return new NullsShrinkingOutputStream(os);
+    }
+
+    @Override
+    public InputStream deobfuscating(InputStream is) throws IOException {
+        return new NullsInflatingInputStream(is);
+    }
+
+    /**
+     * Drops every 'null' array element, i.e. "null" preceded by '[' or ',' and followed by ',' or ']'.
+     * The (unwrapped) payload is treated as if it was wrapped in "[", "]".
+     */
+    private static class NullsShrinkingOutputStream extends FilterOutputStream {
+        private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+        private int prev = '[';     // last written byte
+        private int matched;        // number of "null" bytes held back
+        private final byte[] buf = new byte[512];
+        private int count;
+
+        NullsShrinkingOutputStream(OutputStream os) {
+            super(os);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (matched == NULL.length) {
+                matched = 0;
+                if (b != ',' && b != ']') {
+                    writeThrough(NULL, NULL.length);
+                }
+            } else if (matched > 0) {
+                if (b == NULL[matched]) {
+                    matched++;
+                    return;
+                }
+                int len = matched;
+                matched = 0;
+                writeThrough(NULL, len);
+            }
+            if (b == 'n' && (prev == '[' || prev == ',')) {
+                matched = 1;
+                return;
+            }
+            emit(b);
+            prev = b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            for (int i = 0; i < len; i++) {
+                write(b[off + i]);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (matched > 0 && matched < NULL.length) {
+                writeThrough(NULL, matched);
+            }
+            // trailing "null" is followed by the implied closing ']', so it is dropped
+            matched = 0;
+            super.close();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                out.write(buf, 0, count);
+                count = 0;
+            }
+            out.flush();
+        }
+
+        private void writeThrough(byte[] b, int len) throws IOException {
+            for (int i = 0; i < len; i++) {
+                emit(b[i]);
+            }
+            prev = b[len - 1];
+        }
+
+        private void emit(int b) throws IOException {
+            if (count == buf.length) {
+                out.write(buf, 0, count);
+                count = 0;
+            }
+            buf[count++] = (byte) b;
+        }
+    }
+
+    /**
+     * Inserts 'null' between every '[' or ',' followed by ',' or ']'.
+     * The (unwrapped) payload is treated as if it was wrapped in "[", "]".
+     */
+    private static class NullsInflatingInputStream extends FilterInputStream {
+        private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+        private int prev = '[';     // last returned byte
+        private int pending = -1;   // byte held back while "null" is being returned
+        private int nullIdx = -1;   // position in "null" being returned
+        private boolean ended;
+        private final byte[] buf = new byte[512];
+        private int pos;
+        private int lim;
+
+        NullsInflatingInputStream(InputStream is) {
+            super(is);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b;
+            if (nullIdx >= 0) {
+                b = NULL[nullIdx++];
+                if (nullIdx == NULL.length) {
+                    nullIdx = -1;
+                }
+            } else if (pending >= 0) {
+                b = pending;
+                pending = -1;
+            } else {
+                if (ended) {
+                    return -1;
+                }
+                b = nextRaw();
+                if (b < 0) {
+                    ended = true;
+                    if (prev == '[' || prev == ',') {
+                        // the implied closing ']'
+                        nullIdx = 1;
+                        prev = 'l';
+                        return 'n';
+                    }
+                    return -1;
+                }
+                if ((b == ',' || b == ']') && (prev == '[' || prev == ',')) {
+                    pending = b;
+                    nullIdx = 1;
+                    b = 'n';
+                }
+            }
+            prev = b;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int count = 0;
+            while (count < len) {
+                int c = read();
+                if (c < 0) {
+                    return count > 0 ? count : -1;
+                }
+                b[off + count++] = (byte) c;
+            }
+            return count;
+        }
+
+        private int nextRaw() throws IOException {
+            if (pos >= lim) {
+                lim = in.read(buf, 0, buf.length);
+                pos = 0;
+                if (lim <= 0) {
+                    lim = 0;
+                    return -1;
+                }
+            }
+            return buf[pos++] & 0xff;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && read() >= 0) {
+                skipped++;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (nullIdx >= 0 ? NULL.length - nullIdx : 0) + (pending >= 0 ? 1 : 0) + (lim - pos);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
     }
 }
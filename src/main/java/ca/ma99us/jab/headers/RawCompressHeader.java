@@ -0,0 +1,17 @@
+package ca.ma99us.jab.headers;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Same as {@link CompressHeader}, but raw deflate, without the zlib header and the Adler-32 checksum.
+ * Use it together with a {@link ChecksumHeader}.
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class RawCompressHeader<P> extends CompressHeader<P> {
+
+    public RawCompressHeader() {
+        super(true);
+    }
+}
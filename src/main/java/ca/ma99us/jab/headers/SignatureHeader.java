@@ -1,5 +1,7 @@
 package ca.ma99us.jab.headers;
 
+import ca.ma99us.jab.JabCache;
+import ca.ma99us.jab.JabHasher;
 import ca.ma99us.jab.JabParser;
 import ca.ma99us.jab.JabSigner;
 import ca.ma99us.jab.JabToString;
@@ -7,9 +9,11 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
+import lombok.Setter;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -26,6 +30,22 @@ public class SignatureHeader<P> extends AbstractHeader<P> {
 
     @Getter
     private final static Verifiers verifiers = new Verifiers();
+    private static final JabParser parser = new JabParser();
+
+    /**
+     * Optional cache of successful verifications, so repeated scans of the same barcode skip the signature check.
+     * Null (default) to verify every time.
+     */
+    @Getter
+    @Setter
+    private static volatile JabCache<Verified, Boolean> verifiedCache;
+
+    /**
+     * Also cache failed verifications, so repeated scans of a bad barcode are rejected right away. Off by default.
+     */
+    @Getter
+    @Setter
+    private static volatile boolean cacheFailures;
 
     @JsonIgnore
     private JabSigner signer;
@@ -46,9 +66,7 @@ public class SignatureHeader<P> extends AbstractHeader<P> {
         keyId = signer.getKeyId();
 
         // populate signature
-        JabParser parser = new JabParser();
-        String payloadStr = parser.objectValuesToJsonArrayString(dto);
-        byte[] signBytes = signer.sign(payloadStr.getBytes(StandardCharsets.UTF_8));
+        byte[] signBytes = signer.sign(payloadBytes(dto));
         signature = JabToString.getGlobalToString().bytesToString(signBytes);
     }
 
@@ -62,14 +80,44 @@ public class SignatureHeader<P> extends AbstractHeader<P> {
 
         // verify signature
         byte[] signBytes = JabToString.getGlobalToString().stringToBytes(signature);
-        JabParser parser = new JabParser();
-        String payloadStr = parser.objectValuesToJsonArrayString(dto);
-        boolean verify = verifier.verify(payloadStr.getBytes(StandardCharsets.UTF_8), signBytes);
+        byte[] payloadBytes = payloadBytes(dto);
+        JabCache<Verified, Boolean> cache = verifiedCache;
+        Boolean verify = null;
+        Verified verified = null;
+        if (cache != null) {
+            // signature length frames the signature and payload boundary
+            byte[] prefix = ByteBuffer.allocate(12).putLong(keyId).putInt(signBytes.length).array();
+            verified = new Verified(JabHasher.getGlobalHasher().digest(prefix, signBytes, payloadBytes));
+            verify = cache.get(verified);
+        }
+        if (verify == null) {
+            verify = verifier.verify(payloadBytes, signBytes);
+            if (cache != null && (verify || cacheFailures)) {
+                cache.put(verified, verify);
+            }
+        }
         if (!verify) {
             throw new IOException("Signature verification failed");
         }
     }
 
+    /**
+     * DTO JSON values array UTF-8 bytes
+     */
+    private byte[] payloadBytes(P dto) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        parser.objectValuesToJsonArray(dto, os);
+        return os.toByteArray();
+    }
+
+    /**
+     * Verified cache key; full digest of the key id, signature length, signature and payload bytes
+     */
+    @Data
+    public static class Verified {
+        private final byte[] digest;
+    }
+
     /**
      * Simple collection of registered crypo keys and salts.
      * Finds crypto key from the barcode header key id.
@@ -77,12 +125,12 @@ public class SignatureHeader<P> extends AbstractHeader<P> {
     public static class Verifiers {
         private final Map<Long, JabSigner> keyIdSigners = new HashMap<>();
 
-        public Verifiers register(JabSigner signer) {
+        public synchronized Verifiers register(JabSigner signer) {
             keyIdSigners.put(signer.getKeyId(), signer);
             return this;
         }
 
-        public JabSigner unregister(JabSigner signer) {
+        public synchronized JabSigner unregister(JabSigner signer) {
             return keyIdSigners.remove(signer.getKeyId());
         }
 
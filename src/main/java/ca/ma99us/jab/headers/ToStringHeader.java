@@ -5,6 +5,8 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -24,4 +26,14 @@ public class ToStringHeader<P>  extends AbstractHeader<P> {
     public byte[] deobfuscate(byte[] payload) throws IOException {
         return JabToString.getGlobalToString().stringToBytes(new String(payload));
     }
+
+    @Override
+    public OutputStream obfuscating(OutputStream os) throws IOException {
+        return JabToString.getGlobalToString().bytesToStringStream(os);
+    }
+
+    @Override
+    public InputStream deobfuscating(InputStream is) throws IOException {
+        return JabToString.getGlobalToString().stringToBytesStream(is);
+    }
 }
@@ -1,14 +1,21 @@
 package ca.ma99us.jab.headers.groups;
 
+import ca.ma99us.jab.JabMetrics;
 import ca.ma99us.jab.headers.JabHeader;
+import ca.ma99us.jab.headers.JabHeaderStreams;
+import ca.ma99us.jab.headers.JabStreamHeader;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
- * Collection of headers applied in sequence
+ * Collection of headers applied in sequence.
+ * When streamed, all the headers run as one chained pipeline, without intermediate byte arrays between them.
+ * Each header of the group is measured separately by {@link JabMetrics}, if enabled.
  * @param <P> generic payload class
  */
-public abstract class AbstractHeaderGroup<P> implements JabHeader<P> {
+public abstract class AbstractHeaderGroup<P> implements JabStreamHeader<P> {
 
     /**
      * A sequence of headers to apply during the barcode creation. The order is important!
@@ -19,24 +26,37 @@ public abstract class AbstractHeaderGroup<P> implements JabHeader<P> {
 
     @Override
     public void populate(P dto) throws IOException {
+        JabMetrics.Probe probe = JabMetrics.currentProbe();
         for (JabHeader<P> hdr : headers()) {
+            JabMetrics.Frame frame = JabMetrics.begin(probe, JabMetrics.Stage.POPULATE, JabMetrics.nameOf(hdr));
             hdr.populate(dto);
+            JabMetrics.end(probe, frame);
         }
     }
 
     @Override
     public void validate(P dto) throws IOException {
         // in reverse order
+        JabMetrics.Probe probe = JabMetrics.currentProbe();
         JabHeader<P>[] headers = headers();
         for (int idx = headers.length - 1; idx >= 0; idx--) {
+            JabMetrics.Frame frame = JabMetrics.begin(probe, JabMetrics.Stage.VALIDATE, JabMetrics.nameOf(headers[idx]));
             headers[idx].validate(dto);
+            JabMetrics.end(probe, frame);
         }
     }
 
     @Override
     public byte[] obfuscate(byte[] payload) throws IOException {
+        JabMetrics.Probe probe = JabMetrics.currentProbe();
         for (JabHeader<P> hdr : headers()) {
+            JabMetrics.Frame frame = JabMetrics.begin(probe, JabMetrics.Stage.OBFUSCATE, JabMetrics.nameOf(hdr));
+            int length = payload.length;
             payload = hdr.obfuscate(payload);
+            if (frame != null) {
+                frame.addBytes(length, payload.length);
+                probe.end(frame);
+            }
         }
         return payload;
     }
@@ -45,9 +65,36 @@ public abstract class AbstractHeaderGroup<P> implements JabHeader<P> {
     public byte[] deobfuscate(byte[] payload) throws IOException {
         // in reverse order
         JabHeader<P>[] headers = headers();
+        JabMetrics.Probe probe = JabMetrics.currentProbe();
         for (int idx = headers.length - 1; idx >= 0; idx--) {
+            JabMetrics.Frame frame = JabMetrics.begin(probe, JabMetrics.Stage.DEOBFUSCATE, JabMetrics.nameOf(headers[idx]));
+            int length = payload.length;
             payload = headers[idx].deobfuscate(payload);
+            if (frame != null) {
+                frame.addBytes(length, payload.length);
+                probe.end(frame);
+            }
         }
         return payload;
     }
+
+    @Override
+    public OutputStream obfuscating(OutputStream os) throws IOException {
+        // the first header wraps all the others, so it sees the original bytes first
+        JabHeader<P>[] headers = headers();
+        for (int idx = headers.length - 1; idx >= 0; idx--) {
+            os = JabHeaderStreams.obfuscating(headers[idx], os);
+        }
+        return os;
+    }
+
+    @Override
+    public InputStream deobfuscating(InputStream is) throws IOException {
+        // the last header reads the obfuscated bytes first
+        JabHeader<P>[] headers = headers();
+        for (int idx = headers.length - 1; idx >= 0; idx--) {
+            is = JabHeaderStreams.deobfuscating(headers[idx], is);
+        }
+        return is;
+    }
 }
@@ -0,0 +1,24 @@
+package ca.ma99us.jab.headers.groups;
+
+import ca.ma99us.jab.headers.*;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Same as {@link CryptoHeaderGroup}, but with authenticated encryption instead of a separate checksum
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class AeadCryptoHeaderGroup<P> extends AbstractHeaderGroup<P> {
+    @JsonIgnore
+    private final NoNullsHeader<P> noNullsHeader = new NoNullsHeader<P>();
+    private final AeadCryptoHeader<P> cryptoHeader = new AeadCryptoHeader<P>();
+    @JsonIgnore
+    private final ToStringHeader<P> toStringHeader = new ToStringHeader<P>();
+
+    @Override
+    protected JabHeader<P>[] headers() {
+        return new JabHeader[]{noNullsHeader, cryptoHeader, toStringHeader};
+    }
+}
@@ -0,0 +1,26 @@
+package ca.ma99us.jab.headers.groups;
+
+import ca.ma99us.jab.headers.*;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Same as {@link CompressHeaderGroup}, but with a pluggable compression codec. Set it with
+ * getCompressHeader().setCodec(...)
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class CodecCompressHeaderGroup<P> extends AbstractHeaderGroup<P> {
+    private final ChecksumHeader<P> checksumHeader = new ChecksumHeader<P>();
+    @JsonIgnore
+    private final NoNullsHeader<P> noNullsHeader = new NoNullsHeader<P>();
+    private final CodecCompressHeader<P> compressHeader = new CodecCompressHeader<P>();
+    @JsonIgnore
+    private final ToStringHeader<P> toStringHeader = new ToStringHeader<P>();
+
+    @Override
+    protected JabHeader<P>[] headers() {
+        return new JabHeader[]{checksumHeader, noNullsHeader, compressHeader, toStringHeader};
+    }
+}
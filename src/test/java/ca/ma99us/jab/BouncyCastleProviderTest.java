@@ -10,7 +10,9 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.security.Provider;
+import java.security.Security;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class BouncyCastleProviderTest {
@@ -107,6 +109,17 @@ public class BouncyCastleProviderTest {
         JabAsyncSigner verifier = new JabAsyncSigner("ECDSA", "SHA256withECDSA", 24).setPublicKeyBytes(keyBytes);
         SignatureHeader.getVerifiers().register(verifier);
 
+        // decoded public keys are shared, engines are reused
+        JabAsyncSigner verifier1 = new JabAsyncSigner("ECDSA", "SHA256withECDSA", 24).setPublicKeyBytes(keyBytes);
+        Assert.assertSame(verifier.publicKey, verifier1.publicKey);
+        byte[] data = "some data".getBytes();
+        byte[] sign = signer.sign(data);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(verifier.verify(data, sign));
+            Assert.assertFalse(verifier1.verify("other data".getBytes(), sign));
+            Assert.assertTrue(verifier1.verify(data, signer.sign(data)));
+        }
+
         // parse it back
         DummyDTO res = null;
         try {
@@ -130,4 +143,29 @@ public class BouncyCastleProviderTest {
         }
         Assert.assertNull(res);
     }
+
+    @Test
+    public void providerResolvedOnceTest() {
+        final AtomicInteger resolved = new AtomicInteger();
+        AbstractSecret.CryptoConfig config = new AbstractSecret.CryptoConfig() {
+            @Override
+            public Provider getSecurityProvider() {
+                resolved.incrementAndGet();
+                return new BouncyCastleProvider();
+            }
+        };
+        AbstractSecret.setCryptoConfig(config);
+        try {
+            JabAsyncSigner first = new JabAsyncSigner("ECDSA", "SHA256withECDSA", 24);
+            for (int i = 0; i < 100; i++) {
+                JabCrypto crypto = new JabCrypto();
+                Assert.assertSame(first.provider, crypto.provider);
+            }
+            Assert.assertEquals(1, resolved.get());
+            Assert.assertSame(Security.getProvider(first.providerName), first.provider);
+            Assert.assertTrue(first.setRandomKey().verify("data".getBytes(), first.sign("data".getBytes())));
+        } finally {
+            AbstractSecret.setCryptoConfig(new AbstractSecret.CryptoConfig());
+        }
+    }
 }
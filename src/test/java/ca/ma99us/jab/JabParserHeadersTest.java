@@ -1,13 +1,35 @@
 package ca.ma99us.jab;
 
+import ca.ma99us.jab.codecs.DeflateCodec;
+import ca.ma99us.jab.codecs.JabCodec;
+import ca.ma99us.jab.codecs.Lz4Codec;
 import ca.ma99us.jab.dummy.DummyDTO;
 import ca.ma99us.jab.headers.*;
 import ca.ma99us.jab.headers.groups.*;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 
 
 public class JabParserHeadersTest {
@@ -35,6 +57,75 @@ public class JabParserHeadersTest {
         header.setSigner(new JabSigner().setSecretKey("SecretSignerKey", "SomeSalt"));
 
         barcodeTest(header, SignatureHeader.class, dto, DummyDTO.class, true);
+
+        // Mac is reused between calls, until the key changes
+        JabSigner signer = new JabSigner().setSecretKey("SecretSignerKey", "SomeSalt");
+        byte[] data = "some data".getBytes(StandardCharsets.UTF_8);
+        byte[] sign = signer.sign(data);
+        Assert.assertArrayEquals(sign, signer.sign(data));
+        Assert.assertTrue(signer.verify(data, sign));
+        Assert.assertFalse(signer.verify("other data".getBytes(StandardCharsets.UTF_8), sign));
+        Assert.assertTrue(signer.verify(data, sign));
+        signer.setRandomKey();
+        Assert.assertFalse(signer.verify(data, sign));
+        Assert.assertTrue(signer.verify(data, signer.sign(data)));
+    }
+
+    @Test
+    public void verifiedSignatureCacheTest() throws Exception {
+        JabParser jabParser = new JabParser();
+        DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
+        SignatureHeader<DummyDTO> header = new SignatureHeader<DummyDTO>().setSigner(new JabSigner().setRandomKey());
+        String barcode = jabParser.objectToJab(header, dto);
+        String tampered = barcode.replace("Some Name", "Some Other Name");
+
+        JabCache<SignatureHeader.Verified, Boolean> cache = new JabCache<SignatureHeader.Verified, Boolean>(100, 1, TimeUnit.MINUTES);
+        SignatureHeader.setVerifiedCache(cache);
+        try {
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(dto, jabParser.jabToObject(barcode, SignatureHeader.class, DummyDTO.class));
+                try {
+                    jabParser.jabToObject(tampered, SignatureHeader.class, DummyDTO.class);
+                    Assert.fail();
+                } catch (IOException e) {
+                    // expected, every time
+                }
+            }
+            Assert.assertEquals(2, cache.getHits());
+            Assert.assertEquals(1, cache.size());   // failures are not cached
+
+            SignatureHeader.setCacheFailures(true);
+            for (int i = 0; i < 2; i++) {
+                try {
+                    jabParser.jabToObject(tampered, SignatureHeader.class, DummyDTO.class);
+                    Assert.fail();
+                } catch (IOException e) {
+                    // expected, every time
+                }
+            }
+            Assert.assertEquals(3, cache.getHits());
+        } finally {
+            SignatureHeader.setVerifiedCache(null);
+            SignatureHeader.setCacheFailures(false);
+        }
+
+        // scan resistance; one-off keys do not push out the ones used more than once
+        JabCache<Integer, String> slru = new JabCache<Integer, String>(10, 0, TimeUnit.SECONDS);
+        slru.put(-1, "hot");
+        slru.get(-1);
+        for (int i = 0; i < 100; i++) {
+            slru.put(i, "cold");
+        }
+        Assert.assertEquals("hot", slru.get(-1));
+        Assert.assertTrue(slru.size() <= 10);
+        Assert.assertEquals(98, slru.getEvictions());   // cold ones only got the probation segment
+
+        // expiration
+        JabCache<Integer, String> ttl = new JabCache<Integer, String>(10, 1, TimeUnit.MILLISECONDS);
+        ttl.put(1, "one");
+        Thread.sleep(5);
+        Assert.assertNull(ttl.get(1));
+        Assert.assertEquals(1, ttl.getExpirations());
     }
 
     @Test
@@ -85,6 +176,234 @@ public class JabParserHeadersTest {
         CompressHeaderGroup<DummyDTO> header = new CompressHeaderGroup<DummyDTO>();
 
         barcodeTest(header, CompressHeaderGroup.class, dto, DummyDTO.class, true);
+
+        // compression settings only matter for encoding, the decoder uses a new default header
+        CompressHeaderGroup<DummyDTO> header1 = new CompressHeaderGroup<DummyDTO>();
+        header1.getCompressHeader().setLevel(Deflater.BEST_SPEED);
+        header1.getCompressHeader().setStrategy(Deflater.FILTERED);
+        barcodeTest(header1, CompressHeaderGroup.class, dto, DummyDTO.class, true);
+    }
+
+    @Test
+    public void compressHeaderPoolTest() throws IOException {
+        JabZipPool original = JabZipPool.getGlobalPool();
+        JabZipPool pool = new JabZipPool(2);
+        JabZipPool.setGlobalPool(pool);
+        try {
+            DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
+            byte[] payload = JabParser.unwrap(new JabParser().objectValuesToJsonArrayString(dto)).getBytes(StandardCharsets.UTF_8);
+
+            CompressHeader<DummyDTO> header = new CompressHeader<DummyDTO>();
+            RawCompressHeader<DummyDTO> raw = new RawCompressHeader<DummyDTO>();
+            CompressHeader<DummyDTO> fast = new CompressHeader<DummyDTO>();
+            fast.setLevel(Deflater.BEST_SPEED);
+            fast.setStrategy(Deflater.FILTERED);
+            for (int i = 0; i < 1000; i++) {
+                byte[] zipped = header.obfuscate(payload);
+                byte[] rawZipped = raw.obfuscate(payload);
+                Assert.assertEquals(zipped.length - 6, rawZipped.length);    // no zlib header and adler-32
+                Assert.assertArrayEquals(payload, header.deobfuscate(zipped));
+                Assert.assertArrayEquals(payload, raw.deobfuscate(rawZipped));
+                Assert.assertArrayEquals(payload, header.deobfuscate(fast.obfuscate(payload)));
+                try (InputStream is = raw.deobfuscating(new ByteArrayInputStream(rawZipped))) {
+                    Assert.assertArrayEquals(payload, JabHeaderStreams.readAll(is));
+                }
+            }
+            // one instance per settings, reused ever since
+            Assert.assertEquals(5, pool.getCreated());
+            Assert.assertEquals(5, pool.getIdle());
+            Assert.assertEquals(0, pool.getEnded());
+
+            // truncated
+            try {
+                header.deobfuscate(Arrays.copyOf(header.obfuscate(payload), 20));
+                Assert.fail("Truncated bytes were uncompressed");
+            } catch (IOException ex) {
+                // expected
+            }
+            Assert.assertEquals(5, pool.getIdle());
+
+            // empty raw stream needs a dummy byte to finish
+            Assert.assertEquals(0, raw.deobfuscate(raw.obfuscate(new byte[0])).length);
+            try (InputStream is = raw.deobfuscating(new ByteArrayInputStream(raw.obfuscate(new byte[0])))) {
+                Assert.assertEquals(0, JabHeaderStreams.readAll(is).length);
+            }
+
+            pool.clear();
+            Assert.assertEquals(0, pool.getIdle());
+        } finally {
+            JabZipPool.setGlobalPool(original);
+        }
+    }
+
+    @Test
+    public void codecCompressHeaderTest() throws IOException {
+        DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
+        CodecCompressHeaderGroup<DummyDTO> header = new CodecCompressHeaderGroup<DummyDTO>();
+        barcodeTest(header, CodecCompressHeaderGroup.class, dto, DummyDTO.class, true);
+        header.getCompressHeader().setCodec(new DeflateCodec(Deflater.BEST_COMPRESSION));
+        barcodeTest(header, CodecCompressHeaderGroup.class, dto, DummyDTO.class, true);
+
+        // unknown codec
+        JabCodec custom = new JabCodec() {
+            @Override
+            public int getId() {
+                return 1000;
+            }
+
+            @Override
+            public byte[] compress(byte[] data) {
+                return data.clone();
+            }
+
+            @Override
+            public byte[] decompress(byte[] data) {
+                return data.clone();
+            }
+        };
+        header.getCompressHeader().setCodec(custom);
+        JabParser parser = new JabParser();
+        String barcode = parser.objectToJab(header, dto);
+        Assert.assertEquals(dto, parser.jabToObject(barcode, CodecCompressHeaderGroup.class, DummyDTO.class));
+        CodecCompressHeader.getCodecs().unregister(custom);
+        try {
+            parser.jabToObject(barcode, CodecCompressHeaderGroup.class, DummyDTO.class);
+            Assert.fail("Uncompressed with unknown codec");
+        } catch (IOException ex) {
+            Assert.assertTrue(ex.getMessage().contains("codec id"));
+        }
+
+        // id collision
+        try {
+            CodecCompressHeader.getCodecs().register(new JabCodec() {
+                @Override
+                public int getId() {
+                    return Lz4Codec.ID;
+                }
+
+                @Override
+                public byte[] compress(byte[] data) {
+                    return data;
+                }
+
+                @Override
+                public byte[] decompress(byte[] data) {
+                    return data;
+                }
+            });
+            Assert.fail("Codec id collision was not detected");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+
+        // broken and colliding discovered codecs are skipped
+        Path dir = Files.createTempDirectory("jab-codecs");
+        Path services = dir.resolve("META-INF/services/" + JabCodec.class.getName());
+        Files.createDirectories(services.getParent());
+        Files.write(services, Arrays.asList(CollidingCodec.class.getName(), "ca.ma99us.jab.NoSuchCodec",
+                PluginCodec.class.getName()), StandardCharsets.UTF_8);
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{dir.toUri().toURL()}, getClass().getClassLoader())) {
+            CodecCompressHeader.Codecs codecs = new CodecCompressHeader.Codecs(loader);
+            Assert.assertEquals(2, codecs.getLoadErrors().size());
+            Assert.assertTrue(codecs.find(Lz4Codec.ID) instanceof Lz4Codec);
+            Assert.assertTrue(codecs.find(PluginCodec.ID) instanceof PluginCodec);
+        } finally {
+            Files.delete(services);
+            Files.delete(services.getParent());
+            Files.delete(services.getParent().getParent());
+            Files.delete(dir);
+        }
+    }
+
+    public static class CollidingCodec extends DeflateCodec {
+        @Override
+        public int getId() {
+            return Lz4Codec.ID;
+        }
+    }
+
+    public static class PluginCodec extends DeflateCodec {
+        static final int ID = 1001;
+
+        @Override
+        public int getId() {
+            return ID;
+        }
+    }
+
+    @Test
+    public void codecFuzzTest() throws IOException {
+        Random random = new Random(42);
+        JabCodec[] codecs = new JabCodec[]{new Lz4Codec(), new DeflateCodec()};
+        for (int i = 0; i < 2000; i++) {
+            // random mix of runs, repeats and noise
+            int len = i < 100 ? i : random.nextInt(i % 10 == 0 ? 200000 : 2000);
+            byte[] data = new byte[len];
+            for (int p = 0; p < len; ) {
+                int run = 1 + random.nextInt(40);
+                int kind = random.nextInt(3);
+                for (int r = 0; r < run && p < len; r++, p++) {
+                    data[p] = kind == 0 ? (byte) random.nextInt(256) : kind == 1 ? (byte) 'a' : p >= 64 ? data[p - 64] : (byte) p;
+                }
+            }
+            for (JabCodec codec : codecs) {
+                byte[] compressed = codec.compress(data);
+                Assert.assertArrayEquals(data, codec.decompress(compressed));
+
+                // corrupted input fails cleanly, or decompresses to something
+                byte[] corrupted = compressed.clone();
+                if (corrupted.length > 0) {
+                    for (int c = 0; c < 1 + random.nextInt(4); c++) {
+                        corrupted[random.nextInt(corrupted.length)] = (byte) random.nextInt(256);
+                    }
+                }
+                byte[] truncated = Arrays.copyOf(compressed, random.nextInt(compressed.length + 1));
+                for (byte[] bad : new byte[][]{corrupted, truncated}) {
+                    try {
+                        codec.decompress(bad);
+                    } catch (IOException ex) {
+                        // expected
+                    }
+                }
+            }
+        }
+
+        // repetitive payloads compress with lz4 too
+        byte[] payload = JabParser.unwrap(new JabParser().objectValuesToJsonArrayString(DummyDTO.makeDummyDTO(true, true))).getBytes(StandardCharsets.UTF_8);
+        Assert.assertTrue(new Lz4Codec().compress(payload).length < payload.length);
+    }
+
+    @Test
+    public void dictionaryCompressHeaderTest() throws IOException {
+        JabParser parser = new JabParser();
+        List<byte[]> samples = new ArrayList<byte[]>();
+        for (int i = 0; i < 100; i++) {
+            DummyDTO sample = DummyDTO.makeDummyDTO(i % 2 == 0, i % 3 != 0);
+            sample.setName("Name #" + i);
+            samples.add(JabParser.unwrap(parser.objectValuesToJsonArrayString(sample)).getBytes(StandardCharsets.UTF_8));
+        }
+        JabDictionary dictionary = JabDictionary.train(samples, 1024);
+        Assert.assertTrue(dictionary.getBytes().length <= 1024);
+        Assert.assertEquals(dictionary.getId(), new JabDictionary(dictionary.getBytes()).getId());
+
+        DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
+        DictionaryCompressHeaderGroup<DummyDTO> header = new DictionaryCompressHeaderGroup<DummyDTO>();
+        header.getCompressHeader().setDictionary(dictionary);
+        barcodeTest(header, DictionaryCompressHeaderGroup.class, dto, DummyDTO.class, true);
+
+        String barcode = parser.objectToJab(header, dto);
+        String plain = parser.objectToJab(new CompressHeaderGroup<DummyDTO>(), dto);
+        System.out.println("dictionary: " + barcode.length() + " chars, plain: " + plain.length() + " chars");
+        Assert.assertTrue(barcode.length() < plain.length() * 2 / 3);
+
+        // unknown dictionary
+        DictionaryCompressHeader.getDictionaries().unregister(dictionary);
+        try {
+            parser.jabToObject(barcode, DictionaryCompressHeaderGroup.class, DummyDTO.class);
+            Assert.fail("Decompressed without the dictionary");
+        } catch (IOException ex) {
+            Assert.assertTrue(ex.getMessage().contains("dictionary id"));
+        }
     }
 
     @Test
@@ -100,6 +419,45 @@ public class JabParserHeadersTest {
         barcodeTest(header1, CompressCborHeaderGroup.class, dto, DummyDTO.class, true);
     }
 
+    @Test
+    public void cborArrayHeaderTest() throws IOException {
+        // standard CBOR: definite length arrays, shortest integers and floats
+        CborArrayHeader<DummyDTO> cbor = new CborArrayHeader<DummyDTO>();
+        String json = "1,\"a\",true,null,[2,-500],1.5,100000.5,0.1";
+        byte[] bytes = cbor.obfuscate(json.getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals("88016161f5f682023901f3f93e00fa47c35040fb3fb999999999999a", hex(bytes));
+        Assert.assertEquals(json, new String(cbor.deobfuscate(bytes), StandardCharsets.UTF_8));
+
+        // indefinite length arrays and half floats are read too
+        Assert.assertEquals("1,[1.5]", new String(cbor.deobfuscate(new byte[]{(byte) 0x9f, 0x01, (byte) 0x81, (byte) 0xf9, 0x3e, 0x00, (byte) 0xff}),
+                StandardCharsets.UTF_8));
+
+        // values written as CBOR directly are the same as the converted json text
+        JabParser parser = new JabParser();
+        DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
+        CborHeaderGroup<DummyDTO> header = new CborHeaderGroup<DummyDTO>();
+        String barcode = parser.objectToJab(header, dto);
+        String payloadJson = JabParser.unwrap(parser.objectValuesToJsonArrayString(dto));
+        byte[] payload = header.obfuscate(payloadJson.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(barcode.endsWith(parser.objectValuesToJsonArrayString(header) + "[" + new String(payload, StandardCharsets.UTF_8) + "]"));
+        Assert.assertEquals(payloadJson, new String(header.deobfuscate(payload), StandardCharsets.UTF_8));
+        Assert.assertEquals(dto, parser.jabToObject(barcode, CborHeaderGroup.class, DummyDTO.class));
+
+        // regression pin generated by this encoder, not by CborTree
+        Assert.assertEquals(CBOR_DUMMY_BARCODE, barcode);
+        Assert.assertEquals(dto, parser.jabToObject(CBOR_DUMMY_BARCODE, CborHeaderGroup.class, DummyDTO.class));
+    }
+
+    private static final String CBOR_DUMMY_BARCODE = "JAB|1035957506354221|[[4533261258208646]][jBoAAeJAhAUGBwBsVTI5dFpVSjVkR1Z69oIYRWhJdGVtICM2OYKCAGdJdGVtICMwggFnSXRlbSAjMYOCAmdJdGVtICMyggNnSXRlbSAjM4IEZ0l0ZW0gIzSjYjcjomZpdGVtSWQHaGl0ZW1OYW1lZ0l0ZW0gIzdiNiOiZml0ZW1JZAZoaXRlbU5hbWVnSXRlbSAjNmI1I6JmaXRlbUlkBWhpdGVtTmFtZWdJdGVtICM1aVNvbWUgTmFtZYQAAQIDgwkIB6NiIzQEYiM1BWIjNgY=]";
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
     @Test
     public void bsonHeaderTest() {
         DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
@@ -121,6 +479,54 @@ public class JabParserHeadersTest {
         barcodeTest(header, MessagePackHeaderGroup.class, dto, DummyDTO.class, true);
     }
 
+    @Test
+    public void streamingHeadersTest() throws IOException {
+        // streaming null-shrinking is the same as the original regex one
+        NoNullsHeader<DummyDTO> noNulls = new NoNullsHeader<DummyDTO>();
+        String[] samples = {"", "null", "null,null", "[null],null,[1,null]", "nul", "nully", "[],[null,[null]]",
+                ",,", "\"null\",null", "1,nulln,null,", "[[null,null],null]"};
+        for (String sample : samples) {
+            String shrunk = new String(noNulls.obfuscate(sample.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+            Assert.assertEquals(sample, regexReplace(sample, "([\\[,])(null)([,\\]])", "$1$3"), shrunk);
+            String inflated = new String(noNulls.deobfuscate(shrunk.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+            Assert.assertEquals(sample, regexReplace(shrunk, "([\\[,])([,\\]])", "$1null$2"), inflated);
+        }
+
+        // chained header streams produce exactly the same barcodes as byte arrays passed from header to header
+        JabParser jabParser = new JabParser();
+        DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
+        CryptoHeaderGroup<DummyDTO> header = new CryptoHeaderGroup<DummyDTO>();
+        header.getCryptoHeader().setCrypto(new JabCrypto().setSecretKey("SomeSuperSecretKey", "SomeSalt"));
+        NoNullsCompressCryptoHeaderGroup<DummyDTO> header1 = new NoNullsCompressCryptoHeaderGroup<DummyDTO>();
+        header1.getCryptoHeader().setCrypto(new JabCrypto().setRandomKey());
+        for (AbstractHeaderGroup<DummyDTO> hdr : Arrays.asList(header, header1, new CompressHeaderGroup<DummyDTO>())) {
+            String barcode = jabParser.objectToJab(hdr, dto);
+            byte[] payloadBytes = JabParser.unwrap(jabParser.objectValuesToJsonArrayString(dto)).getBytes(StandardCharsets.UTF_8);
+            byte[] obfuscated = hdr.obfuscate(payloadBytes);
+            Assert.assertTrue(barcode.endsWith(JabParser.wrap(new String(obfuscated, StandardCharsets.UTF_8))));
+
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            try (OutputStream hos = hdr.obfuscating(os)) {
+                hos.write(payloadBytes);
+            }
+            Assert.assertArrayEquals(obfuscated, os.toByteArray());
+            Assert.assertArrayEquals(payloadBytes, JabHeaderStreams.readAll(hdr.deobfuscating(new ByteArrayInputStream(obfuscated))));
+            Assert.assertArrayEquals(barcode.getBytes(StandardCharsets.UTF_8), jabParser.objectToJabBytes(hdr, dto));
+        }
+    }
+
+    private static String regexReplace(String str, String pattern, String replacement) {
+        // the original byte arrays NoNullsHeader algorithm
+        str = JabParser.wrap(str);
+        Pattern regex = Pattern.compile(pattern);
+        Matcher matcher = regex.matcher(str);
+        while (matcher.find()) {
+            str = matcher.replaceAll(replacement);
+            matcher = regex.matcher(str);
+        }
+        return JabParser.unwrap(str);
+    }
+
     @Test
     public void cryptoKeysFromStringSecretTest() {
         DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
@@ -262,6 +668,288 @@ public class JabParserHeadersTest {
         Assert.assertEquals(dto, res);
     }
 
+    @Test
+    public void cryptoCipherReuseTest() throws IOException {
+        byte[] data = "some payload bytes, more than a single cipher block".getBytes(StandardCharsets.UTF_8);
+        JabCrypto crypto = new JabCrypto().setRandomKey();
+        byte[] encrypted = crypto.encrypt(data);
+        Assert.assertArrayEquals(encrypted, crypto.encrypt(data));
+        Assert.assertArrayEquals(data, crypto.decrypt(encrypted));
+
+        // failed decryption leaves the cipher in unknown state
+        try {
+            crypto.decrypt(Arrays.copyOf(encrypted, encrypted.length - 1));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        Assert.assertArrayEquals(data, crypto.decrypt(encrypted));
+
+        // abandoned and nested streams
+        OutputStream abandoned = crypto.encrypting(new ByteArrayOutputStream());
+        abandoned.write(data, 0, 10);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (OutputStream eos = crypto.encrypting(os)) {
+            eos.write(data, 0, 20);
+            Assert.assertArrayEquals(encrypted, crypto.encrypt(data));
+            eos.write(data, 20, data.length - 20);
+        }
+        Assert.assertArrayEquals(encrypted, os.toByteArray());
+        Assert.assertArrayEquals(data, JabHeaderStreams.readAll(crypto.decrypting(new ByteArrayInputStream(encrypted))));
+
+        // new key
+        byte[] oldKey = crypto.getPrivateKeyBytes();
+        crypto.setRandomKey();
+        Assert.assertFalse(Arrays.equals(encrypted, crypto.encrypt(data)));
+        Assert.assertArrayEquals(data, crypto.decrypt(crypto.encrypt(data)));
+        Assert.assertArrayEquals(data, crypto.setPrivateKeyBytes(oldKey).decrypt(encrypted));
+
+        // asymmetric keys; encrypted with public key, decrypted with private one
+        JabAsyncCrypto asyncCrypto = new JabAsyncCrypto().setRandomKey();
+        byte[] asyncEncrypted = asyncCrypto.encrypt(data);
+        Assert.assertArrayEquals(data, asyncCrypto.decrypt(asyncEncrypted));
+        Assert.assertArrayEquals(data, asyncCrypto.decrypt(asyncCrypto.encrypt(data)));
+    }
+
+    @Test
+    public void aeadCryptoHeaderTest() throws IOException {
+        DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
+        AeadCryptoHeaderGroup<DummyDTO> header = new AeadCryptoHeaderGroup<DummyDTO>();
+        header.getCryptoHeader().setCrypto(JabAeadCrypto.preferred().setRandomKey());
+
+        barcodeTest(header, AeadCryptoHeaderGroup.class, dto, DummyDTO.class, true);
+
+        // new nonce every time, and any tampering fails the tag check
+        JabParser jabParser = new JabParser();
+        String barcode = jabParser.objectToJab(header, dto);
+        Assert.assertNotEquals(barcode, jabParser.objectToJab(header, dto));
+        int idx = barcode.length() - 10;
+        String tampered = barcode.substring(0, idx) + (barcode.charAt(idx) == 'A' ? 'B' : 'A') + barcode.substring(idx + 1);
+        try {
+            jabParser.jabToObject(tampered, AeadCryptoHeaderGroup.class, DummyDTO.class);
+            Assert.fail();
+        } catch (IOException e) {
+            System.out.println("Expected exception: " + e.getMessage());
+        }
+        CryptoHeaderGroup<DummyDTO> cbcHeader = new CryptoHeaderGroup<DummyDTO>();
+        cbcHeader.getCryptoHeader().setCrypto(new JabCrypto().setRandomKey());
+        System.out.println("AEAD barcode: " + barcode.length() + " chars, CBC + checksum barcode: "
+                + jabParser.objectToJab(cbcHeader, dto).length() + " chars");
+
+        // a nonce is never used twice
+        AeadCryptoHeader<DummyDTO> single = new AeadCryptoHeader<DummyDTO>().setCrypto(new JabAeadCrypto().setRandomKey());
+        single.populate(dto);
+        single.obfuscate(new byte[10]);
+        try {
+            single.obfuscate(new byte[10]);
+            Assert.fail();
+        } catch (IOException e) {
+            System.out.println("Expected exception: " + e.getMessage());
+        }
+
+        // self-contained messages carry their nonce
+        JabAeadCrypto crypto = new JabAeadCrypto().setSecretKey("SomeSuperSecretKey", "SomeSalt");
+        byte[] data = "some payload bytes, more than a single cipher block".getBytes(StandardCharsets.UTF_8);
+        byte[] encrypted = crypto.encrypt(data);
+        Assert.assertEquals(12 + data.length + 16, encrypted.length);
+        Assert.assertArrayEquals(data, crypto.decrypt(encrypted));
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (OutputStream eos = crypto.encrypting(os)) {
+            eos.write(data);
+        }
+        Assert.assertArrayEquals(data, JabHeaderStreams.readAll(crypto.decrypting(new ByteArrayInputStream(os.toByteArray()))));
+        encrypted[encrypted.length - 1] ^= 1;
+        try {
+            crypto.decrypt(encrypted);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            System.out.println("Expected exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void hybridCryptoTest() throws IOException {
+        JabParser jabParser = new JabParser();
+        JabHybridCrypto encrypt = new JabHybridCrypto().setRandomKey();
+        CryptoHeaderGroup<DummyDTO> header = new CryptoHeaderGroup<DummyDTO>();
+        header.getCryptoHeader().setCrypto(encrypt);
+        List<String> barcodes = new ArrayList<String>();
+        for (int i = 0; i < 5; i++) {
+            DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
+            dto.setName("Name #" + i);
+            barcodes.add(jabParser.objectToJab(header, dto));
+        }
+
+        // decrypt with the private key only; one data key unwrap for the whole batch
+        CryptoHeader.getDecryptors().unregister(encrypt);
+        JabHybridCrypto decrypt = new JabHybridCrypto().setPrivateKeyBytes(encrypt.getPrivateKeyBytes());
+        CryptoHeader.getDecryptors().register(decrypt);
+        for (int i = 0; i < barcodes.size(); i++) {
+            DummyDTO res = jabParser.jabToObject(barcodes.get(i), CryptoHeaderGroup.class, DummyDTO.class);
+            Assert.assertEquals("Name #" + i, res.getName());
+        }
+        Assert.assertEquals(1, decrypt.getUnwraps());
+        CryptoHeader.getDecryptors().unregister(decrypt);
+
+        // payloads larger than the asymmetric key, new data key after the configured number of uses
+        byte[] data = new byte[4096];
+        Arrays.fill(data, (byte) 'x');
+        encrypt.setDataKeyUses(2);
+        byte[] encrypted = encrypt.encrypt(data);
+        Assert.assertArrayEquals(data, decrypt.decrypt(encrypted));
+        Assert.assertArrayEquals(data, JabHeaderStreams.readAll(decrypt.decrypting(new ByteArrayInputStream(encrypt.encrypt(data)))));
+        Assert.assertEquals(2, decrypt.getUnwraps());
+        decrypt.decrypt(encrypt.encrypt(data));
+        Assert.assertEquals(3, decrypt.getUnwraps());
+        encrypted[encrypted.length - 1] ^= 1;
+        try {
+            decrypt.decrypt(encrypted);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            System.out.println("Expected exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void keyPairPoolTest() throws Exception {
+        final JabKeyPairPool pool = new JabKeyPairPool(4, 1, 1);
+        AbstractSecret.CryptoConfig config = new AbstractSecret.CryptoConfig() {
+            @Override
+            public JabKeyPairPool getKeyPairPool() {
+                return pool;
+            }
+        };
+        AbstractSecret.setCryptoConfig(config);
+        try {
+            pool.warmUp("RSA", null, 1024, config.getNonBlockingSecureRandom());
+            for (int i = 0; i < 200 && pool.getDepth("RSA", null, 1024) < pool.getCapacity(); i++) {
+                Thread.sleep(50);
+            }
+            Assert.assertEquals(pool.getCapacity(), pool.getDepth());
+
+            // every pair is handed out once
+            byte[] data = "some data".getBytes(StandardCharsets.UTF_8);
+            JabAsyncCrypto crypto1 = new JabAsyncCrypto("RSA", "RSA/ECB/PKCS1Padding", 128, 0).setRandomKey();
+            JabAsyncCrypto crypto2 = new JabAsyncCrypto("RSA", "RSA/ECB/PKCS1Padding", 128, 0).setRandomKey();
+            Assert.assertNotEquals(crypto1.getKeyId(), crypto2.getKeyId());
+            Assert.assertArrayEquals(data, crypto2.decrypt(crypto2.encrypt(data)));
+            Assert.assertEquals(2, pool.getHits());
+            Assert.assertEquals(0, pool.getMisses());
+
+            // other key types are generated on demand first
+            JabAsyncSigner signer = new JabAsyncSigner("EC", "SHA256withECDSA", 32).setRandomKey();
+            Assert.assertTrue(signer.verify(data, signer.sign(data)));
+            Assert.assertEquals(1, pool.getMisses());
+
+            // broken key type fails once in background, and is not refilled again
+            pool.warmUp("NoSuchAlgorithm", null, 1024, config.getNonBlockingSecureRandom());
+            for (int i = 0; i < 200 && pool.getFailures() == 0; i++) {
+                Thread.sleep(50);
+            }
+            Assert.assertEquals(1, pool.getFailures());
+            try {
+                pool.take("NoSuchAlgorithm", null, 1024, config.getNonBlockingSecureRandom());
+                Assert.fail();
+            } catch (Exception ex) {
+                // expected
+            }
+            Thread.sleep(100);
+            Assert.assertEquals(1, pool.getFailures());
+        } finally {
+            pool.shutdown();
+            AbstractSecret.setCryptoConfig(new AbstractSecret.CryptoConfig());
+        }
+    }
+
+    @Test
+    public void keyBundleTest() throws IOException {
+        DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
+        JabParser jabParser = new JabParser();
+
+        // derive keys in parallel, and export them
+        JabCrypto crypto = new JabCrypto();
+        JabSigner signer = new JabSigner();
+        JabKeyBundle.derive(Arrays.asList(new JabKeyBundle.Derivation(crypto, "bundledCryptoKey", "SomeSalt"),
+                new JabKeyBundle.Derivation(signer, "bundledSignerKey", "SomeSalt")), null);
+        Assert.assertEquals(new JabCrypto().setSecretKey("bundledCryptoKey", "SomeSalt").getKeyId(), crypto.getKeyId());
+
+        // derivations called from the executor own worker
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        final JabCrypto nested = new JabCrypto();
+        try {
+            pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    JabKeyBundle.derive(Arrays.asList(new JabKeyBundle.Derivation(nested, "bundledCryptoKey", "SomeSalt"),
+                            new JabKeyBundle.Derivation(new JabSigner(), "bundledSignerKey", "SomeSalt")), pool);
+                }
+            }).get(20, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            e.printStackTrace();
+            Assert.fail();
+        } finally {
+            pool.shutdown();
+        }
+        Assert.assertEquals(crypto.getKeyId(), nested.getKeyId());
+        JabAsyncSigner asyncSigner = new JabAsyncSigner("EC", "SHA256withECDSA", 32).setRandomKey();
+        JabHybridCrypto hybrid = new JabHybridCrypto("RSA", "RSA/ECB/OAEPWithSHA-256AndMGF1Padding", 256, "AES",
+                JabAeadCrypto.AES_GCM, 32).setRandomKey();
+        JabKeyBundle bundle = new JabKeyBundle().add(crypto).add(signer).add(asyncSigner).add(hybrid);
+
+        CryptoHeaderGroup<DummyDTO> header = new CryptoHeaderGroup<DummyDTO>();
+        header.getCryptoHeader().setCrypto(crypto);
+        String barcode = jabParser.objectToJab(header, dto);
+        String signed = jabParser.objectToJab(new SignatureHeader<DummyDTO>().setSigner(asyncSigner), dto);
+        header.getCryptoHeader().setCrypto(hybrid);
+        String hybridBarcode = jabParser.objectToJab(header, dto);
+        CryptoHeader.getDecryptors().unregister(hybrid);
+        CryptoHeader.getDecryptors().unregister(crypto);
+        SignatureHeader.getVerifiers().unregister(asyncSigner);
+
+        // import, both read and mapped
+        Path file = Files.createTempFile("jab", ".keys");
+        try {
+            bundle.write(file);
+            Assert.assertEquals(4, JabKeyBundle.read(file, false).secrets().size());
+            List<AbstractSecret<?>> secrets = JabKeyBundle.read(file, true).register();
+            Assert.assertEquals(signer.getKeyId(), secrets.get(1).getKeyId());
+            Assert.assertEquals(asyncSigner.getKeyId(), secrets.get(2).getKeyId());
+            Assert.assertEquals(32, ((JabHybridCrypto) secrets.get(3)).dataKeyLen);
+        } finally {
+            Files.delete(file);
+        }
+        Assert.assertEquals(dto, jabParser.jabToObject(barcode, CryptoHeaderGroup.class, DummyDTO.class));
+        Assert.assertEquals(dto, jabParser.jabToObject(signed, SignatureHeader.class, DummyDTO.class));
+        Assert.assertEquals(dto, jabParser.jabToObject(hybridBarcode, CryptoHeaderGroup.class, DummyDTO.class));
+        CryptoHeader.getDecryptors().unregister(crypto);
+        CryptoHeader.getDecryptors().unregister(hybrid);
+        SignatureHeader.getVerifiers().unregister(signer);
+        SignatureHeader.getVerifiers().unregister(asyncSigner);
+
+        // tampered key id
+        JabKeyBundle.Entry entry = bundle.getEntries().get(0);
+        JabKeyBundle.Entry bad = new JabKeyBundle.Entry(entry.getType(), entry.getKeyAlgorithm(), entry.getMode(),
+                entry.getKeyLen(), entry.getIvLen(), entry.getDataKeyAlgorithm(), entry.getDataMode(), entry.getDataKeyLen(),
+                entry.getPrivateKey(), entry.getPublicKey(), entry.getKeyId() + 1);
+        try {
+            bad.toSecret();
+            Assert.fail();
+        } catch (IOException e) {
+            System.out.println("Expected exception: " + e.getMessage());
+        }
+
+        // not a secret type
+        bad = new JabKeyBundle.Entry(StringBuilder.class.getName(), entry.getKeyAlgorithm(), entry.getMode(),
+                entry.getKeyLen(), entry.getIvLen(), null, null, 0, entry.getPrivateKey(), entry.getPublicKey(), entry.getKeyId());
+        try {
+            bad.toSecret();
+            Assert.fail();
+        } catch (IOException e) {
+            System.out.println("Expected exception: " + e.getMessage());
+            Assert.assertNull(e.getCause());
+        }
+    }
+
     private <H extends JabHeader<P>, P> P barcodeTest(H header, Class<H> hClass, P dto, Class<P> pClass, boolean withValidation) {
         JabParser jabParser = new JabParser();
 
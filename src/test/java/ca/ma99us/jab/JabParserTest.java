@@ -4,11 +4,26 @@ import ca.ma99us.jab.dummy.DummyDTO;
 import ca.ma99us.jab.headers.ChecksumHeader;
 import ca.ma99us.jab.headers.JabHeader;
 import ca.ma99us.jab.headers.NoNullsCompressCryptoHeaderGroup;
+import ca.ma99us.jab.headers.NoteHeader;
+import ca.ma99us.jab.headers.groups.CompressHeaderGroup;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 
 public class JabParserTest {
@@ -59,6 +74,281 @@ public class JabParserTest {
         Assert.assertEquals(checksumBarcodeFormatId, jabParser.findJabFormatId(csBarcode));
     }
 
+    @Test
+    public void envelopeTest() throws IOException {
+        JabEnvelope env = JabEnvelope.scan("JAB|123|[\"a][b\\\"][\",[1]][2,\"]\"]");
+        Assert.assertNotNull(env);
+        Assert.assertEquals(123L, env.getFormatId());
+        Assert.assertTrue(env.hasHeader());
+        Assert.assertEquals(8, env.getHeaderStart());
+        Assert.assertEquals(24, env.getHeaderEnd());
+        Assert.assertEquals(24, env.getPayloadStart());
+        Assert.assertEquals(31, env.getPayloadEnd());
+
+        env = JabEnvelope.scan("JAB|9007199254740991|[1,2]".getBytes(StandardCharsets.UTF_8));
+        Assert.assertNotNull(env);
+        Assert.assertEquals(9007199254740991L, env.getFormatId());
+        Assert.assertFalse(env.hasHeader());
+        Assert.assertEquals(21, env.getPayloadStart());
+
+        String[] bad = {"", "JAB", "JAB|", "JAB||[]", "JAB|12a|[]", "JAB|12|", "JAB|12|[1", "JAB|12|[1]x]",
+                "JAB|12|[\"]", "JAB|99999999999999999999|[]", "jab|12|[]"};
+        for (String barcode : bad) {
+            Assert.assertNull(barcode, JabEnvelope.scan(barcode));
+        }
+
+        // header strings might contain anything
+        DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
+        NoteHeader<DummyDTO> header = new NoteHeader<DummyDTO>();
+        header.setNote("][\"][JAB|1|[");
+        JabParser jabParser = new JabParser();
+        String barcode = jabParser.objectToJab(header, dto);
+        Assert.assertTrue(jabParser.isPossibleJab(barcode));
+        Assert.assertEquals(dto, jabParser.jabToObject(barcode, NoteHeader.class, DummyDTO.class));
+    }
+
+    @Test
+    public void batchTest() throws IOException {
+        final JabCrypto crypto = new JabCrypto().setRandomKey();
+        List<DummyDTO> dtos = new ArrayList<DummyDTO>();
+        for (int i = 0; i < 50; i++) {
+            DummyDTO dto = DummyDTO.makeDummyDTO(i % 2 == 0, i % 3 == 0);
+            dto.setName("Name #" + i);
+            dtos.add(dto);
+        }
+        dtos.add(10, null);    // this one should fail
+
+        JabParser jabParser = new JabParser();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        jabParser.setBatchExecutor(pool);
+        try {
+            List<JabParser.BatchResult<String>> barcodes = jabParser.objectsToJab(new Supplier<NoNullsCompressCryptoHeaderGroup<DummyDTO>>() {
+                @Override
+                public NoNullsCompressCryptoHeaderGroup<DummyDTO> get() {
+                    NoNullsCompressCryptoHeaderGroup<DummyDTO> header = new NoNullsCompressCryptoHeaderGroup<DummyDTO>();
+                    header.getCryptoHeader().setCrypto(crypto);
+                    return header;
+                }
+            }, dtos);
+            Assert.assertEquals(dtos.size(), barcodes.size());
+
+            List<String> strings = new ArrayList<String>();
+            for (int i = 0; i < barcodes.size(); i++) {
+                JabParser.BatchResult<String> barcode = barcodes.get(i);
+                Assert.assertEquals(i, barcode.getIndex());
+                Assert.assertEquals(i != 10, barcode.isSuccess());
+                strings.add(barcode.isSuccess() ? barcode.getValue() : "not a barcode");
+            }
+
+            // parse them back
+            List<JabParser.BatchResult<DummyDTO>> results = jabParser.jabToObjects(strings, NoNullsCompressCryptoHeaderGroup.class, DummyDTO.class);
+            Assert.assertEquals(dtos.size(), results.size());
+            for (int i = 0; i < results.size(); i++) {
+                JabParser.BatchResult<DummyDTO> res = results.get(i);
+                Assert.assertEquals(i, res.getIndex());
+                if (i == 10) {
+                    Assert.assertFalse(res.isSuccess());
+                    Assert.assertTrue(res.getError() instanceof IOException);
+                } else {
+                    Assert.assertTrue(res.isSuccess());
+                    Assert.assertEquals(dtos.get(i), res.getValue());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void nestedBatchTest() throws Exception {
+        final List<String> barcodes = new ArrayList<String>();
+        final JabParser jabParser = new JabParser();
+        for (int i = 0; i < 100; i++) {
+            barcodes.add(jabParser.objectToJab(null, DummyDTO.makeDummyDTO(true, i % 2 == 0)));
+        }
+
+        // batches called from the batch executor own workers
+        ForkJoinPool pool = new ForkJoinPool(2);
+        jabParser.setBatchExecutor(pool);
+        try {
+            List<Future<List<JabParser.BatchResult<DummyDTO>>>> futures = new ArrayList<Future<List<JabParser.BatchResult<DummyDTO>>>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(pool.submit(new Callable<List<JabParser.BatchResult<DummyDTO>>>() {
+                    @Override
+                    public List<JabParser.BatchResult<DummyDTO>> call() {
+                        return jabParser.jabToObjects(barcodes, null, DummyDTO.class);
+                    }
+                }));
+            }
+            for (Future<List<JabParser.BatchResult<DummyDTO>>> future : futures) {
+                List<JabParser.BatchResult<DummyDTO>> results = future.get(20, TimeUnit.SECONDS);
+                Assert.assertEquals(barcodes.size(), results.size());
+                for (JabParser.BatchResult<DummyDTO> res : results) {
+                    Assert.assertTrue(res.isSuccess());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void metricsTest() throws IOException {
+        JabMemoryMetrics metrics = new JabMemoryMetrics();
+        JabMetrics.setGlobalMetrics(metrics);
+        try {
+            JabParser jabParser = new JabParser();
+            NoNullsCompressCryptoHeaderGroup<DummyDTO> header = new NoNullsCompressCryptoHeaderGroup<DummyDTO>();
+            header.getCryptoHeader().setCrypto(new JabCrypto().setRandomKey());
+            String barcode = null;
+            for (int i = 0; i < 3; i++) {
+                DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
+                barcode = jabParser.objectToJab(header, dto);
+                Assert.assertEquals(dto, jabParser.jabToObject(barcode, NoNullsCompressCryptoHeaderGroup.class, DummyDTO.class));
+            }
+            long formatId = jabParser.findJabFormatId(barcode);
+
+            Assert.assertEquals(3, metrics.snapshot(formatId, JabMetrics.Stage.ENCODE, "DummyDTO").getCount());
+            Assert.assertEquals(3, metrics.snapshot(formatId, JabMetrics.Stage.DECODE, "DummyDTO").getCount());
+            Assert.assertEquals(3, metrics.snapshot(formatId, JabMetrics.Stage.POPULATE, "ChecksumHeader").getCount());
+            Assert.assertEquals(3, metrics.snapshot(formatId, JabMetrics.Stage.VALIDATE, "ChecksumHeader").getCount());
+            JabMemoryMetrics.StageSnapshot compress = metrics.snapshot(formatId, JabMetrics.Stage.OBFUSCATE, "CompressHeader");
+            Assert.assertEquals(3, compress.getCount());
+            Assert.assertTrue(compress.getBytesIn() > 0 && compress.getBytesOut() > 0);
+            JabMemoryMetrics.StageSnapshot toString = metrics.snapshot(formatId, JabMetrics.Stage.DEOBFUSCATE, "ToStringHeader");
+            Assert.assertTrue(toString.getBytesIn() > toString.getBytesOut());   // base64 is longer
+            Assert.assertTrue(toString.getPercentileNanos(99) > 0);
+
+            // failures
+            try {
+                String corrupted = barcode.substring(0, barcode.length() - 10) + "AAAAAAAAA]";
+                jabParser.jabToObject(corrupted, NoNullsCompressCryptoHeaderGroup.class, DummyDTO.class);
+                Assert.fail("Corrupted barcode was parsed");
+            } catch (IOException ex) {
+                // expected
+            }
+            long failures = 0;
+            for (JabMemoryMetrics.StageSnapshot s : metrics.snapshot()) {
+                failures += s.getFailures();
+            }
+            Assert.assertEquals(1, failures);
+            Assert.assertEquals(3, metrics.snapshot(formatId, JabMetrics.Stage.DECODE, "DummyDTO").getCount());
+        } finally {
+            JabMetrics.setGlobalMetrics(JabMetrics.NOOP);
+        }
+    }
+
+    @Test
+    public void decodedCacheTest() throws IOException {
+        JabParser jabParser = new JabParser();
+        NoNullsCompressCryptoHeaderGroup<DummyDTO> header = new NoNullsCompressCryptoHeaderGroup<DummyDTO>();
+        header.getCryptoHeader().setCrypto(new JabCrypto().setRandomKey());
+        DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
+        String barcode = jabParser.objectToJab(header, dto);
+        String other = jabParser.objectToJab(new ChecksumHeader<DummyDTO>(), dto);
+
+        JabParser.DecodedCache cache = new JabParser.DecodedCache(100, 0, TimeUnit.SECONDS)
+                .enable(NoNullsCompressCryptoHeaderGroup.class, DummyDTO.class, JabParser.DecodedCache.Mode.SHARED);
+        jabParser.setDecodedCache(cache);
+        DummyDTO first = jabParser.jabToObject(barcode, NoNullsCompressCryptoHeaderGroup.class, DummyDTO.class);
+        Assert.assertEquals(dto, first);
+        Assert.assertSame(first, jabParser.jabToObject(barcode, NoNullsCompressCryptoHeaderGroup.class, DummyDTO.class));
+        Assert.assertSame(first, jabParser.jabToObject(barcode, NoNullsCompressCryptoHeaderGroup.class, DummyDTO.class));
+        Assert.assertEquals(2, cache.getCache().getHits());
+        Assert.assertEquals(2.0 / 3, cache.getHitRatio(), 0.001);
+
+        // not enabled format is not cached
+        Assert.assertEquals(dto, jabParser.jabToObject(other, ChecksumHeader.class, DummyDTO.class));
+        Assert.assertEquals(1, cache.getCache().size());
+
+        // copies
+        cache.enable(NoNullsCompressCryptoHeaderGroup.class, DummyDTO.class, JabParser.DecodedCache.Mode.COPY);
+        DummyDTO copy = jabParser.jabToObject(barcode, NoNullsCompressCryptoHeaderGroup.class, DummyDTO.class);
+        Assert.assertEquals(dto, copy);
+        Assert.assertNotSame(first, copy);
+        copy.setName("Changed");
+        Assert.assertEquals(dto, jabParser.jabToObject(barcode, NoNullsCompressCryptoHeaderGroup.class, DummyDTO.class));
+
+        // disabled format is decoded again
+        cache.disable(NoNullsCompressCryptoHeaderGroup.class, DummyDTO.class);
+        Assert.assertNotSame(first, jabParser.jabToObject(barcode, NoNullsCompressCryptoHeaderGroup.class, DummyDTO.class));
+        Assert.assertEquals(4, cache.getCache().getHits());
+
+        // corrupted barcodes are not cached
+        cache.enable(NoNullsCompressCryptoHeaderGroup.class, DummyDTO.class, JabParser.DecodedCache.Mode.SHARED);
+        String corrupted = barcode.substring(0, barcode.length() - 10) + "AAAAAAAAA]";
+        for (int i = 0; i < 2; i++) {
+            try {
+                jabParser.jabToObject(corrupted, NoNullsCompressCryptoHeaderGroup.class, DummyDTO.class);
+                Assert.fail("Corrupted barcode was parsed");
+            } catch (IOException ex) {
+                // expected
+            }
+        }
+        Assert.assertEquals(1, cache.getCache().size());
+    }
+
+    @Test
+    public void bulkTest() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            DummyDTO dto = DummyDTO.makeDummyDTO(i % 2 == 0, i % 3 == 0);
+            dto.setName("Name #" + i);
+            lines.add(mapper.writeValueAsString(dto));
+        }
+        lines.add(50, "{not a json bean");  // this one should fail
+        lines.add(100, "");    // empty lines are kept
+
+        Path beans = Files.createTempFile("jab-beans", ".txt");
+        Path barcodes = Files.createTempFile("jab-barcodes", ".txt");
+        Path decoded = Files.createTempFile("jab-decoded", ".txt");
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            Files.write(beans, lines, StandardCharsets.UTF_8);
+            JabParser jabParser = new JabParser();
+            jabParser.setBatchExecutor(pool);
+            jabParser.getFormats().registerFormat(CompressHeaderGroup.class, DummyDTO.class);
+            JabBulk bulk = new JabBulk(jabParser);
+            bulk.setChunkSize(1024);    // lots of small chunks
+            bulk.setWindowSize(8 * 1024);
+
+            JabBulk.Report report = bulk.encode(beans, barcodes, new Supplier<CompressHeaderGroup<DummyDTO>>() {
+                @Override
+                public CompressHeaderGroup<DummyDTO> get() {
+                    return new CompressHeaderGroup<DummyDTO>();
+                }
+            }, DummyDTO.class);
+            System.out.println(report);
+            Assert.assertEquals(lines.size(), report.getLines());
+            Assert.assertEquals(1, report.getErrors());
+            Assert.assertTrue(report.getErrorMessages().get(0).startsWith("line 51:"));
+
+            report = bulk.decode(barcodes, decoded);
+            System.out.println(report);
+            Assert.assertEquals(lines.size(), report.getLines());
+            Assert.assertEquals(0, report.getErrors());
+
+            List<String> barcodeLines = Files.readAllLines(barcodes, StandardCharsets.UTF_8);
+            List<String> decodedLines = Files.readAllLines(decoded, StandardCharsets.UTF_8);
+            Assert.assertEquals(lines.size(), decodedLines.size());
+            for (int i = 0; i < lines.size(); i++) {
+                if (i == 50 || i == 100) {
+                    Assert.assertEquals("", decodedLines.get(i));
+                    continue;
+                }
+                DummyDTO dto = mapper.readValue(lines.get(i), DummyDTO.class);
+                Assert.assertEquals(dto, jabParser.jabToObject(barcodeLines.get(i)));
+                Assert.assertEquals(dto, mapper.readValue(decodedLines.get(i), DummyDTO.class));
+            }
+        } finally {
+            pool.shutdown();
+            Files.delete(beans);
+            Files.delete(barcodes);
+            Files.delete(decoded);
+        }
+    }
+
     @Test
     public void registeredBarcodeFormatTest() {
         DummyDTO dto = DummyDTO.makeDummyDTO(false, false);
@@ -95,6 +385,35 @@ public class JabParserTest {
         }
 
         Assert.assertEquals(dto, res);
+
+        // the same pair again is fine, but not a different pair with the same simple names
+        jabParser.getFormats().registerFormat(ChecksumHeader.class, DummyDTO.class);
+        jabParser.getFormats().registerFormat(ca.ma99us.jab.headers.CompressHeader.class, DummyDTO.class);
+        try {
+            jabParser.getFormats().registerFormat(CompressHeader.class, DummyDTO.class);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            System.out.println("Expected exception: " + e.getMessage());
+        }
+
+        // lots of formats
+        Class<?>[] payloads = {DummyDTO.class, String.class, Integer.class, Long.class, Object.class, List.class, Path.class,
+                ArrayList.class, ObjectMapper.class, StringBuilder.class, Thread.class, Exception.class, Runnable.class};
+        for (Class<?> payload : payloads) {
+            jabParser.getFormats().registerFormat(NoteHeader.class, payload);
+        }
+        for (Class<?> payload : payloads) {
+            long id = new JabParser.Formats.JabFormat(NoteHeader.class, payload).getFormatId();
+            Assert.assertEquals(payload, jabParser.getFormats().findFormat(id).getPayloadClass());
+        }
+        Assert.assertEquals(DummyDTO.class, jabParser.getFormats().findFormat(jabParser.findJabFormatId(csBarcode)).getPayloadClass());
+        Assert.assertNull(jabParser.getFormats().findFormat(jabParser.findJabFormatId(sBarcode)));
+    }
+
+    /**
+     * Different header with the same simple name
+     */
+    public static class CompressHeader<P> extends ChecksumHeader<P> {
     }
 
     @Test
@@ -166,6 +485,101 @@ public class JabParserTest {
         System.out.println(dto);
     }
 
+    @Test
+    public void objectValuesJsonArrayTest() throws IOException {
+        JabParser jabParser = new JabParser();
+
+        Assert.assertEquals("[123456,null,null,null,null,null,null,null,\"Some Name\",null,null,null]",
+                jabParser.objectValuesToJsonArrayString(DummyDTO.makeDummyDTO(false, false)));
+        Assert.assertEquals("[123456,null,null,null,[69,\"Item #69\"],null,null,null,\"Some Name\",null,null,null]",
+                jabParser.objectValuesToJsonArrayString(DummyDTO.makeDummyDTO(true, false)));
+        Assert.assertEquals("[123456,[5,6,7,0],\"U29tZUJ5dGVz\",null,[69,\"Item #69\"],[[0,\"Item #0\"],[1,\"Item #1\"]],[[2,\"Item #2\"],[3,\"Item #3\"],[4,\"Item #4\"]],"
+                        + "{\"7#\":{\"itemId\":7,\"itemName\":\"Item #7\"},\"6#\":{\"itemId\":6,\"itemName\":\"Item #6\"},\"5#\":{\"itemId\":5,\"itemName\":\"Item #5\"}},"
+                        + "\"Some Name\",[0,1,2,3],[9,8,7],{\"#4\":4,\"#5\":5,\"#6\":6}]",
+                jabParser.objectValuesToJsonArrayString(DummyDTO.makeDummyDTO(true, true)));
+
+        // streaming version writes exactly the same bytes
+        DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        jabParser.objectValuesToJsonArray(dto, os);
+        Assert.assertEquals(jabParser.objectValuesToJsonArrayString(dto), new String(os.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void jsonArrayCompatibilityTest() throws IOException {
+        JabParser jabParser = new JabParser();
+        String prefix = JabParser.PREFIX + JabParser.DELIMITER + new JabParser.Formats.JabFormat((Class<?>) null, DummyDTO.class).getFormatId() + JabParser.DELIMITER;
+
+        // fewer values than fields
+        DummyDTO res = jabParser.jabToObject(prefix + "[123456,[5,6]]", null, DummyDTO.class);
+        Assert.assertEquals(123456, res.getAge());
+        Assert.assertArrayEquals(new Long[]{5L, 6L}, res.getBigNumbers());
+        Assert.assertNull(res.getName());
+
+        // more values than fields, strings for numbers, nulls in nested arrays
+        res = jabParser.jabToObject(prefix + "[\"42\",null,null,7,[69,\"Item #69\"],[null,[1,\"Item #1\"]],[],{},\"Some Name\",null,null,null,\"extra\",[1,[2]]]", null, DummyDTO.class);
+        Assert.assertEquals(42, res.getAge());
+        Assert.assertEquals(Long.valueOf(7), res.getId());
+        Assert.assertEquals(DummyDTO.DummyItemDTO.makeDummyItemDTO(69), res.getItem());
+        Assert.assertNull(res.getItems()[0]);
+        Assert.assertEquals(DummyDTO.DummyItemDTO.makeDummyItemDTO(1), res.getItems()[1]);
+        Assert.assertTrue(res.getItemsList().isEmpty());
+        Assert.assertTrue(res.getItemsMap().isEmpty());
+        Assert.assertEquals("Some Name", res.getName());
+    }
+
+    @Test
+    public void beanPlanTest() {
+        JabBeanPlan.getPlans().register(DummyDTO.class);
+
+        // nested bean classes are pre-registered as well
+        JabBeanPlan<DummyDTO> plan = JabBeanPlan.getPlans().find(DummyDTO.class);
+        Assert.assertNotNull(plan);
+        Assert.assertNotNull(JabBeanPlan.getPlans().find(DummyDTO.DummyItemDTO.class));
+        Assert.assertSame(plan, JabBeanPlan.of(DummyDTO.class));
+        System.out.println("plan: " + plan);
+
+        // fields are in alphabetic order
+        String[] names = {"age", "bigNumbers", "bytes", "id", "item", "items", "itemsList", "itemsMap", "name", "numbers", "numbersList", "numbersMap"};
+        Assert.assertEquals(names.length, plan.getFields().size());
+        for (int i = 0; i < names.length; i++) {
+            Assert.assertEquals(names[i], plan.getFields().get(i).getName());
+        }
+
+        Assert.assertEquals(JabBeanPlan.Kind.VALUE, plan.getFields().get(0).getKind());
+        Assert.assertEquals(JabBeanPlan.Kind.BEAN, plan.getFields().get(4).getKind());
+        Assert.assertEquals(JabBeanPlan.Kind.BEAN_ARRAY, plan.getFields().get(5).getKind());
+        Assert.assertEquals(JabBeanPlan.Kind.BEAN_LIST, plan.getFields().get(6).getKind());
+        Assert.assertEquals(DummyDTO.DummyItemDTO.class, plan.getFields().get(6).getElementType());
+        Assert.assertEquals(JabBeanPlan.Kind.VALUE, plan.getFields().get(7).getKind());   // maps are serialized as is
+    }
+
+    @Test
+    public void hasherTest() throws IOException {
+        JabHasher hasher = JabHasher.getGlobalHasher();
+        // values must never change, barcodes depend on them
+        Assert.assertEquals(98587847802252L, hasher.hash("Hello, JAB!"));
+        Assert.assertEquals(4248009926078979L, hasher.hash(new byte[0]));
+        Assert.assertEquals(4938423908782500L, hasher.hash("ab".getBytes(StandardCharsets.UTF_8), "cd".getBytes(StandardCharsets.UTF_8)));
+
+        byte[] data = "Hello, JAB!".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        Assert.assertEquals(98587847802252L, hasher.hash(buffer));
+        Assert.assertEquals(0, buffer.position());
+        Assert.assertEquals(98587847802252L, hasher.hash(new ByteArrayInputStream(data)));
+        try (JabHasher.Hashing hashing = hasher.hashing()) {
+            hashing.write(data, 0, 5);
+            Assert.assertEquals(4938423908782500L, hasher.hash("abcd"));    // nested hashing in the same thread
+            hashing.write(data, 5, data.length - 5);
+            Assert.assertEquals(98587847802252L, hashing.getHash());
+        }
+
+        DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
+        ChecksumHeader<DummyDTO> header = new ChecksumHeader<DummyDTO>();
+        header.populate(dto);
+        Assert.assertEquals(hasher.hash(new JabParser().objectValuesToJsonArrayString(dto)), (long) header.getChecksum());
+    }
+
     @Test
     public void wrapBytesTest() {
         // input shorter then the output
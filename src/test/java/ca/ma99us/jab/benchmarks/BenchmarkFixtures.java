@@ -0,0 +1,106 @@
+package ca.ma99us.jab.benchmarks;
+
+import ca.ma99us.jab.JabAeadCrypto;
+import ca.ma99us.jab.JabCrypto;
+import ca.ma99us.jab.JabDictionary;
+import ca.ma99us.jab.JabParser;
+import ca.ma99us.jab.JabSigner;
+import ca.ma99us.jab.dummy.DummyDTO;
+import ca.ma99us.jab.headers.AeadCryptoHeader;
+import ca.ma99us.jab.headers.CryptoHeader;
+import ca.ma99us.jab.headers.DictionaryCompressHeader;
+import ca.ma99us.jab.headers.JabHeader;
+import ca.ma99us.jab.headers.SignatureHeader;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared benchmark inputs: payload sizes and headers (looked up by class name) with their keys set.
+ */
+public class BenchmarkFixtures {
+    private static final JabCrypto crypto = new JabCrypto().setRandomKey();
+    private static final JabAeadCrypto aeadCrypto = new JabAeadCrypto().setRandomKey();
+    private static final JabSigner signer = new JabSigner().setRandomKey();
+    private static final JabDictionary dictionary = trainDictionary();
+
+    /**
+     * @param size "small", "medium" or "large"
+     * @return dummy payload of the given size
+     */
+    public static DummyDTO dto(String size) {
+        if ("small".equals(size)) {
+            return DummyDTO.makeDummyDTO(false, false);
+        } else if ("medium".equals(size)) {
+            return DummyDTO.makeDummyDTO(true, false);
+        } else if ("large".equals(size)) {
+            return DummyDTO.makeDummyDTO(true, true);
+        }
+        throw new IllegalArgumentException("Unknown size: " + size);
+    }
+
+    /**
+     * @param name header or header group simple class name, or "none"
+     * @return new header with crypto and signature keys set, or null
+     */
+    public static JabHeader<DummyDTO> header(String name) throws Exception {
+        if ("none".equals(name)) {
+            return null;
+        }
+        Class<?> clazz;
+        try {
+            clazz = Class.forName("ca.ma99us.jab.headers." + name);
+        } catch (ClassNotFoundException e) {
+            clazz = Class.forName("ca.ma99us.jab.headers.groups." + name);
+        }
+        JabHeader<DummyDTO> header = (JabHeader<DummyDTO>) clazz.newInstance();
+        configure(header);
+        for (Field field : clazz.getDeclaredFields()) {
+            // header groups members
+            if (JabHeader.class.isAssignableFrom(field.getType())) {
+                field.setAccessible(true);
+                configure(field.get(header));
+            }
+        }
+        return header;
+    }
+
+    /**
+     * @return the unwrapped payload json array bytes, as headers get them
+     */
+    public static byte[] payloadBytes(JabParser parser, DummyDTO dto) throws Exception {
+        return JabParser.unwrap(parser.objectValuesToJsonArrayString(dto)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Dictionary trained on dummy payloads of all sizes, with different names
+     */
+    private static JabDictionary trainDictionary() {
+        JabParser parser = new JabParser();
+        List<byte[]> samples = new ArrayList<byte[]>();
+        try {
+            for (int i = 0; i < 300; i++) {
+                DummyDTO dto = dto(i % 3 == 0 ? "small" : i % 3 == 1 ? "medium" : "large");
+                dto.setName("Sample Name #" + i);
+                samples.add(payloadBytes(parser, dto));
+            }
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+        return JabDictionary.train(samples, JabDictionary.DEFAULT_SIZE);
+    }
+
+    private static void configure(Object header) {
+        if (header instanceof CryptoHeader) {
+            ((CryptoHeader<?>) header).setCrypto(crypto);
+        } else if (header instanceof AeadCryptoHeader) {
+            ((AeadCryptoHeader<?>) header).setCrypto(aeadCrypto);
+        } else if (header instanceof DictionaryCompressHeader) {
+            ((DictionaryCompressHeader<?>) header).setDictionary(dictionary);
+        } else if (header instanceof SignatureHeader) {
+            ((SignatureHeader<?>) header).setSigner(signer);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ca.ma99us.jab.benchmarks;
+
+import ca.ma99us.jab.JabCrypto;
+import ca.ma99us.jab.JabParser;
+import ca.ma99us.jab.dummy.DummyDTO;
+import ca.ma99us.jab.headers.groups.CryptoHeaderGroup;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Batch encode/decode scaling with the number of batch executor threads.
+ * Compare the scores across "parallelism" values; they only scale up to the number of available cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JabBatchBenchmark {
+    @Param({"1", "2", "4", "8"})
+    private int parallelism;
+
+    @Param({"1000"})
+    private int batchSize;
+
+    private JabParser parser;
+    private ForkJoinPool pool;
+    private Supplier<CryptoHeaderGroup<DummyDTO>> headers;
+    private List<DummyDTO> dtos;
+    private List<String> barcodes;
+
+    @Setup
+    public void setup() {
+        final JabCrypto crypto = new JabCrypto().setSecretKey("SomeSuperSecretKey", "SomeSalt");
+        headers = new Supplier<CryptoHeaderGroup<DummyDTO>>() {
+            @Override
+            public CryptoHeaderGroup<DummyDTO> get() {
+                CryptoHeaderGroup<DummyDTO> header = new CryptoHeaderGroup<DummyDTO>();
+                header.getCryptoHeader().setCrypto(crypto);
+                return header;
+            }
+        };
+        pool = new ForkJoinPool(parallelism);
+        parser = new JabParser();
+        parser.setBatchExecutor(pool);
+        dtos = new ArrayList<DummyDTO>();
+        for (int i = 0; i < batchSize; i++) {
+            dtos.add(DummyDTO.makeDummyDTO(true, false));
+        }
+        barcodes = new ArrayList<String>();
+        for (JabParser.BatchResult<String> result : parser.objectsToJab(headers, dtos)) {
+            barcodes.add(result.getValue());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<JabParser.BatchResult<String>> encode() {
+        return parser.objectsToJab(headers, dtos);
+    }
+
+    @Benchmark
+    public List<JabParser.BatchResult<DummyDTO>> decode() {
+        return parser.jabToObjects(barcodes, CryptoHeaderGroup.class, DummyDTO.class);
+    }
+}
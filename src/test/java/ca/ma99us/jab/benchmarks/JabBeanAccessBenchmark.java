@@ -0,0 +1,93 @@
+package ca.ma99us.jab.benchmarks;
+
+import ca.ma99us.jab.JabBeanPlan;
+import ca.ma99us.jab.dummy.DummyDTO;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reflective vs generated (pre-bound method handles) bean fields access on DummyDTO.
+ * Reads all fields of DummyDTO, writes all fields of DummyItemDTO.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JabBeanAccessBenchmark {
+    private DummyDTO dto;
+    private DummyDTO.DummyItemDTO item;
+    private List<JabBeanPlan.FieldPlan> dtoFields;
+    private List<JabBeanPlan.FieldPlan> itemFields;
+    private Method[] dtoGetters;
+    private Method[] itemSetters;
+
+    @Setup
+    public void setup() throws Exception {
+        dto = DummyDTO.makeDummyDTO(true, true);
+        item = DummyDTO.DummyItemDTO.makeDummyItemDTO(1);
+        dtoFields = JabBeanPlan.of(DummyDTO.class).getFields();
+        itemFields = JabBeanPlan.of(DummyDTO.DummyItemDTO.class).getFields();
+        dtoGetters = new Method[dtoFields.size()];
+        for (int i = 0; i < dtoGetters.length; i++) {
+            dtoGetters[i] = DummyDTO.class.getMethod(accessorName("get", dtoFields.get(i).getName()));
+        }
+        itemSetters = new Method[itemFields.size()];
+        for (int i = 0; i < itemSetters.length; i++) {
+            JabBeanPlan.FieldPlan field = itemFields.get(i);
+            itemSetters[i] = DummyDTO.DummyItemDTO.class.getMethod(accessorName("set", field.getName()), field.getType());
+        }
+    }
+
+    /**
+     * What JabParser used to do for every nested bean field: build getter name, look it up, invoke it.
+     */
+    @Benchmark
+    public void getReflectiveLookup(Blackhole bh) throws Exception {
+        for (JabBeanPlan.FieldPlan field : dtoFields) {
+            Method method = dto.getClass().getMethod(accessorName("get", field.getName()));
+            bh.consume(method.invoke(dto));
+        }
+    }
+
+    @Benchmark
+    public void getReflectiveCached(Blackhole bh) throws Exception {
+        for (Method method : dtoGetters) {
+            bh.consume(method.invoke(dto));
+        }
+    }
+
+    @Benchmark
+    public void getGenerated(Blackhole bh) throws Exception {
+        for (JabBeanPlan.FieldPlan field : dtoFields) {
+            if (field.getType() == int.class) {
+                bh.consume(field.getInt(dto));
+            } else {
+                bh.consume(field.getValue(dto));
+            }
+        }
+    }
+
+    @Benchmark
+    public DummyDTO.DummyItemDTO setReflectiveCached() throws Exception {
+        itemSetters[0].invoke(item, 42L);
+        itemSetters[1].invoke(item, "Item #42");
+        return item;
+    }
+
+    @Benchmark
+    public DummyDTO.DummyItemDTO setGenerated() throws Exception {
+        itemFields.get(0).setLong(item, 42L);
+        itemFields.get(1).setValue(item, "Item #42");
+        return item;
+    }
+
+    private static String accessorName(String prefix, String fieldName) {
+        return prefix + fieldName.substring(0, 1).toUpperCase() + fieldName.substring(1);
+    }
+}
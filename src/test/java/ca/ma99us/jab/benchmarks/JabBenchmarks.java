@@ -0,0 +1,83 @@
+package ca.ma99us.jab.benchmarks;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the benchmarks (all of them by default) with the GC profiler, then prints time, allocation and output
+ * length in one table, so size and speed trade-offs of headers can be compared side by side.
+ * Accepts the same arguments as org.openjdk.jmh.Main, e.g. "JabParserBenchmark -p size=large".
+ */
+public class JabBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(cmd);
+        if (cmd.getIncludes().isEmpty()) {
+            options.include(JabBenchmarks.class.getPackage().getName());
+        }
+        options.addProfiler(GCProfiler.class);
+        Collection<RunResult> results = new Runner(options.build()).run();
+
+        System.out.println();
+        System.out.println(String.format("%-24s %-24s %-8s %-18s %14s %12s %8s",
+                "Benchmark", "header/params", "size", "method", "score", "B/op", "length"));
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            String benchmark = params.getBenchmark();
+            String className = benchmark.substring(0, benchmark.lastIndexOf('.'));
+            String header = params.getParam("header");
+            String size = params.getParam("size");
+            Result score = result.getPrimaryResult();
+            System.out.println(String.format("%-24s %-24s %-8s %-18s %14s %12s %8s",
+                    className.substring(className.lastIndexOf('.') + 1),
+                    header != null ? header : otherParams(params),
+                    size != null ? size : "",
+                    benchmark.substring(benchmark.lastIndexOf('.') + 1),
+                    String.format("%.1f %s", score.getScore(), score.getScoreUnit()),
+                    allocation(result),
+                    outputLength(className, header, size)));
+        }
+    }
+
+    private static String otherParams(BenchmarkParams params) {
+        List<String> values = new ArrayList<String>();
+        for (String key : params.getParamsKeys()) {
+            values.add(key + "=" + params.getParam(key));
+        }
+        return values.toString();
+    }
+
+    private static String allocation(RunResult result) {
+        for (Map.Entry<String, Result> entry : result.getSecondaryResults().entrySet()) {
+            if (entry.getKey().endsWith("gc.alloc.rate.norm")) {
+                return String.format("%.0f", entry.getValue().getScore());
+            }
+        }
+        return "";
+    }
+
+    private static String outputLength(String className, String header, String size) {
+        if (header == null || size == null) {
+            return "";
+        }
+        try {
+            Method method = Class.forName(className).getMethod("outputLength", String.class, String.class);
+            return String.valueOf(method.invoke(null, header, size));
+        } catch (Exception e) {
+            return "";  // no such method, or the header is not available
+        }
+    }
+}
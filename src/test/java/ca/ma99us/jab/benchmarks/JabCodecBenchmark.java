@@ -0,0 +1,86 @@
+package ca.ma99us.jab.benchmarks;
+
+import ca.ma99us.jab.JabParser;
+import ca.ma99us.jab.codecs.DeflateCodec;
+import ca.ma99us.jab.codecs.JabCodec;
+import ca.ma99us.jab.codecs.Lz4Codec;
+import ca.ma99us.jab.dummy.DummyDTO;
+import ca.ma99us.jab.headers.CompressHeader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compression codecs compared to the CompressHeader deflate path, on payload bytes of a single barcode and on a
+ * "bulk" payload of 100 barcodes (server-side archive).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JabCodecBenchmark {
+    @Param({"CompressHeader", "DeflateCodec", "Lz4Codec"})
+    private String header;
+
+    @Param({"small", "medium", "large", "bulk"})
+    private String size;
+
+    private CompressHeader<DummyDTO> compressHeader;
+    private JabCodec codec;
+    private byte[] payload;
+    private byte[] compressed;
+
+    @Setup
+    public void setup() throws Exception {
+        compressHeader = new CompressHeader<DummyDTO>();
+        codec = codec(header);
+        payload = payload(size);
+        compressed = compress();
+    }
+
+    @Benchmark
+    public byte[] compress() throws Exception {
+        return codec != null ? codec.compress(payload) : compressHeader.obfuscate(payload);
+    }
+
+    @Benchmark
+    public byte[] decompress() throws Exception {
+        return codec != null ? codec.decompress(compressed) : compressHeader.deobfuscate(compressed);
+    }
+
+    /**
+     * @return compressed length in bytes
+     */
+    public static int outputLength(String header, String size) throws Exception {
+        JabCodec codec = codec(header);
+        byte[] payload = payload(size);
+        return codec != null ? codec.compress(payload).length : new CompressHeader<DummyDTO>().obfuscate(payload).length;
+    }
+
+    private static JabCodec codec(String name) {
+        if ("DeflateCodec".equals(name)) {
+            return new DeflateCodec();
+        } else if ("Lz4Codec".equals(name)) {
+            return new Lz4Codec();
+        }
+        return null;    // CompressHeader
+    }
+
+    private static byte[] payload(String size) throws Exception {
+        JabParser parser = new JabParser();
+        if (!"bulk".equals(size)) {
+            return BenchmarkFixtures.payloadBytes(parser, BenchmarkFixtures.dto(size));
+        }
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        for (int i = 0; i < 100; i++) {
+            DummyDTO dto = BenchmarkFixtures.dto(i % 3 == 0 ? "small" : i % 3 == 1 ? "medium" : "large");
+            dto.setName("Bulk Name #" + i);
+            os.write(BenchmarkFixtures.payloadBytes(parser, dto));
+            os.write('\n');
+        }
+        return os.toByteArray();
+    }
+}
@@ -0,0 +1,110 @@
+package ca.ma99us.jab.benchmarks;
+
+import ca.ma99us.jab.AbstractSecret;
+import ca.ma99us.jab.JabAsyncCrypto;
+import ca.ma99us.jab.JabCrypto;
+import ca.ma99us.jab.JabHasher;
+import ca.ma99us.jab.JabParser;
+import ca.ma99us.jab.dummy.DummyDTO;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.Provider;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encrypt/decrypt of a small payload with cached per-thread ciphers, compared to creating and initializing
+ * a new cipher for every call ("Uncached" methods, which is what JabCrypto used to do).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JabCryptoBenchmark {
+    @Param({"Blowfish", "AES", "ECIES"})
+    private String algorithm;
+
+    private JabCrypto crypto;
+    private String mode;
+    private String provider;
+    private int ivLen;
+    private Key encryptKey;
+    private Key decryptKey;
+    private byte[] payload;
+    private byte[] encrypted;
+
+    @Setup
+    public void setup() throws Exception {
+        if ("Blowfish".equals(algorithm)) {
+            crypto = new JabCrypto().setSecretKey("SomeSuperSecretKey", "SomeSalt");
+            mode = "Blowfish/CBC/PKCS5Padding";
+            ivLen = 8;
+        } else if ("AES".equals(algorithm)) {
+            crypto = new JabCrypto("AES", "AES/CBC/PKCS5Padding", 16, 16).setSecretKey("SomeSuperSecretKey", "SomeSalt");
+            mode = "AES/CBC/PKCS5Padding";
+            ivLen = 16;
+        } else {
+            JabAsyncCrypto.setCryptoConfig(new AbstractSecret.CryptoConfig() {
+                @Override
+                public Provider getSecurityProvider() {
+                    return new BouncyCastleProvider();
+                }
+            });
+            // keys re-read from bytes, same as the uncached methods use (generated keys are slower in BC)
+            JabAsyncCrypto keys = new JabAsyncCrypto("EC", "ECIES", 24, 0).setRandomKey();
+            crypto = new JabAsyncCrypto("EC", "ECIES", 24, 0).setPrivateKeyBytes(keys.getPrivateKeyBytes())
+                    .setPublicKeyBytes(keys.getPublicKeyBytes());
+            JabAsyncCrypto.setCryptoConfig(new AbstractSecret.CryptoConfig());
+            mode = "ECIES";
+            provider = "BC";
+            KeyFactory keyFactory = KeyFactory.getInstance("EC", "BC");
+            encryptKey = keyFactory.generatePublic(new X509EncodedKeySpec(((JabAsyncCrypto) crypto).getPublicKeyBytes()));
+            decryptKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(crypto.getPrivateKeyBytes()));
+        }
+        if (encryptKey == null) {
+            encryptKey = new SecretKeySpec(crypto.getPrivateKeyBytes(), algorithm);
+            decryptKey = encryptKey;
+        }
+        payload = BenchmarkFixtures.payloadBytes(new JabParser(), DummyDTO.makeDummyDTO(false, false));
+        encrypted = crypto.encrypt(payload);
+    }
+
+    @Benchmark
+    public byte[] encrypt() {
+        return crypto.encrypt(payload);
+    }
+
+    @Benchmark
+    public byte[] decrypt() {
+        return crypto.decrypt(encrypted);
+    }
+
+    @Benchmark
+    public byte[] encryptUncached() throws Exception {
+        return newCipher(Cipher.ENCRYPT_MODE, encryptKey).doFinal(payload);
+    }
+
+    @Benchmark
+    public byte[] decryptUncached() throws Exception {
+        return newCipher(Cipher.DECRYPT_MODE, decryptKey).doFinal(encrypted);
+    }
+
+    private Cipher newCipher(int opMode, Key key) throws Exception {
+        Cipher cipher = provider != null ? Cipher.getInstance(mode, provider) : Cipher.getInstance(mode);
+        if (ivLen > 0) {
+            cipher.init(opMode, key, new IvParameterSpec(JabHasher.getGlobalHasher().wrapBytes(key.getEncoded(), ivLen)));
+        } else {
+            cipher.init(opMode, key);
+        }
+        return cipher;
+    }
+}
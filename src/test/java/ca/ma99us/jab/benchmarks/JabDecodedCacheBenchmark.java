@@ -0,0 +1,69 @@
+package ca.ma99us.jab.benchmarks;
+
+import ca.ma99us.jab.JabParser;
+import ca.ma99us.jab.dummy.DummyDTO;
+import ca.ma99us.jab.headers.JabHeader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repeated scans of a small working set of barcodes, with no decoded cache, and with shared or copied cached payloads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JabDecodedCacheBenchmark {
+    @Param({"ChecksumHeader", "SignatureHeader", "CryptoHeaderGroup", "AeadCryptoHeaderGroup"})
+    private String header;
+
+    @Param({"medium"})
+    private String size;
+
+    @Param({"off", "SHARED", "COPY"})
+    private String mode;
+
+    @Param({"64"})
+    private int barcodes;
+
+    private JabParser parser;
+    private Class<JabHeader<DummyDTO>> hdrClass;
+    private List<String> scans;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        parser = new JabParser();
+        JabHeader<DummyDTO> hdr = BenchmarkFixtures.header(header);
+        hdrClass = (Class<JabHeader<DummyDTO>>) hdr.getClass();
+        scans = new ArrayList<String>();
+        for (int i = 0; i < barcodes; i++) {
+            DummyDTO dto = BenchmarkFixtures.dto(size);
+            dto.setName("Name #" + i);
+            scans.add(parser.objectToJab(hdr, dto));
+        }
+        if (!"off".equals(mode)) {
+            parser.setDecodedCache(new JabParser.DecodedCache(1024, 1, TimeUnit.MINUTES)
+                    .enable(hdrClass, DummyDTO.class, JabParser.DecodedCache.Mode.valueOf(mode)));
+        }
+    }
+
+    @Benchmark
+    public DummyDTO decode() throws Exception {
+        String barcode = scans.get(next);
+        next = (next + 1) % scans.size();
+        return parser.jabToObject(barcode, hdrClass, DummyDTO.class);
+    }
+
+    /**
+     * @return barcode length in chars
+     */
+    public static int outputLength(String header, String size) throws Exception {
+        return new JabParser().objectToJab(BenchmarkFixtures.header(header), BenchmarkFixtures.dto(size)).length();
+    }
+}
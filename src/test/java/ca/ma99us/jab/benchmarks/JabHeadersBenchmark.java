@@ -0,0 +1,65 @@
+package ca.ma99us.jab.benchmarks;
+
+import ca.ma99us.jab.JabParser;
+import ca.ma99us.jab.dummy.DummyDTO;
+import ca.ma99us.jab.headers.JabHeader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every single header on its own: populate + obfuscate, and deobfuscate + validate of the payload json bytes.
+ * Most of them produce binary bytes, which only make a valid barcode followed by ToStringHeader (see header groups
+ * in {@link JabParserBenchmark}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JabHeadersBenchmark {
+    @Param({"ChecksumHeader", "NoNullsHeader", "CompressHeader", "DictionaryCompressHeader", "CryptoHeader", "AeadCryptoHeader", "SignatureHeader",
+            "CborArrayHeader", "BsonArrayHeader", "BsonMongoHeader", "MessagePackHeader", "ToStringHeader"})
+    private String header;
+
+    @Param({"small", "medium", "large"})
+    private String size;
+
+    private JabHeader<DummyDTO> hdr;
+    private DummyDTO dto;
+    private byte[] payload;
+    private byte[] obfuscated;
+
+    @Setup
+    public void setup() throws Exception {
+        hdr = BenchmarkFixtures.header(header);
+        dto = BenchmarkFixtures.dto(size);
+        payload = BenchmarkFixtures.payloadBytes(new JabParser(), dto);
+        hdr.populate(dto);
+        obfuscated = hdr.obfuscate(payload);
+    }
+
+    @Benchmark
+    public byte[] obfuscate() throws Exception {
+        hdr.populate(dto);
+        return hdr.obfuscate(payload);
+    }
+
+    @Benchmark
+    public byte[] deobfuscate() throws Exception {
+        byte[] bytes = hdr.deobfuscate(obfuscated);
+        hdr.validate(dto);
+        return bytes;
+    }
+
+    /**
+     * @return obfuscated payload length in bytes
+     */
+    public static int outputLength(String header, String size) throws Exception {
+        JabHeader<DummyDTO> hdr = BenchmarkFixtures.header(header);
+        DummyDTO dto = BenchmarkFixtures.dto(size);
+        hdr.populate(dto);
+        return hdr.obfuscate(BenchmarkFixtures.payloadBytes(new JabParser(), dto)).length;
+    }
+}
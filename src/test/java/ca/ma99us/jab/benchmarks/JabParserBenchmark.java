@@ -0,0 +1,74 @@
+package ca.ma99us.jab.benchmarks;
+
+import ca.ma99us.jab.JabParser;
+import ca.ma99us.jab.dummy.DummyDTO;
+import ca.ma99us.jab.headers.JabHeader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JabParser paths end to end: no header, barcode-safe single headers and every header group.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JabParserBenchmark {
+    @Param({"none", "ChecksumHeader", "NoNullsHeader", "SignatureHeader",
+            "CompressHeaderGroup", "DictionaryCompressHeaderGroup", "CodecCompressHeaderGroup", "CryptoHeaderGroup", "AeadCryptoHeaderGroup", "CborHeaderGroup", "BsonHeaderGroup", "MessagePackHeaderGroup"})
+    private String header;
+
+    @Param({"small", "medium", "large"})
+    private String size;
+
+    private JabParser parser;
+    private JabHeader<DummyDTO> hdr;
+    private Class<JabHeader<DummyDTO>> hdrClass;
+    private DummyDTO dto;
+    private String barcode;
+
+    @Setup
+    public void setup() throws Exception {
+        parser = new JabParser();
+        hdr = BenchmarkFixtures.header(header);
+        hdrClass = hdr != null ? (Class<JabHeader<DummyDTO>>) hdr.getClass() : null;
+        dto = BenchmarkFixtures.dto(size);
+        barcode = parser.objectToJab(hdr, dto);
+        parser.getFormats().registerFormat(hdrClass, DummyDTO.class);
+    }
+
+    @Benchmark
+    public String values() throws Exception {
+        return parser.objectValuesToJsonArrayString(dto);
+    }
+
+    @Benchmark
+    public String encode() throws Exception {
+        return parser.objectToJab(hdr, dto);
+    }
+
+    @Benchmark
+    public byte[] encodeBytes() throws Exception {
+        return parser.objectToJabBytes(hdr, dto);
+    }
+
+    @Benchmark
+    public DummyDTO decode() throws Exception {
+        return parser.jabToObject(barcode, hdrClass, DummyDTO.class);
+    }
+
+    @Benchmark
+    public Object decodeRegistered() throws Exception {
+        return parser.jabToObject(barcode);
+    }
+
+    /**
+     * @return barcode length in chars
+     */
+    public static int outputLength(String header, String size) throws Exception {
+        return new JabParser().objectToJab(BenchmarkFixtures.header(header), BenchmarkFixtures.dto(size)).length();
+    }
+}
@@ -0,0 +1,82 @@
+package ca.ma99us.jab.benchmarks;
+
+import ca.ma99us.jab.AbstractSecret;
+import ca.ma99us.jab.JabCrypto;
+import ca.ma99us.jab.JabParser;
+import ca.ma99us.jab.dummy.DummyDTO;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-tenant secrets instantiation: with the provider resolved once per CryptoConfig, compared to resolving and
+ * registering a new provider instance for every secret ("Uncached", what AbstractSecret constructor used to do).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JabSecretBenchmark {
+    @Param({"default", "BC"})
+    private String provider;
+
+    @Param({"1000"})
+    private int tenants;
+
+    private byte[] keyBytes;
+    private byte[] payload;
+
+    @Setup
+    public void setup() throws Exception {
+        if ("BC".equals(provider)) {
+            AbstractSecret.setCryptoConfig(new AbstractSecret.CryptoConfig() {
+                @Override
+                public Provider getSecurityProvider() {
+                    return new BouncyCastleProvider();
+                }
+            });
+        }
+        keyBytes = new JabCrypto("AES", "AES/CBC/PKCS5Padding", 16, 16).setRandomKey().getPrivateKeyBytes();
+        payload = BenchmarkFixtures.payloadBytes(new JabParser(), DummyDTO.makeDummyDTO(false, false));
+    }
+
+    @TearDown
+    public void tearDown() {
+        AbstractSecret.setCryptoConfig(new AbstractSecret.CryptoConfig());
+    }
+
+    @Benchmark
+    public JabCrypto newSecret() {
+        return new JabCrypto("AES", "AES/CBC/PKCS5Padding", 16, 16);
+    }
+
+    @Benchmark
+    public JabCrypto newSecretUncached() {
+        if ("BC".equals(provider)) {
+            Security.insertProviderAt(new BouncyCastleProvider(), 1);
+        }
+        return new JabCrypto("AES", "AES/CBC/PKCS5Padding", 16, 16);
+    }
+
+    /**
+     * Boot-time setup of many tenants, each with its own key, and the first encryption with it
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<JabCrypto> startTenants() {
+        List<JabCrypto> list = new ArrayList<JabCrypto>(tenants);
+        for (int i = 0; i < tenants; i++) {
+            JabCrypto crypto = new JabCrypto("AES", "AES/CBC/PKCS5Padding", 16, 16).setPrivateKeyBytes(keyBytes);
+            crypto.encrypt(payload);
+            list.add(crypto);
+        }
+        return list;
+    }
+}
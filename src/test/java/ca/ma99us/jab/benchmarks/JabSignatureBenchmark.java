@@ -0,0 +1,134 @@
+package ca.ma99us.jab.benchmarks;
+
+import ca.ma99us.jab.AbstractSecret;
+import ca.ma99us.jab.JabCache;
+import ca.ma99us.jab.JabAsyncSigner;
+import ca.ma99us.jab.JabParser;
+import ca.ma99us.jab.JabSigner;
+import ca.ma99us.jab.dummy.DummyDTO;
+import ca.ma99us.jab.headers.SignatureHeader;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.KeyFactory;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SignatureHeader validation: single verification with reused engines compared to a new engine per call
+ * ("Uncached", what signers used to do), and batches of barcodes validated by 1..N threads.
+ * With verifiedCache on, repeated validations of the same barcodes are served from the verified signatures cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JabSignatureBenchmark {
+    @Param({"HmacSHA256", "ECDSA"})
+    private String algorithm;
+
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    @Param({"256"})
+    private int batchSize;
+
+    @Param({"false", "true"})
+    private boolean verifiedCache;
+
+    private JabSigner signer;
+    private SignatureHeader<DummyDTO> header;
+    private DummyDTO dto;
+    private byte[] data;
+    private byte[] signature;
+    private PublicKey publicKey;
+    private SecretKeySpec hmacKey;
+    private JabParser parser;
+    private ForkJoinPool pool;
+    private List<String> barcodes;
+
+    @Setup
+    public void setup() throws Exception {
+        if ("ECDSA".equals(algorithm)) {
+            JabAsyncSigner.setCryptoConfig(new AbstractSecret.CryptoConfig() {
+                @Override
+                public Provider getSecurityProvider() {
+                    return new BouncyCastleProvider();
+                }
+            });
+            JabAsyncSigner keys = new JabAsyncSigner("ECDSA", "SHA256withECDSA", 24).setRandomKey();
+            signer = new JabAsyncSigner("ECDSA", "SHA256withECDSA", 24).setPrivateKeyBytes(keys.getPrivateKeyBytes())
+                    .setPublicKeyBytes(keys.getPublicKeyBytes());
+            publicKey = KeyFactory.getInstance("ECDSA", "BC").generatePublic(new X509EncodedKeySpec(keys.getPublicKeyBytes()));
+            JabAsyncSigner.setCryptoConfig(new AbstractSecret.CryptoConfig());
+        } else {
+            signer = new JabSigner().setSecretKey("SecretSignerKey", "SomeSalt");
+            hmacKey = new SecretKeySpec(signer.getPrivateKeyBytes(), "HmacSHA256");
+        }
+        header = new SignatureHeader<DummyDTO>().setSigner(signer);
+        dto = DummyDTO.makeDummyDTO(true, false);
+        header.populate(dto);
+        data = Arrays.copyOf(BenchmarkFixtures.payloadBytes(new JabParser(), dto), 200);
+        signature = signer.sign(data);
+
+        if (verifiedCache) {
+            SignatureHeader.setVerifiedCache(new JabCache<SignatureHeader.Verified, Boolean>(4096, 10, TimeUnit.MINUTES));
+        }
+        pool = new ForkJoinPool(threads);
+        parser = new JabParser();
+        parser.setBatchExecutor(pool);
+        barcodes = new ArrayList<String>();
+        SignatureHeader<DummyDTO> batchHeader = new SignatureHeader<DummyDTO>().setSigner(signer);   // keep header's signature for validate()
+        for (int i = 0; i < batchSize; i++) {
+            DummyDTO item = DummyDTO.makeDummyDTO(true, false);
+            item.setName("Name #" + i);
+            barcodes.add(parser.objectToJab(batchHeader, item));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        SignatureHeader.setVerifiedCache(null);
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public DummyDTO validate() throws Exception {
+        header.validate(dto);
+        return dto;
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return signer.verify(data, signature);
+    }
+
+    @Benchmark
+    public boolean verifyUncached() throws Exception {
+        if (publicKey != null) {
+            Signature sig = Signature.getInstance("SHA256withECDSA", "BC");
+            sig.initVerify(publicKey);
+            sig.update(data);
+            return sig.verify(signature);
+        }
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(hmacKey);
+        return Arrays.equals(mac.doFinal(data), signature);
+    }
+
+    @Benchmark
+    public List<JabParser.BatchResult<DummyDTO>> decodeBatch() {
+        return parser.jabToObjects(barcodes, SignatureHeader.class, DummyDTO.class);
+    }
+}
@@ -0,0 +1,91 @@
+package ca.ma99us.jab.benchmarks;
+
+import ca.ma99us.jab.JabParser;
+import ca.ma99us.jab.JabZipPool;
+import ca.ma99us.jab.dummy.DummyDTO;
+import ca.ma99us.jab.headers.groups.CompressHeaderGroup;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Soak test of the compression native memory: encodes and decodes millions of barcodes with CompressHeaderGroup,
+ * and prints the process resident memory (Linux only), the heap and the zip pool counters every 10%.
+ * With the pool, resident memory should level off after the warm up.
+ * <pre>
+ * JabZipSoak [&lt;barcodes&gt; [&lt;threads&gt; [&lt;pool capacity&gt;]]]
+ * </pre>
+ * Pool capacity 0 ends every deflater and inflater right after use, for comparison.
+ */
+public class JabZipSoak {
+
+    public static void main(String[] args) throws Exception {
+        final long barcodes = args.length > 0 ? Long.parseLong(args[0]) : 2000000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        if (args.length > 2) {
+            JabZipPool.setGlobalPool(new JabZipPool(Integer.parseInt(args[2])));
+        }
+        final JabZipPool pool = JabZipPool.getGlobalPool();
+        final AtomicLong done = new AtomicLong();
+        final long step = Math.max(1, barcodes / 10);
+        System.out.println("barcodes: " + barcodes + ", threads: " + threads + ", pool capacity: " + pool.getCapacity());
+        report(0, pool);
+
+        long started = System.nanoTime();
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    JabParser parser = new JabParser();
+                    CompressHeaderGroup<DummyDTO> header = new CompressHeaderGroup<DummyDTO>();
+                    DummyDTO dto = DummyDTO.makeDummyDTO(true, true);
+                    try {
+                        for (long n; (n = done.incrementAndGet()) <= barcodes; ) {
+                            dto.setName("Name #" + n);
+                            String barcode = parser.objectToJab(header, dto);
+                            if (!dto.equals(parser.jabToObject(barcode, CompressHeaderGroup.class, DummyDTO.class))) {
+                                throw new IllegalStateException("Barcode mismatch: " + barcode);
+                            }
+                            if (n % step == 0) {
+                                report(n, pool);
+                            }
+                        }
+                    } catch (Exception ex) {
+                        ex.printStackTrace();
+                        System.exit(1);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        System.out.printf("%.1f us/barcode%n", (System.nanoTime() - started) / 1000.0 / barcodes);
+    }
+
+    private static synchronized void report(long n, JabZipPool pool) {
+        Runtime rt = Runtime.getRuntime();
+        System.out.printf("%10d barcodes; rss: %s, heap: %d MB, %s%n", n, residentMemory(),
+                (rt.totalMemory() - rt.freeMemory()) >> 20, pool);
+    }
+
+    private static String residentMemory() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmRSS:")) {
+                    return line.substring(6).trim();
+                }
+            }
+        } catch (Exception ex) {
+            // not Linux
+        }
+        return "n/a";
+    }
+}
@@ -0,0 +1,13 @@
+package ca.ma99us.jab.headers;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Header with an arbitrary text, which might look like a Jab envelope itself
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class NoteHeader<P> extends AbstractHeader<P> {
+    private String note;
+}